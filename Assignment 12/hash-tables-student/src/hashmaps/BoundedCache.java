@@ -0,0 +1,507 @@
+package hashmaps;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntBiFunction;
+
+import hashtables.ChainingHashTable;
+import hashtables.HashingStrategy;
+import hashtables.KeyMatcher;
+import hashtables.KeyOrder;
+
+/**
+ * A SimpleMap with a maximum total weight, meant to be used as a cache.
+ * When a put() takes the total weight past the maximum, entries are evicted
+ * until it fits again. By default every entry weighs 1, so the maximum is a
+ * maximum number of entries; setWeigher() gives entries other weights.
+ *
+ * Entries are stored in a ChainingHashTable and are also linked into
+ * doubly-linked access-order queues, so get(), put() and remove() are O(1).
+ * computeIfAbsent(), compute() and merge() look the key up once, and count
+ * as a single access, hit or miss.
+ * Two eviction policies are supported:
+ *
+ * - LRU keeps a single queue and evicts the least recently used entry.
+ *
+ * - W_TINY_LFU puts new entries in a small LRU window (1% of the weight).
+ *   Entries leaving the window enter the probation segment of the main
+ *   area, and move to its protected segment (80% of the main area) when
+ *   accessed again. When the cache is full, an entry that has just left the
+ *   window only stays if a FrequencySketch estimates it has been requested
+ *   more often than the least recently used entry of probation, which is
+ *   evicted in its place. One-off requests therefore cannot flush
+ *   frequently used entries out, as they can with LRU.
+ *
+ * With setExpireAfterWrite(), entries also expire a fixed time after they
+ * were last written. Expired entries are never returned, but are only
+ * removed when they are looked up, evicted, or cleaned up by cleanUp();
+ * size() counts them until then.
+ *
+ * The cache counts hits, misses and evictions. It is not thread-safe.
+ */
+public class BoundedCache<K, V> implements SimpleMap<K, V> {
+
+    public enum EvictionPolicy {
+        LRU,
+        W_TINY_LFU
+    }
+
+    static final int WINDOW = 0;
+    static final int PROBATION = 1;
+    static final int PROTECTED = 2;
+
+    static final KeyMatcher<Node<?, ?>, Object> KEY_MATCHER = new KeyMatcher<Node<?, ?>, Object>() {
+        @Override
+        public boolean matches(Node<?, ?> node, Object key) {
+            return key.equals(node.k);
+        }
+
+        @Override
+        public int compare(Node<?, ?> node, Object key) {
+            return KeyOrder.compare(node.k, key);
+        }
+    };
+
+    /**
+     * A cache entry, linked into the queue of its segment. Like
+     * SimpleMapEntry, nodes are equal and ordered by their keys.
+     */
+    static class Node<K, V> implements Comparable<Node<K, V>> {
+        final K k;
+        V v;
+        int weight;
+        long writeTime;
+        int queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K k, V v, int weight, long writeTime) {
+            this.k = k;
+            this.v = v;
+            this.weight = weight;
+            this.writeTime = writeTime;
+        }
+
+        @Override
+        public int hashCode() {
+            return SimpleMapEntry.hash(k);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Node)) return false;
+            return k.equals(((Node<?, ?>) obj).k);
+        }
+
+        @Override
+        public int compareTo(Node<K, V> other) {
+            return KeyOrder.compare(k, other.k);
+        }
+    }
+
+    /**
+     * A doubly-linked queue of nodes from least to most recently used.
+     */
+    static class AccessQueue<K, V> {
+        Node<K, V> head;
+        Node<K, V> tail;
+        long weight;
+
+        void addLast(Node<K, V> node) {
+            node.prev = this.tail;
+            node.next = null;
+            if (this.tail == null) this.head = node;
+            else this.tail.next = node;
+            this.tail = node;
+            this.weight += node.weight;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) this.head = node.next;
+            else node.prev.next = node.next;
+            if (node.next == null) this.tail = node.prev;
+            else node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            this.weight -= node.weight;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (node == this.tail) return;
+            remove(node);
+            addLast(node);
+        }
+    }
+
+    final ChainingHashTable<Node<K, V>> table;
+    final EvictionPolicy policy;
+    final long maximumWeight;
+    final long maximumWindowWeight;
+    final long maximumProtectedWeight;
+    final FrequencySketch sketch; // null for LRU
+
+    final AccessQueue<K, V> window; // the only queue for LRU
+    final AccessQueue<K, V> probation;
+    final AccessQueue<K, V> protectedQueue;
+    long weight;
+
+    ToIntBiFunction<? super K, ? super V> weigher;
+    long expireAfterWriteNanos; // 0 if entries never expire
+    LongSupplier ticker;
+
+    long hitCount;
+    long missCount;
+    long evictionCount;
+
+    /**
+     * Instantiate a W_TINY_LFU cache holding at most maximumSize entries.
+     */
+    public BoundedCache(long maximumSize) {
+        this(maximumSize, EvictionPolicy.W_TINY_LFU);
+    }
+
+    /**
+     * Instantiate a cache whose entries weigh at most maximumWeight in total.
+     */
+    public BoundedCache(long maximumWeight, EvictionPolicy policy) {
+        if (maximumWeight < 0) throw new IllegalArgumentException("maximumWeight must not be negative: " + maximumWeight);
+
+        this.table = new ChainingHashTable<>(HashingStrategy.SPREAD_MASK);
+        this.policy = policy;
+        this.maximumWeight = maximumWeight;
+        this.window = new AccessQueue<>();
+        this.probation = new AccessQueue<>();
+        this.protectedQueue = new AccessQueue<>();
+        this.weigher = (k, v) -> 1;
+        this.ticker = System::nanoTime;
+
+        if (policy == EvictionPolicy.W_TINY_LFU) {
+            this.maximumWindowWeight = Math.max(1, maximumWeight / 100);
+            this.maximumProtectedWeight = (maximumWeight - this.maximumWindowWeight) * 4 / 5;
+            this.sketch = new FrequencySketch(maximumWeight);
+        } else {
+            this.maximumWindowWeight = maximumWeight;
+            this.maximumProtectedWeight = 0;
+            this.sketch = null;
+        }
+    }
+
+    /**
+     * Set the function giving each entry its weight. Weights must not be
+     * negative. Can only be called while the cache is empty.
+     */
+    public void setWeigher(ToIntBiFunction<? super K, ? super V> weigher) {
+        if (this.table.size() != 0) throw new IllegalStateException("the weigher can only be set on an empty cache");
+        this.weigher = weigher;
+    }
+
+    /**
+     * Make entries expire the given duration after they were last put().
+     * A duration of 0 turns expiration off.
+     */
+    public void setExpireAfterWrite(long duration, TimeUnit unit) {
+        this.expireAfterWriteNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * Set the source of the time, in nanoseconds, used for expiration.
+     * Defaults to System.nanoTime().
+     */
+    public void setTicker(LongSupplier ticker) {
+        this.ticker = ticker;
+    }
+
+    public EvictionPolicy policy() {
+        return this.policy;
+    }
+
+    public long maximumWeight() {
+        return this.maximumWeight;
+    }
+
+    /**
+     * @return the total weight of the entries in the cache
+     */
+    public long weight() {
+        return this.weight;
+    }
+
+    public long hitCount() {
+        return this.hitCount;
+    }
+
+    public long missCount() {
+        return this.missCount;
+    }
+
+    public long evictionCount() {
+        return this.evictionCount;
+    }
+
+    /**
+     * @return the fraction of get() calls that found a value, or 1 if there were none
+     */
+    public double hitRate() {
+        long requests = this.hitCount + this.missCount;
+        return requests == 0 ? 1.0 : (double) this.hitCount / (double) requests;
+    }
+
+    boolean isExpired(Node<K, V> node, long now) {
+        return this.expireAfterWriteNanos > 0 && now - node.writeTime >= this.expireAfterWriteNanos;
+    }
+
+    long now() {
+        return this.expireAfterWriteNanos > 0 ? this.ticker.getAsLong() : 0;
+    }
+
+    AccessQueue<K, V> queueOf(Node<K, V> node) {
+        if (node.queue == PROBATION) return this.probation;
+        if (node.queue == PROTECTED) return this.protectedQueue;
+        return this.window;
+    }
+
+    void moveTo(Node<K, V> node, int queue) {
+        queueOf(node).remove(node);
+        node.queue = queue;
+        queueOf(node).addLast(node);
+    }
+
+    /**
+     * Unlink node from the table and its queue.
+     */
+    void removeNode(Node<K, V> node) {
+        this.table.removeByKey(node.hashCode(), node.k, KEY_MATCHER);
+        queueOf(node).remove(node);
+        this.weight -= node.weight;
+    }
+
+    /**
+     * Record a hit on node: it becomes the most recently used entry of its
+     * segment, and a probation entry is promoted to the protected segment.
+     */
+    void onAccess(Node<K, V> node) {
+        if (node.queue != PROBATION) {
+            queueOf(node).moveToLast(node);
+            return;
+        }
+
+        moveTo(node, PROTECTED);
+        while (this.protectedQueue.weight > this.maximumProtectedWeight) {
+            moveTo(this.protectedQueue.head, PROBATION);
+        }
+    }
+
+    /**
+     * Move the entries that no longer fit in the window to probation.
+     *
+     * @return the first entry moved, or null if none was; the entries moved
+     *         follow it to the tail of probation
+     */
+    Node<K, V> drainWindow() {
+        Node<K, V> first = null;
+        while (this.window.weight > this.maximumWindowWeight) {
+            Node<K, V> node = this.window.head;
+            moveTo(node, PROBATION);
+            if (first == null) first = node;
+        }
+        return first;
+    }
+
+    /**
+     * Evict entries until the cache fits its maximum weight again.
+     * candidate is the first entry that has just left the window (see
+     * drainWindow()), or null.
+     */
+    void evict(Node<K, V> candidate) {
+        while (this.weight > this.maximumWeight) {
+            Node<K, V> victim;
+
+            if (this.policy == EvictionPolicy.LRU) {
+                victim = this.window.head;
+            } else if (this.probation.head == null) {
+                victim = this.protectedQueue.head != null ? this.protectedQueue.head : this.window.head;
+            } else if (candidate == null || candidate == this.probation.head) {
+                // nothing left to admit against
+                victim = this.probation.head;
+                if (victim == candidate) candidate = candidate.next;
+            } else {
+                // the entry leaving the window has to beat the least recently used one of probation
+                Node<K, V> lru = this.probation.head;
+                if (this.sketch.frequency(candidate.hashCode()) > this.sketch.frequency(lru.hashCode())) {
+                    victim = lru;
+                } else {
+                    victim = candidate;
+                    candidate = candidate.next;
+                }
+            }
+
+            removeNode(victim);
+            this.evictionCount++;
+        }
+    }
+
+    int weigh(K k, V v) {
+        int w = this.weigher.applyAsInt(k, v);
+        if (w < 0) throw new IllegalArgumentException("negative weight for key " + k);
+        return w;
+    }
+
+    /**
+     * Give k the value v of weight w: update node, or, if node is null, add
+     * a new entry. Then evict whatever no longer fits.
+     */
+    void write(Node<K, V> node, K k, V v, int w) {
+        if (node != null) {
+            AccessQueue<K, V> queue = queueOf(node);
+            queue.weight += w - node.weight;
+            this.weight += w - node.weight;
+            node.v = v;
+            node.weight = w;
+            node.writeTime = now();
+        } else {
+            node = new Node<>(k, v, w, now());
+            this.table.add(node);
+            this.window.addLast(node);
+            this.weight += w;
+        }
+
+        evict(this.policy == EvictionPolicy.W_TINY_LFU ? drainWindow() : null);
+    }
+
+    /**
+     * Look k up as one access: record it in the sketch, count a hit or a
+     * miss, and on a hit, mark the entry used.
+     *
+     * @return the live entry of k, or null if there is none
+     */
+    Node<K, V> access(K k) {
+        int hash = SimpleMapEntry.hash(k);
+        if (this.sketch != null) this.sketch.increment(hash);
+
+        Node<K, V> node = this.table.getByKey(hash, k, KEY_MATCHER);
+
+        if (node != null && isExpired(node, now())) {
+            removeNode(node);
+            node = null;
+        }
+
+        if (node == null) {
+            this.missCount++;
+            return null;
+        }
+
+        this.hitCount++;
+        onAccess(node);
+        return node;
+    }
+
+    @Override
+    public int size() {
+        return this.table.size();
+    }
+
+    @Override
+    public void put(K k, V v) {
+        int hash = SimpleMapEntry.hash(k);
+        int w = weigh(k, v);
+
+        if (this.sketch != null) this.sketch.increment(hash);
+
+        Node<K, V> node = this.table.getByKey(hash, k, KEY_MATCHER);
+        if (node != null) onAccess(node);
+        write(node, k, v, w);
+    }
+
+    @Override
+    public V get(K k) {
+        Node<K, V> node = access(k);
+        return node == null ? null : node.v;
+    }
+
+    @Override
+    public V getOrDefault(K k, V defaultValue) {
+        V temp = this.get(k);
+        return (temp == null) ? defaultValue : temp;
+    }
+
+    @Override
+    public V remove(K k) {
+        Node<K, V> node = this.table.removeByKey(SimpleMapEntry.hash(k), k, KEY_MATCHER);
+
+        if (node == null) return null;
+
+        queueOf(node).remove(node);
+        this.weight -= node.weight;
+        return isExpired(node, now()) ? null : node.v;
+    }
+
+    @Override
+    public V computeIfAbsent(K k, Function<? super K, ? extends V> mappingFunction) {
+        Node<K, V> node = access(k);
+        if (node != null && node.v != null) return node.v;
+
+        V v = mappingFunction.apply(k);
+        if (v != null) write(node, k, v, weigh(k, v));
+        return v;
+    }
+
+    @Override
+    public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Node<K, V> node = access(k);
+        V v = remappingFunction.apply(k, node == null ? null : node.v);
+
+        if (v != null) {
+            write(node, k, v, weigh(k, v));
+        } else if (node != null) {
+            removeNode(node);
+        }
+        return v;
+    }
+
+    @Override
+    public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(v);
+
+        Node<K, V> node = access(k);
+        V res = (node == null || node.v == null) ? v : remappingFunction.apply(node.v, v);
+
+        if (res != null) {
+            write(node, k, res, weigh(k, res));
+        } else {
+            removeNode(node);
+        }
+        return res;
+    }
+
+    @Override
+    public Set<K> keys() {
+        long now = now();
+        Set<K> res = new HashSet<>();
+        this.table.forEach(node -> {
+            if (!isExpired(node, now)) res.add(node.k);
+        });
+        return res;
+    }
+
+    /**
+     * Remove every expired entry.
+     */
+    public void cleanUp() {
+        if (this.expireAfterWriteNanos == 0) return;
+
+        long now = now();
+        List<Node<K, V>> expired = new ArrayList<>();
+        this.table.forEach(node -> {
+            if (isExpired(node, now)) expired.add(node);
+        });
+        for (Node<K, V> node : expired) removeNode(node);
+    }
+}
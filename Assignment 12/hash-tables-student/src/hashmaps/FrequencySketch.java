@@ -0,0 +1,83 @@
+package hashmaps;
+
+import hashtables.HashingStrategy;
+
+/**
+ * A count-min sketch of 4-bit counters, estimating how often each hash code
+ * has been seen recently. Used by BoundedCache to decide whether a new entry
+ * is worth keeping over the entry it would evict.
+ *
+ * Each of the four rows picks one long by its own hash and one of sixteen
+ * counters in it; the estimate is the smallest of the four counters. Once
+ * the number of increments reaches ten times the number of counters, every
+ * counter is halved, so old popularity fades.
+ */
+class FrequencySketch {
+
+    static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    static final long RESET_MASK = 0x7777777777777777L;
+    static final int MAX_LENGTH = 1 << 20;
+
+    final long[] table;
+    final int mask;
+    final int sampleSize;
+    int additions;
+
+    /**
+     * Instantiate a sketch for a cache holding about n entries.
+     */
+    FrequencySketch(long n) {
+        int length = 16;
+        while (length < n && length < MAX_LENGTH) length <<= 1;
+
+        this.table = new long[length];
+        this.mask = length - 1;
+        this.sampleSize = 10 * length;
+    }
+
+    int indexOf(int h, int row) {
+        long x = (h + SEEDS[row]) * SEEDS[row];
+        x += x >>> 32;
+        return (int) x & this.mask;
+    }
+
+    /**
+     * Return the bit offset of the row's counter in its long: each row uses
+     * its own four of the sixteen counters.
+     */
+    static int offsetOf(int h, int row) {
+        return (((h & 3) << 2) + row) << 2;
+    }
+
+    int frequency(int hash) {
+        int h = HashingStrategy.spread(hash);
+        int res = 15;
+        for (int row = 0; row < 4; row++) {
+            int count = (int) ((this.table[indexOf(h, row)] >>> offsetOf(h, row)) & 0xfL);
+            res = Math.min(res, count);
+        }
+        return res;
+    }
+
+    void increment(int hash) {
+        int h = HashingStrategy.spread(hash);
+        boolean added = false;
+        for (int row = 0; row < 4; row++) {
+            int index = indexOf(h, row);
+            int offset = offsetOf(h, row);
+            if (((this.table[index] >>> offset) & 0xfL) != 0xfL) {
+                this.table[index] += 1L << offset;
+                added = true;
+            }
+        }
+
+        if (added && ++this.additions == this.sampleSize) reset();
+    }
+
+    void reset() {
+        for (int i = 0; i < this.table.length; i++) {
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+        this.additions /= 2;
+    }
+}
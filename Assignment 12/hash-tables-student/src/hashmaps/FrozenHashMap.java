@@ -0,0 +1,324 @@
+package hashmaps;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An immutable SimpleMap, built by SimpleHashMap.freeze(), for maps that are
+ * read far more often than they are written.
+ *
+ * The keys are placed with a minimal perfect hash function built by the CHD
+ * (compress, hash and displace) algorithm: every distinct key hash code is
+ * sent to a small bucket, and each bucket stores a displacement pair
+ * (d0, d1) chosen so that its members, at slots (slotOf(h, d0) + d1) mod n,
+ * land in distinct free slots. d1 lets a bucket be shifted onto any free
+ * slot, so buckets placed late, when few slots remain, are still found
+ * quickly. There are exactly as many slots as distinct hash codes, and a
+ * lookup computes its slot directly from the hash code and its bucket's
+ * displacement: one probe, with no chains, followed by a single equals()
+ * check.
+ *
+ * Keys whose hash codes are identical cannot be told apart by any function
+ * of the hash code, so they share a slot, which then holds a small
+ * Collision with their keys and values.
+ *
+ * All fields are final and never modified, so a FrozenHashMap can be shared
+ * between threads without locking. put() and remove() throw
+ * UnsupportedOperationException.
+ */
+public final class FrozenHashMap<K, V> implements SimpleMap<K, V> {
+
+    /**
+     * The average number of hash codes per displacement bucket.
+     */
+    static final int BUCKET_SIZE = 3;
+
+    /**
+     * Values of d0 tried for one bucket before starting over with a new seed.
+     */
+    static final int MAX_DISPLACEMENT = 1 << 10;
+
+    static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+    /**
+     * The keys and values of a slot shared by keys with the same hash code.
+     */
+    static final class Collision {
+        final Object[] keys;
+        final Object[] values;
+
+        Collision(Object[] keys, Object[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+    }
+
+    final Object[] table; // by slot: the key (or a Collision) at 2 * slot, its value at 2 * slot + 1
+    final int slotCount;
+    final long[] displacements; // by bucket: d0 in the high 32 bits, d1 in the low 32
+    final long seed;
+    final int size;
+
+    /**
+     * Build a map from keys[i] to values[i]. The keys must be distinct and
+     * non-null.
+     */
+    FrozenHashMap(Object[] keys, Object[] values) {
+        this.size = keys.length;
+
+        // sort the entries by hash code, to find the distinct hash codes
+        long[] byHash = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            byHash[i] = ((long) keys[i].hashCode() << 32) | i;
+        }
+        Arrays.sort(byHash);
+
+        int[] groupStarts = new int[keys.length + 1];
+        int distinct = 0;
+        for (int i = 0; i < byHash.length; i++) {
+            if (i == 0 || (int) (byHash[i] >> 32) != (int) (byHash[i - 1] >> 32)) groupStarts[distinct++] = i;
+        }
+        groupStarts[distinct] = byHash.length;
+
+        int[] hashes = new int[distinct];
+        for (int g = 0; g < distinct; g++) {
+            hashes[g] = (int) (byHash[groupStarts[g]] >> 32);
+        }
+
+        int[] slots = new int[distinct];
+        this.displacements = new long[Math.max(1, (distinct + BUCKET_SIZE - 1) / BUCKET_SIZE)];
+
+        long seed = 0;
+        while (!place(hashes, seed, this.displacements, slots)) {
+            seed++;
+        }
+        this.seed = seed;
+
+        this.slotCount = distinct;
+        this.table = new Object[2 * distinct];
+        for (int g = 0; g < distinct; g++) {
+            int start = groupStarts[g];
+            int end = groupStarts[g + 1];
+
+            if (end - start == 1) {
+                int i = (int) byHash[start];
+                this.table[2 * slots[g]] = keys[i];
+                this.table[2 * slots[g] + 1] = values[i];
+                continue;
+            }
+
+            Object[] ks = new Object[end - start];
+            Object[] vs = new Object[end - start];
+            for (int j = start; j < end; j++) {
+                ks[j - start] = keys[(int) byHash[j]];
+                vs[j - start] = values[(int) byHash[j]];
+            }
+            this.table[2 * slots[g]] = new Collision(ks, vs);
+        }
+    }
+
+    /**
+     * Try to find a displacement for every bucket under the given seed,
+     * filling in displacements and the slot of every hash code.
+     *
+     * @return false if some bucket could not be placed
+     */
+    static boolean place(int[] hashes, long seed, long[] displacements, int[] slots) {
+        int bucketCount = displacements.length;
+        int slotCount = hashes.length;
+
+        // counting sort of the hash codes by bucket
+        int[] bucketStarts = new int[bucketCount + 1];
+        for (int h : hashes) bucketStarts[bucketOf(h, seed, bucketCount) + 1]++;
+        int maxBucketSize = 0;
+        for (int b = 0; b < bucketCount; b++) {
+            maxBucketSize = Math.max(maxBucketSize, bucketStarts[b + 1]);
+            bucketStarts[b + 1] += bucketStarts[b];
+        }
+        int[] members = new int[hashes.length];
+        int[] next = bucketStarts.clone();
+        for (int i = 0; i < hashes.length; i++) {
+            members[next[bucketOf(hashes[i], seed, bucketCount)]++] = i;
+        }
+
+        // place the largest buckets first, while most slots are still free
+        int[] order = new int[bucketCount];
+        int count = 0;
+        for (int s = maxBucketSize; s > 0; s--) {
+            for (int b = 0; b < bucketCount; b++) {
+                if (bucketStarts[b + 1] - bucketStarts[b] == s) order[count++] = b;
+            }
+        }
+
+        FreeSlots free = new FreeSlots(slotCount);
+        int[] base = new int[maxBucketSize];
+        for (int o = 0; o < count; o++) {
+            int b = order[o];
+            int start = bucketStarts[b];
+            int size = bucketStarts[b + 1] - start;
+
+            long displacement = -1;
+            for (int d0 = 0; d0 < MAX_DISPLACEMENT && displacement == -1; d0++) {
+                for (int j = 0; j < size; j++) base[j] = slotOf(hashes[members[start + j]], seed, d0, slotCount);
+                displacement = shiftOntoFreeSlots(base, size, free, d0);
+            }
+            if (displacement == -1) return false;
+
+            displacements[b] = displacement;
+            int d1 = (int) displacement;
+            for (int j = 0; j < size; j++) {
+                int slot = shift(base[j], d1, slotCount);
+                free.take(slot);
+                slots[members[start + j]] = slot;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Look for a d1 that moves every base slot onto a distinct free slot,
+     * trying the shifts that move the first one onto each free slot in turn.
+     *
+     * @return the displacement pair (d0, d1), or -1 if there is none
+     */
+    static long shiftOntoFreeSlots(int[] base, int size, FreeSlots free, int d0) {
+        int slotCount = free.where.length;
+
+        for (int f = 0; f < free.count; f++) {
+            int d1 = free.slots[f] - base[0];
+            if (d1 < 0) d1 += slotCount;
+
+            boolean fits = true;
+            for (int j = 1; j < size && fits; j++) {
+                int slot = shift(base[j], d1, slotCount);
+                fits = free.isFree(slot);
+                for (int k = 0; k < j && fits; k++) fits = slot != shift(base[k], d1, slotCount);
+            }
+            if (fits) return ((long) d0 << 32) | d1;
+        }
+        return -1;
+    }
+
+    /**
+     * The free slots of a table being built, as a set supporting O(1)
+     * removal and iteration.
+     */
+    static final class FreeSlots {
+        final int[] slots; // the first count entries are the free slots
+        final int[] where; // position of each free slot in slots
+        int count;
+
+        FreeSlots(int slotCount) {
+            this.slots = new int[slotCount];
+            this.where = new int[slotCount];
+            for (int i = 0; i < slotCount; i++) {
+                this.slots[i] = i;
+                this.where[i] = i;
+            }
+            this.count = slotCount;
+        }
+
+        boolean isFree(int slot) {
+            return this.where[slot] < this.count;
+        }
+
+        void take(int slot) {
+            int i = this.where[slot];
+            int last = this.slots[--this.count];
+            this.slots[i] = last;
+            this.where[last] = i;
+            this.slots[this.count] = slot;
+            this.where[slot] = this.count;
+        }
+    }
+
+    static int shift(int slot, int d1, int slotCount) {
+        slot += d1;
+        return slot >= slotCount ? slot - slotCount : slot;
+    }
+
+    /**
+     * The 64-bit finalizer of MurmurHash3.
+     */
+    static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    /**
+     * Map a hash uniformly onto [0, n) with a multiply and a shift.
+     */
+    static int reduce(long hash, int n) {
+        return (int) (((hash >>> 32) * n) >>> 32);
+    }
+
+    static int bucketOf(int h, long seed, int bucketCount) {
+        return reduce(mix((h & 0xffffffffL) ^ (seed * GOLDEN)), bucketCount);
+    }
+
+    static int slotOf(int h, long seed, int d, int slotCount) {
+        return reduce(mix((((long) d << 32) | (h & 0xffffffffL)) + ~seed * GOLDEN), slotCount);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public void put(K k, V v) {
+        throw new UnsupportedOperationException("a FrozenHashMap cannot be modified");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(K k) {
+        if (this.slotCount == 0) return null;
+
+        int h = k.hashCode();
+        long displacement = this.displacements[bucketOf(h, this.seed, this.displacements.length)];
+        int slot = shift(slotOf(h, this.seed, (int) (displacement >>> 32), this.slotCount), (int) displacement,
+                this.slotCount);
+        Object stored = this.table[2 * slot];
+
+        if (stored instanceof Collision) {
+            Collision c = (Collision) stored;
+            for (int i = 0; i < c.keys.length; i++) {
+                if (k.equals(c.keys[i])) return (V) c.values[i];
+            }
+            return null;
+        }
+        return k.equals(stored) ? (V) this.table[2 * slot + 1] : null;
+    }
+
+    @Override
+    public V getOrDefault(K k, V defaultValue) {
+        V temp = this.get(k);
+        return (temp == null) ? defaultValue : temp;
+    }
+
+    @Override
+    public V remove(K k) {
+        throw new UnsupportedOperationException("a FrozenHashMap cannot be modified");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<K> keys() {
+        Set<K> res = new HashSet<>();
+        for (int slot = 0; slot < this.slotCount; slot++) {
+            Object stored = this.table[2 * slot];
+            if (stored instanceof Collision) {
+                for (Object k : ((Collision) stored).keys) res.add((K) k);
+            } else {
+                res.add((K) stored);
+            }
+        }
+        return res;
+    }
+}
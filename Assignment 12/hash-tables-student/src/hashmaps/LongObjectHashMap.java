@@ -0,0 +1,190 @@
+package hashmaps;
+
+/**
+ * A map from primitive long keys to values, mirroring the SimpleMap API
+ * without boxing its keys.
+ *
+ * Keys are stored unboxed in a flat long[] with the values in a parallel
+ * Object[]. Collisions are resolved by linear probing over a power-of-two
+ * capacity, and removal shifts the rest of a probe run back instead of
+ * leaving tombstones. Slots holding the key 0 are used to mark empty slots,
+ * so a mapping for the key 0 itself is kept outside the arrays.
+ *
+ * When the load factor exceeds 0.75 the arrays are doubled.
+ */
+public class LongObjectHashMap<V> {
+
+    static final int MIN_CAPACITY = 8;
+
+    long[] keys;
+    Object[] values;
+    int size; // number of mappings in the arrays; a mapping for 0 is counted separately
+    int mask;
+
+    boolean hasZeroKey;
+    V zeroValue;
+
+    public LongObjectHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Instantiate a new map with room for at least n mappings before it
+     * has to grow.
+     */
+    public LongObjectHashMap(int n) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 0.75 < n) capacity <<= 1;
+
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    static int mix(long k) {
+        long h = k * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @return the number of distinct key-valued pairs stored in the map.
+     */
+    public int size() {
+        return this.hasZeroKey ? this.size + 1 : this.size;
+    }
+
+    /**
+     * Return the slot holding k, or -1 if there is none. k must be non-zero.
+     */
+    int findIndex(long k) {
+        int index = mix(k) & this.mask;
+        long cur;
+        while ((cur = this.keys[index]) != 0) {
+            if (cur == k) return index;
+            index = (index + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Insert the given key-value pair into the map; if the key already
+     * exists in the map, the current mapping is overwritten.
+     *
+     * @param k the key to insert
+     * @param v the value to associate with the key
+     */
+    public void put(long k, V v) {
+        if (k == 0) {
+            this.hasZeroKey = true;
+            this.zeroValue = v;
+            return;
+        }
+
+        int index = mix(k) & this.mask;
+        long cur;
+        while ((cur = this.keys[index]) != 0) {
+            if (cur == k) {
+                this.values[index] = v;
+                return;
+            }
+            index = (index + 1) & this.mask;
+        }
+
+        this.keys[index] = k;
+        this.values[index] = v;
+        this.size++;
+        if (this.size > (this.mask + 1) * 0.75) enLarge();
+    }
+
+    /**
+     * Return the value in the map associated with the given key, or null if
+     * the key is not in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long k) {
+        if (k == 0) return this.zeroValue;
+
+        int index = findIndex(k);
+        return index == -1 ? null : (V) this.values[index];
+    }
+
+    /**
+     * Return the value in the map associated with the given key, or the
+     * defaultValue if the key is not in the map.
+     */
+    public V getOrDefault(long k, V defaultValue) {
+        V temp = this.get(k);
+        return (temp == null) ? defaultValue : temp;
+    }
+
+    /**
+     * Remove the key from the map (if present) returning the previously
+     * associated value (or null, if the key was not present).
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long k) {
+        if (k == 0) {
+            V res = this.zeroValue;
+            this.hasZeroKey = false;
+            this.zeroValue = null;
+            return res;
+        }
+
+        int index = findIndex(k);
+        if (index == -1) return null;
+
+        V res = (V) this.values[index];
+
+        // backward shift: move later members of the run into the hole if their home allows it
+        int next = (index + 1) & this.mask;
+        long cur;
+        while ((cur = this.keys[next]) != 0) {
+            int home = mix(cur) & this.mask;
+            if (((next - home) & this.mask) >= ((next - index) & this.mask)) {
+                this.keys[index] = cur;
+                this.values[index] = this.values[next];
+                index = next;
+            }
+            next = (next + 1) & this.mask;
+        }
+        this.keys[index] = 0;
+        this.values[index] = null;
+        this.size--;
+
+        return res;
+    }
+
+    /**
+     * Return the keys stored in the map, in no particular order. The array
+     * does not share structure with the internals of the map.
+     */
+    public long[] keys() {
+        long[] res = new long[this.size()];
+        int count = 0;
+        if (this.hasZeroKey) res[count++] = 0;
+        for (long k : this.keys) {
+            if (k != 0) res[count++] = k;
+        }
+        return res;
+    }
+
+    void enLarge() {
+        long[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        int newLength = oldKeys.length * 2;
+
+        this.keys = new long[newLength];
+        this.values = new Object[newLength];
+        this.mask = newLength - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            if (k == 0) continue;
+
+            int index = mix(k) & this.mask;
+            while (this.keys[index] != 0) index = (index + 1) & this.mask;
+            this.keys[index] = k;
+            this.values[index] = oldValues[i];
+        }
+    }
+}
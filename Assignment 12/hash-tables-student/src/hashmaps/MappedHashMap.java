@@ -0,0 +1,448 @@
+package hashmaps;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import hashtables.HashingStrategy;
+
+/**
+ * A persistent implementation of SimpleMap whose buckets and entries live in
+ * a memory-mapped file rather than on the Java heap.
+ *
+ * Reopening an existing file only maps it and reads its header, so a map of
+ * any size is usable immediately, without re-inserting its entries. Keys and
+ * values are converted to bytes by pluggable Serializers, and keys are hashed
+ * over their serialized bytes so that hashes stay valid across processes.
+ *
+ * File layout:
+ * - a fixed-size header (magic number, version, bucket count, size, the end
+ *   of the data region, a dirty flag, and the number of records);
+ * - the bucket array: one long per bucket, holding the offset of the newest
+ *   record in that bucket's chain, or 0;
+ * - an append-only log of records, each holding the offset of the next
+ *   (older) record in its chain, the key hash, the key and the value.
+ *
+ * Records are never modified once written. put() appends a record and makes
+ * it the head of its chain, so the newest record for a key shadows the older
+ * ones; remove() appends a tombstone record. A record is written completely,
+ * and the end of the data region moved past it, before the bucket pointing
+ * at it is updated. A crash therefore never leaves a bucket pointing at a
+ * partial record, at worst an unreachable one. The dirty flag is set by the
+ * first update after opening and cleared by close(); if a file is opened
+ * dirty, its size and record count are recounted from the buckets.
+ *
+ * Writes reach the file when the operating system writes the mapped pages
+ * back, which survives a crash of the process; flush() or close() force them
+ * to the storage device.
+ *
+ * When the load factor exceeds 0.75 the map is rewritten into a new file
+ * with twice as many buckets, keeping only live records, and the new file
+ * atomically replaces the old one. compact() does the same without growing,
+ * and put() and remove() call it once more than MAX_DEAD_SHARE of the
+ * records are overwritten or removed ones, so a map that is updated in place
+ * keeps a bounded file.
+ *
+ * The file is limited to 2GB, the largest region a MappedByteBuffer can map.
+ */
+public class MappedHashMap<K, V> implements SimpleMap<K, V>, Closeable {
+
+    static final int MAGIC = 0x53484d31; // "SHM1"
+    static final int VERSION = 1;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int BUCKET_COUNT_OFFSET = 8;
+    static final int SIZE_OFFSET = 12;
+    static final int DATA_END_OFFSET = 16;
+    static final int DIRTY_OFFSET = 24;
+    static final int RECORD_COUNT_OFFSET = 28;
+    static final int HEADER_SIZE = 64;
+
+    // a record: long next, int hash, int keyLength, int valueLength, key bytes, value bytes
+    static final int RECORD_NEXT = 0;
+    static final int RECORD_HASH = 8;
+    static final int RECORD_KEY_LENGTH = 12;
+    static final int RECORD_VALUE_LENGTH = 16;
+    static final int RECORD_HEADER_SIZE = 20;
+
+    static final int TOMBSTONE = -1;
+    static final int NULL_VALUE = -2;
+
+    static final int DEFAULT_BUCKET_COUNT = 16;
+
+    static final double MAX_DEAD_SHARE = 0.5;
+    static final int MIN_COMPACT_RECORDS = 64; // smaller files are never compacted automatically
+
+    final Path path;
+    final Serializer<K> keySerializer;
+    final Serializer<V> valueSerializer;
+
+    FileChannel channel;
+    MappedByteBuffer buffer;
+    int bucketCount;
+    int size;
+    int dataEnd;
+    int recordCount; // live and dead
+    boolean dirty;
+
+    /**
+     * Open the map stored in the file at path, creating an empty map if the
+     * file does not exist or is empty.
+     *
+     * @throws IOException if the file cannot be opened or is not a map file
+     */
+    public MappedHashMap(Path path, Serializer<K> keySerializer, Serializer<V> valueSerializer) throws IOException {
+        this(path, keySerializer, valueSerializer, DEFAULT_BUCKET_COUNT);
+    }
+
+    MappedHashMap(Path path, Serializer<K> keySerializer, Serializer<V> valueSerializer, int bucketCount) throws IOException {
+        this.path = path;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        open(bucketCount);
+    }
+
+    void open(int newBucketCount) throws IOException {
+        this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        if (this.channel.size() == 0) {
+            int dataStart = HEADER_SIZE + newBucketCount * Long.BYTES;
+            map(Math.max(4096, dataStart * 2L));
+            this.buffer.putInt(MAGIC_OFFSET, MAGIC);
+            this.buffer.putInt(VERSION_OFFSET, VERSION);
+            this.buffer.putInt(BUCKET_COUNT_OFFSET, newBucketCount);
+            this.buffer.putInt(SIZE_OFFSET, 0);
+            this.buffer.putLong(DATA_END_OFFSET, dataStart);
+            this.buffer.putInt(DIRTY_OFFSET, 0);
+            this.buffer.putInt(RECORD_COUNT_OFFSET, 0);
+        } else {
+            map(this.channel.size());
+            if (this.buffer.getInt(MAGIC_OFFSET) != MAGIC || this.buffer.getInt(VERSION_OFFSET) != VERSION) {
+                this.channel.close();
+                throw new IOException("not a map file: " + this.path);
+            }
+        }
+
+        this.bucketCount = this.buffer.getInt(BUCKET_COUNT_OFFSET);
+        this.size = this.buffer.getInt(SIZE_OFFSET);
+        this.dataEnd = (int) this.buffer.getLong(DATA_END_OFFSET);
+        this.recordCount = this.buffer.getInt(RECORD_COUNT_OFFSET);
+        this.dirty = this.buffer.getInt(DIRTY_OFFSET) != 0;
+
+        if (this.dirty) {
+            // not closed cleanly: the counts in the header may be one update behind
+            recount();
+        }
+    }
+
+    void map(long length) throws IOException {
+        if (length > Integer.MAX_VALUE) throw new IOException("map file would exceed 2GB: " + this.path);
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+    }
+
+    void ensureOpen() {
+        if (this.buffer == null) throw new IllegalStateException("map is closed");
+    }
+
+    void markDirty() {
+        if (!this.dirty) {
+            this.dirty = true;
+            this.buffer.putInt(DIRTY_OFFSET, 1);
+        }
+    }
+
+    static int hash(byte[] keyBytes) {
+        return HashingStrategy.spread(Arrays.hashCode(keyBytes));
+    }
+
+    int bucketOffset(int hash) {
+        return HEADER_SIZE + (hash & (this.bucketCount - 1)) * Long.BYTES;
+    }
+
+    /**
+     * Return the offset of the newest record (possibly a tombstone) for the
+     * key, or 0 if there is none.
+     */
+    int find(byte[] keyBytes, int hash) {
+        int record = (int) this.buffer.getLong(bucketOffset(hash));
+
+        while (record != 0) {
+            if (this.buffer.getInt(record + RECORD_HASH) == hash && keyEquals(record, keyBytes)) return record;
+            record = (int) this.buffer.getLong(record + RECORD_NEXT);
+        }
+        return 0;
+    }
+
+    boolean keyEquals(int record, byte[] keyBytes) {
+        int keyLength = this.buffer.getInt(record + RECORD_KEY_LENGTH);
+        if (keyLength != keyBytes.length) return false;
+
+        int start = record + RECORD_HEADER_SIZE;
+        for (int i = 0; i < keyLength; i++) {
+            if (this.buffer.get(start + i) != keyBytes[i]) return false;
+        }
+        return true;
+    }
+
+    boolean isLive(int record) {
+        return record != 0 && this.buffer.getInt(record + RECORD_VALUE_LENGTH) != TOMBSTONE;
+    }
+
+    byte[] readKey(int record) {
+        byte[] res = new byte[this.buffer.getInt(record + RECORD_KEY_LENGTH)];
+        this.buffer.get(record + RECORD_HEADER_SIZE, res);
+        return res;
+    }
+
+    /**
+     * Return the serialized value of a live record, or null for a null value.
+     */
+    byte[] readValue(int record) {
+        int valueLength = this.buffer.getInt(record + RECORD_VALUE_LENGTH);
+        if (valueLength == NULL_VALUE) return null;
+
+        byte[] res = new byte[valueLength];
+        int keyLength = this.buffer.getInt(record + RECORD_KEY_LENGTH);
+        this.buffer.get(record + RECORD_HEADER_SIZE + keyLength, res);
+        return res;
+    }
+
+    V decodeValue(int record) {
+        byte[] valueBytes = readValue(record);
+        return valueBytes == null ? null : this.valueSerializer.deserialize(valueBytes);
+    }
+
+    /**
+     * Append a record and make it the head of its chain. valueBytes may be
+     * null for a tombstone or a null value, as given by valueLength.
+     */
+    void append(int hash, byte[] keyBytes, int valueLength, byte[] valueBytes) throws IOException {
+        int recordSize = RECORD_HEADER_SIZE + keyBytes.length + Math.max(valueLength, 0);
+        long newEnd = (long) this.dataEnd + recordSize;
+        if (newEnd > this.buffer.capacity()) map(Math.max(newEnd, Math.min(this.buffer.capacity() * 2L, Integer.MAX_VALUE)));
+
+        markDirty();
+
+        int record = this.dataEnd;
+        int bucket = bucketOffset(hash);
+
+        // 1. write the whole record
+        this.buffer.putLong(record + RECORD_NEXT, this.buffer.getLong(bucket));
+        this.buffer.putInt(record + RECORD_HASH, hash);
+        this.buffer.putInt(record + RECORD_KEY_LENGTH, keyBytes.length);
+        this.buffer.putInt(record + RECORD_VALUE_LENGTH, valueLength);
+        this.buffer.put(record + RECORD_HEADER_SIZE, keyBytes);
+        if (valueLength > 0) this.buffer.put(record + RECORD_HEADER_SIZE + keyBytes.length, valueBytes);
+
+        // 2. claim its space, 3. publish it
+        this.dataEnd = (int) newEnd;
+        this.buffer.putLong(DATA_END_OFFSET, newEnd);
+        this.buffer.putLong(bucket, record);
+
+        this.recordCount++;
+        this.buffer.putInt(RECORD_COUNT_OFFSET, this.recordCount);
+    }
+
+    void setSize(int size) {
+        this.size = size;
+        this.buffer.putInt(SIZE_OFFSET, size);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public void put(K k, V v) {
+        ensureOpen();
+        try {
+            if ((double) (this.size + 1) / (double) this.bucketCount > 0.75) rewrite(this.bucketCount * 2);
+
+            byte[] keyBytes = this.keySerializer.serialize(k);
+            byte[] valueBytes = v == null ? null : this.valueSerializer.serialize(v);
+            int hash = hash(keyBytes);
+            boolean existed = isLive(find(keyBytes, hash));
+
+            append(hash, keyBytes, valueBytes == null ? NULL_VALUE : valueBytes.length, valueBytes);
+            if (!existed) setSize(this.size + 1);
+            compactIfMostlyDead();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public V get(K k) {
+        ensureOpen();
+        byte[] keyBytes = this.keySerializer.serialize(k);
+        int record = find(keyBytes, hash(keyBytes));
+
+        if (!isLive(record)) return null;
+        return decodeValue(record);
+    }
+
+    @Override
+    public V getOrDefault(K k, V defaultValue) {
+        V temp = this.get(k);
+        return (temp == null) ? defaultValue : temp;
+    }
+
+    @Override
+    public V remove(K k) {
+        ensureOpen();
+        byte[] keyBytes = this.keySerializer.serialize(k);
+        int hash = hash(keyBytes);
+        int record = find(keyBytes, hash);
+
+        if (!isLive(record)) return null;
+
+        V res = decodeValue(record);
+        try {
+            append(hash, keyBytes, TOMBSTONE, null);
+            setSize(this.size - 1);
+            compactIfMostlyDead();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return res;
+    }
+
+    @Override
+    public Set<K> keys() {
+        ensureOpen();
+        Set<K> res = new HashSet<>();
+        forEachLiveRecord(record -> res.add(this.keySerializer.deserialize(readKey(record))));
+        return res;
+    }
+
+    interface RecordVisitor {
+        void visit(int record) throws IOException;
+    }
+
+    /**
+     * Visit the newest record of every key that is present in the map.
+     */
+    void forEachLiveRecord(RecordVisitor visitor) {
+        forEachRecord((record, newest) -> {
+            if (newest && isLive(record)) visitor.visit(record);
+        });
+    }
+
+    interface ChainVisitor {
+        void visit(int record, boolean newest) throws IOException;
+    }
+
+    /**
+     * Visit every reachable record, telling whether it is the newest record
+     * of its key (the one find() returns). Chains run from newest to oldest,
+     * so that is the first record of the key in its chain, which a set of the
+     * keys seen so far in the chain decides in a single pass.
+     */
+    void forEachRecord(ChainVisitor visitor) {
+        Set<ByteBuffer> seen = new HashSet<>();
+        try {
+            for (int b = 0; b < this.bucketCount; b++) {
+                int record = (int) this.buffer.getLong(HEADER_SIZE + b * Long.BYTES);
+                seen.clear();
+                while (record != 0) {
+                    ByteBuffer key = this.buffer.slice(record + RECORD_HEADER_SIZE, this.buffer.getInt(record + RECORD_KEY_LENGTH));
+                    visitor.visit(record, seen.add(key));
+                    record = (int) this.buffer.getLong(record + RECORD_NEXT);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Recount the live keys and the records from the buckets.
+     */
+    void recount() {
+        int[] res = new int[2];
+        forEachRecord((record, newest) -> {
+            if (newest && isLive(record)) res[0]++;
+            res[1]++;
+        });
+        setSize(res[0]);
+        this.recordCount = res[1];
+        this.buffer.putInt(RECORD_COUNT_OFFSET, this.recordCount);
+    }
+
+    /**
+     * Compact the map once more than MAX_DEAD_SHARE of its records are dead.
+     * The rewrite costs O(size), and leaves no dead records, so at least as
+     * many updates come before the next one.
+     */
+    void compactIfMostlyDead() throws IOException {
+        int dead = this.recordCount - this.size;
+        if (this.recordCount >= MIN_COMPACT_RECORDS && dead > MAX_DEAD_SHARE * this.recordCount) {
+            rewrite(this.bucketCount);
+        }
+    }
+
+    /**
+     * Rewrite the map without its overwritten and removed records.
+     */
+    public void compact() throws IOException {
+        ensureOpen();
+        rewrite(this.bucketCount);
+    }
+
+    /**
+     * Copy the live records into a new file with the given number of buckets,
+     * then atomically replace this map's file with it.
+     */
+    void rewrite(int newBucketCount) throws IOException {
+        Path tmp = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+
+        try (MappedHashMap<K, V> copy = new MappedHashMap<>(tmp, this.keySerializer, this.valueSerializer, newBucketCount)) {
+            forEachLiveRecord(record -> {
+                byte[] valueBytes = readValue(record);
+                copy.append(this.buffer.getInt(record + RECORD_HASH), readKey(record),
+                        this.buffer.getInt(record + RECORD_VALUE_LENGTH), valueBytes);
+            });
+            copy.setSize(this.size);
+        }
+
+        this.channel.close();
+        this.buffer = null;
+        Files.move(tmp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open(newBucketCount);
+    }
+
+    /**
+     * Force every update so far to the storage device.
+     */
+    public void flush() {
+        ensureOpen();
+        this.buffer.force();
+    }
+
+    /**
+     * Mark the file clean, force it to the storage device, and close the map.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.buffer == null) return;
+
+        this.buffer.putInt(DIRTY_OFFSET, 0);
+        this.buffer.force();
+        this.buffer = null;
+        this.channel.close();
+    }
+}
@@ -0,0 +1,62 @@
+package hashmaps;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts keys or values to and from bytes, for maps that store them
+ * outside the Java heap (see MappedHashMap).
+ *
+ * Two objects must serialize to the same bytes iff they are equals().
+ */
+public interface Serializer<T> {
+
+    byte[] serialize(T t);
+
+    T deserialize(byte[] bytes);
+
+    /**
+     * Strings, as UTF-8.
+     */
+    Serializer<String> STRING = new Serializer<String>() {
+        @Override
+        public byte[] serialize(String s) {
+            return s.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String deserialize(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Integers, as 4 big-endian bytes.
+     */
+    Serializer<Integer> INTEGER = new Serializer<Integer>() {
+        @Override
+        public byte[] serialize(Integer i) {
+            return ByteBuffer.allocate(Integer.BYTES).putInt(i).array();
+        }
+
+        @Override
+        public Integer deserialize(byte[] bytes) {
+            return ByteBuffer.wrap(bytes).getInt();
+        }
+    };
+
+    /**
+     * Longs, as 8 big-endian bytes.
+     */
+    Serializer<Long> LONG = new Serializer<Long>() {
+        @Override
+        public byte[] serialize(Long l) {
+            return ByteBuffer.allocate(Long.BYTES).putLong(l).array();
+        }
+
+        @Override
+        public Long deserialize(byte[] bytes) {
+            return ByteBuffer.wrap(bytes).getLong();
+        }
+    };
+}
@@ -0,0 +1,169 @@
+package hashmaps;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import hashtables.ChainingHashTable;
+import hashtables.HashTableStats;
+import hashtables.HashingStrategy;
+
+/**
+ * A SimpleMap split into independent shards, for very large maps.
+ *
+ * Each key is routed by the high bits of its spread hash code to one of a
+ * power-of-two number of shards. Every shard is a SimpleHashMap over its own
+ * ChainingHashTable, which picks buckets from the low bits (SPREAD_MASK), so
+ * routing and bucket selection use different bits. A shard grows on its own
+ * schedule: a resize allocates and copies only that shard's array, which
+ * keeps single allocations and resize pauses about shardCount times smaller
+ * than in one monolithic table.
+ *
+ * keys() collects the shards in parallel. Like SimpleHashMap, the map is not
+ * thread-safe.
+ */
+public class ShardedHashMap<K, V> implements SimpleMap<K, V> {
+
+    static final int DEFAULT_SHARD_COUNT = 16;
+
+    final SimpleHashMap<K, V>[] shards;
+    final ChainingHashTable<SimpleMapEntry<K, V>>[] tables; // the table of each shard
+    final int shardShift;
+
+    public ShardedHashMap() {
+        this(DEFAULT_SHARD_COUNT);
+    }
+
+    /**
+     * Instantiate a map with at least the given number of shards (rounded
+     * up to a power of two).
+     */
+    public ShardedHashMap(int shardCount) {
+        this(shardCount, 0);
+    }
+
+    /**
+     * Instantiate a map with at least the given number of shards, each
+     * sized to hold its share of n entries without growing.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public ShardedHashMap(int shardCount, int n) {
+        int count = 1;
+        while (count < shardCount) count <<= 1;
+
+        this.shards = (SimpleHashMap<K, V>[]) new SimpleHashMap[count];
+        this.tables = (ChainingHashTable<SimpleMapEntry<K, V>>[]) new ChainingHashTable[count];
+        this.shardShift = 32 - Integer.numberOfTrailingZeros(count);
+
+        for (int i = 0; i < count; i++) {
+            this.tables[i] = new ChainingHashTable<>(HashingStrategy.SPREAD_MASK);
+            this.tables[i].ensureCapacity((n + count - 1) / count);
+            this.shards[i] = new SimpleHashMap<>(this.tables[i]);
+        }
+    }
+
+    int shardFor(K k) {
+        // the shift is 32 for a single shard, which Java would treat as 0
+        return this.shardShift == 32 ? 0 : HashingStrategy.spread(SimpleMapEntry.hash(k)) >>> this.shardShift;
+    }
+
+    public int shardCount() {
+        return this.shards.length;
+    }
+
+    @Override
+    public int size() {
+        int res = 0;
+        for (SimpleHashMap<K, V> shard : this.shards) {
+            res += shard.size();
+        }
+        return res;
+    }
+
+    @Override
+    public void put(K k, V v) {
+        this.shards[shardFor(k)].put(k, v);
+    }
+
+    @Override
+    public V get(K k) {
+        return this.shards[shardFor(k)].get(k);
+    }
+
+    @Override
+    public V getOrDefault(K k, V defaultValue) {
+        V temp = this.get(k);
+        return (temp == null) ? defaultValue : temp;
+    }
+
+    @Override
+    public V remove(K k) {
+        return this.shards[shardFor(k)].remove(k);
+    }
+
+    @Override
+    public V putIfAbsent(K k, V v) {
+        return this.shards[shardFor(k)].putIfAbsent(k, v);
+    }
+
+    @Override
+    public V computeIfAbsent(K k, Function<? super K, ? extends V> mappingFunction) {
+        return this.shards[shardFor(k)].computeIfAbsent(k, mappingFunction);
+    }
+
+    @Override
+    public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        return this.shards[shardFor(k)].compute(k, remappingFunction);
+    }
+
+    @Override
+    public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        return this.shards[shardFor(k)].merge(k, v, remappingFunction);
+    }
+
+    @Override
+    public Set<K> keys() {
+        return Arrays.stream(this.tables).parallel()
+                .flatMap(ChainingHashTable::stream)
+                .map(entry -> entry.k)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * @return the number of entries in each shard
+     */
+    public int[] shardSizes() {
+        int[] res = new int[this.shards.length];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = this.tables[i].size();
+        }
+        return res;
+    }
+
+    /**
+     * @return the capacity of each shard's table
+     */
+    public int[] shardCapacities() {
+        int[] res = new int[this.shards.length];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = this.tables[i].capacity();
+        }
+        return res;
+    }
+
+    /**
+     * Start collecting statistics on every shard's table (see
+     * ChainingHashTable.enableStats()).
+     *
+     * @return the statistics of each shard
+     */
+    public HashTableStats[] enableStats() {
+        HashTableStats[] res = new HashTableStats[this.shards.length];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = this.tables[i].enableStats();
+        }
+        return res;
+    }
+}
@@ -4,9 +4,16 @@
 package hashmaps;
 
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import hashtables.ChainingHashTable;
+import hashtables.HashTable;
+import hashtables.HashingStrategy;
+import hashtables.KeyMatcher;
+import hashtables.KeyOrder;
 
 
 
@@ -14,15 +21,49 @@ import hashtables.ChainingHashTable;
  * An implementation of a SimpleMap, built using the ChainingHashTable and 
  * SimpleMapEntry classes. This class should behave similarly to the built-in
  * java.util.HashMap, though it is much simpler!
+ * 
+ * The map can also sit on top of any other HashTable of entries, such as a
+ * ConcurrentChainingHashTable when the map is shared between threads.
  */
 public class SimpleHashMap<K, V> implements SimpleMap<K, V> {
 
-    ChainingHashTable<SimpleMapEntry<K, V>> table;
+    /**
+     * Matches a stored entry against a lookup key, so lookups can probe the
+     * table by key without allocating a dummy entry.
+     */
+    static final KeyMatcher<SimpleMapEntry<?, ?>, Object> KEY_MATCHER = new KeyMatcher<SimpleMapEntry<?, ?>, Object>() {
+        @Override
+        public boolean matches(SimpleMapEntry<?, ?> entry, Object key) {
+            return key.equals(entry.k);
+        }
+
+        @Override
+        public int compare(SimpleMapEntry<?, ?> entry, Object key) {
+            return KeyOrder.compare(entry.k, key);
+        }
+    };
+
+    HashTable<SimpleMapEntry<K, V>> table;
 
     public SimpleHashMap() {
         this.table = new ChainingHashTable<SimpleMapEntry<K, V>>();
     }
 
+    /**
+     * Instantiate a map that can hold n entries before its table has to grow.
+     */
+    public SimpleHashMap(int n) {
+        this.table = new ChainingHashTable<SimpleMapEntry<K, V>>(
+                ChainingHashTable.capacityToHold(n, HashingStrategy.LEGACY_MODULO));
+    }
+
+    /**
+     * Instantiate a map that stores its entries in the given (empty) table.
+     */
+    public SimpleHashMap(HashTable<SimpleMapEntry<K, V>> table) {
+        this.table = table;
+    }
+
     @Override
     public int size() {
         return this.table.size();
@@ -35,12 +76,37 @@ public class SimpleHashMap<K, V> implements SimpleMap<K, V> {
         this.table.add(newEntry);
     }
 
+    /**
+     * Insert every mapping of m, overwriting existing mappings for the same
+     * keys. A ChainingHashTable is grown at most once beforehand, and the
+     * entries of another SimpleHashMap are shared rather than copied (they
+     * are immutable).
+     */
+    @SuppressWarnings("unchecked")
+    public void putAll(SimpleMap<? extends K, ? extends V> m) {
+        if (m == this) return;
+
+        if (this.table instanceof ChainingHashTable) {
+            ((ChainingHashTable<SimpleMapEntry<K, V>>) this.table).ensureCapacity(this.table.size() + m.size());
+        }
+
+        if (m instanceof SimpleHashMap) {
+            ((SimpleHashMap<? extends K, ? extends V>) m).table.forEach(entry -> this.table.add((SimpleMapEntry<K, V>) entry));
+            return;
+        }
+
+        putAllFrom(m);
+    }
+
+    <K2 extends K, V2 extends V> void putAllFrom(SimpleMap<K2, V2> m) {
+        for (K2 k : m.keys()) {
+            this.put(k, m.get(k));
+        }
+    }
+
     @Override
     public V get(K k) {
-        //get() method for chaining hashtable: it will receive a simpleMapEntry and then retrieve the actual entry inside the map that has the same hashcode as the input entry
-        //in other word, we just puts in a dummyEntry with similar key, then it will retrieve the true entry with actual value for us
-        SimpleMapEntry<K,V> dummyEntry = new SimpleMapEntry<K,V>(k, null);
-        SimpleMapEntry<K, V> resEntry = this.table.get(dummyEntry);
+        SimpleMapEntry<K, V> resEntry = this.table.getByKey(SimpleMapEntry.hash(k), k, KEY_MATCHER);
 
         if (resEntry == null) return null;
         return resEntry.v;
@@ -56,24 +122,86 @@ public class SimpleHashMap<K, V> implements SimpleMap<K, V> {
 
     @Override
     public V remove(K k) {
-        //this is a little bit inefficient because technically the get method makes one loop and the remove makes another loop
-        SimpleMapEntry<K,V> dummy = new SimpleMapEntry<K, V>(k, null);
-        SimpleMapEntry<K, V> cur = this.table.get(dummy);
+        SimpleMapEntry<K, V> cur = this.table.removeByKey(SimpleMapEntry.hash(k), k, KEY_MATCHER);
 
         if (cur == null) return null;
+        return cur.v;
+    }
 
-        V res = cur.v;
-        this.table.remove(cur);
+    /*
+     * The compute-style methods below each make a single call to
+     * HashTable.computeByKey(), so they search the table once, and they are
+     * atomic when the table is a ConcurrentChainingHashTable. Entries are
+     * immutable, so a changed value is stored as a new entry in place of the
+     * old one.
+     */
 
-        return res;
+    @Override
+    public V putIfAbsent(K k, V v) {
+        SimpleMapEntry<K, V> newEntry = new SimpleMapEntry<K, V>(k, v);
+        SimpleMapEntry<K, V> res = this.table.computeByKey(SimpleMapEntry.hash(k), k, KEY_MATCHER,
+                cur -> (cur == null || cur.v == null) ? newEntry : cur);
+
+        return (res == newEntry) ? null : res.v;
+    }
+
+    @Override
+    public V computeIfAbsent(K k, Function<? super K, ? extends V> mappingFunction) {
+        SimpleMapEntry<K, V> res = this.table.computeByKey(SimpleMapEntry.hash(k), k, KEY_MATCHER, cur -> {
+            if (cur != null && cur.v != null) return cur;
+
+            V v = mappingFunction.apply(k);
+            return (v == null) ? cur : new SimpleMapEntry<K, V>(k, v);
+        });
+
+        return (res == null) ? null : res.v;
+    }
+
+    @Override
+    public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        SimpleMapEntry<K, V> res = this.table.computeByKey(SimpleMapEntry.hash(k), k, KEY_MATCHER, cur -> {
+            V v = remappingFunction.apply(k, (cur == null) ? null : cur.v);
+            return (v == null) ? null : new SimpleMapEntry<K, V>(k, v);
+        });
+
+        return (res == null) ? null : res.v;
+    }
+
+    @Override
+    public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(v);
+
+        SimpleMapEntry<K, V> res = this.table.computeByKey(SimpleMapEntry.hash(k), k, KEY_MATCHER, cur -> {
+            if (cur == null || cur.v == null) return new SimpleMapEntry<K, V>(k, v);
+
+            V merged = remappingFunction.apply(cur.v, v);
+            return (merged == null) ? null : new SimpleMapEntry<K, V>(k, merged);
+        });
+
+        return (res == null) ? null : res.v;
+    }
+
+    /**
+     * Return an immutable snapshot of the map, which answers get() with a
+     * single probe (see FrozenHashMap). Later changes to this map do not
+     * affect the snapshot.
+     */
+    public FrozenHashMap<K, V> freeze() {
+        Object[] keys = new Object[this.table.size()];
+        Object[] values = new Object[this.table.size()];
+        int[] count = new int[1];
+        this.table.forEach(var -> {
+            keys[count[0]] = var.k;
+            values[count[0]] = var.v;
+            count[0]++;
+        });
+        return new FrozenHashMap<>(keys, values);
     }
 
     @Override
     public Set<K> keys() {
         Set<K> res = new HashSet<>();
-        for(SimpleMapEntry<K,V> var : this.table){
-            res.add(var.k);
-        }
+        this.table.forEach(var -> res.add(var.k));
         return res;
     }    
 }
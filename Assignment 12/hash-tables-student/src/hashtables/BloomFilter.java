@@ -0,0 +1,117 @@
+package hashtables;
+
+import java.util.Arrays;
+
+/**
+ * A blocked Bloom filter over hash codes: a set that can answer "definitely
+ * not present" or "possibly present" in constant time and a few bits per
+ * element, without ever reporting a false negative.
+ *
+ * The bit array is split into 512-bit blocks (the size of a cache line). An
+ * element picks one block from its hash code and sets hashCount bits inside
+ * it, so both add and lookup touch a single cache line. This costs a little
+ * accuracy compared to spreading the bits over the whole array, which the
+ * sizing makes up for by rounding the number of blocks up.
+ *
+ * The filter works on int hash codes rather than elements, so that a hash
+ * table can feed it the hash codes it computes anyway; elements with equal
+ * hash codes are indistinguishable to it. Elements cannot be removed.
+ */
+public class BloomFilter<E> {
+
+    static final int BLOCK_BITS = 512;
+    static final int LONGS_PER_BLOCK = BLOCK_BITS / Long.SIZE;
+
+    final long[] bits;
+    final int blockMask;
+    final int hashCount;
+
+    /**
+     * Instantiate a filter sized so that, after expectedInsertions distinct
+     * hash codes have been added, a hash code that was not added is reported
+     * as possibly present with probability about fpp.
+     */
+    public BloomFilter(int expectedInsertions, double fpp) {
+        if (fpp <= 0 || fpp >= 1) throw new IllegalArgumentException("fpp must be in (0, 1): " + fpp);
+
+        int n = Math.max(1, expectedInsertions);
+        double ln2 = Math.log(2);
+        double bitCount = -n * Math.log(fpp) / (ln2 * ln2);
+
+        int blockCount = 1;
+        while ((double) blockCount * BLOCK_BITS < bitCount && blockCount < (1 << 26)) blockCount <<= 1;
+
+        this.bits = new long[blockCount * LONGS_PER_BLOCK];
+        this.blockMask = blockCount - 1;
+        this.hashCount = Math.max(1, Math.min(16, (int) Math.round(bitCount / n * ln2)));
+    }
+
+    /**
+     * @return the number of bits in the filter
+     */
+    public long bitSize() {
+        return (long) this.bits.length * Long.SIZE;
+    }
+
+    public int hashCount() {
+        return this.hashCount;
+    }
+
+    /**
+     * The 64-bit finalizer of MurmurHash3, applied to a 32-bit hash code.
+     */
+    static long mix(int hash) {
+        long k = hash & 0xffffffffL;
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    public void add(E e) {
+        addHash(e.hashCode());
+    }
+
+    public boolean mightContain(E e) {
+        return mightContainHash(e.hashCode());
+    }
+
+    public void addHash(int hash) {
+        // bits 38-63 of the mixed hash pick the block; the bit positions in it
+        // are h1 + i * h2 (mod 512), from bits 0-8 and 20-28
+        long x = mix(hash);
+        int start = ((int) (x >>> 38) & this.blockMask) * LONGS_PER_BLOCK;
+        int h1 = (int) x;
+        int h2 = (int) (x >>> 20) | 1;
+
+        for (int i = 0; i < this.hashCount; i++) {
+            int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+            this.bits[start + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return false if hash was definitely never added, true if it may have been
+     */
+    public boolean mightContainHash(int hash) {
+        long x = mix(hash);
+        int start = ((int) (x >>> 38) & this.blockMask) * LONGS_PER_BLOCK;
+        int h1 = (int) x;
+        int h2 = (int) (x >>> 20) | 1;
+
+        for (int i = 0; i < this.hashCount; i++) {
+            int bit = (h1 + i * h2) & (BLOCK_BITS - 1);
+            if ((this.bits[start + (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remove every hash code from the filter.
+     */
+    public void clear() {
+        Arrays.fill(this.bits, 0L);
+    }
+}
@@ -1,9 +1,17 @@
 package hashtables;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 import java.util.spi.CurrencyNameProvider;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * An implementation of HashTable.
@@ -20,23 +28,88 @@ import java.util.spi.CurrencyNameProvider;
  * resize by incrementing n (by one). For example, when n=3, then capacity=7.
  * When size=6, then load factor ~=0.86. The addition of the seventh item would
  * trigger a resize, increasing the capacity of the array to 15.
+ * 
+ * That capacity scheme is the default LEGACY_MODULO HashingStrategy. A table
+ * created with SPREAD_MASK instead uses capacities of 2^n, doubling on each
+ * resize, and picks buckets by masking a bit-mixed hash code.
+ * 
+ * A bucket that reaches TREEIFY_THRESHOLD elements is converted into a
+ * SortedBucket, which keeps its elements ordered by hash code and (for
+ * Comparable elements) by compareTo(), and is searched by binary search. This
+ * keeps lookups logarithmic when many elements collide.
+ * 
+ * By default a resize rehashes every element inside the add() that triggers
+ * it. In incremental resize mode (see setIncrementalResize) the resize only
+ * allocates the new array; the old array is kept alongside it and each
+ * following add(), remove(), contains() and get() migrates a bounded number
+ * of buckets (plus the bucket of the element it touches) into the new array.
+ * capacity() and loadFactor() always describe the new array. Migrating is
+ * not a structural modification, so lookups do not invalidate iterators;
+ * instead, iterator(), forEach() and spliterator() finish the migration in
+ * progress before they start, and only see the new array.
+ * 
+ * To load many elements at once, addAll() and parallelAddAll() size the
+ * table once for the incoming count instead of growing it step by step;
+ * ensureCapacity() and trimToSize() resize it explicitly.
+ * 
+ * Lookups and resizes can be observed by a HashTableListener (see
+ * setListener), such as the HashTableStats returned by enableStats().
+ * 
+ * In filtered mode (see enableFilter) the table keeps a BloomFilter of the
+ * hash codes of its elements, and contains(), get() and getByKey() return
+ * at once when the filter rules the element out, without touching a bucket.
+ * Removed elements stay in the filter, which is rebuilt from the elements
+ * at every resize, and once the removals since the last rebuild pass
+ * FILTER_REBUILD_RATIO of the size (or an eighth of the capacity, whichever
+ * is more, so that rebuilding stays amortized O(1) per removal).
  */
 public class ChainingHashTable<E> implements HashTable<E> {
 
+    /**
+     * The number of old buckets migrated by each operation while an
+     * incremental resize is in progress.
+     */
+    static final int MIGRATION_STEP = 4;
+
+    /**
+     * The bucket length at which a bucket is converted into a SortedBucket.
+     */
+    static final int TREEIFY_THRESHOLD = 8;
+
+    /**
+     * The load factor past which the next add() grows the table.
+     */
+    static final double MAX_LOAD_FACTOR = 0.75;
+
+    /**
+     * The share of the size that removals since the last filter rebuild may
+     * reach before the filter is rebuilt, in filtered mode.
+     */
+    static final double FILTER_REBUILD_RATIO = 0.25;
+
     int size;
     ArrayList<E>[] table;
     double loadFactor;
+    final HashingStrategy hashing;
+
+    int modCount; // counts structural modifications, for fail-fast iteration
+
+    boolean incrementalResize;
+    ArrayList<E>[] oldTable; // non-null only while an incremental resize is in progress
+    int migrationIndex;
+
+    HashTableListener listener; // null unless instrumentation is enabled
+
+    BloomFilter<E> filter; // null unless filtered mode is on
+    double filterFpp;
+    int filterRemovals; // removals since the filter was last rebuilt
     
     
     /**
      * Instantiate a new hash table. The initial capacity should be 7.
      */
     public ChainingHashTable() {
-        this.size = 0;
-        
-        this.table =  (ArrayList<E>[]) new ArrayList[7];
-        this.loadFactor = (double) size / (double) this.table.length; //!may become a potential issue
-
+        this(HashingStrategy.LEGACY_MODULO);
     }
 
     /**
@@ -45,13 +118,33 @@ public class ChainingHashTable<E> implements HashTable<E> {
      * than a power of two.
      */
     public ChainingHashTable(int n) {
+        this(n, HashingStrategy.LEGACY_MODULO);
+    }
+
+    /**
+     * Instantiate a new hash table using the given hashing strategy, with
+     * the smallest capacity the strategy allows that is at least 7.
+     */
+    public ChainingHashTable(HashingStrategy hashing) {
+        this(7, hashing);
+    }
+
+    /**
+     * Instantiate a new hash table using the given hashing strategy. The
+     * initial capacity is the smallest one the strategy allows that is
+     * sufficient to hold n elements.
+     */
+    public ChainingHashTable(int n, HashingStrategy hashing) {
         this.size = 0;
-        int tempPower = (int) Math.ceil(Math.log(n + 1) / Math.log(2.0));
-        int newLength = (int) Math.pow(2.0, tempPower) - 1;
-        this.table =  (ArrayList<E>[]) new ArrayList[newLength];
+        this.hashing = hashing;
+        this.table =  (ArrayList<E>[]) new ArrayList[hashing.capacityFor(n)];
         this.loadFactor = (double) size / (double) this.table.length; //!may become a potential issue
     }
 
+    public HashingStrategy hashingStrategy() {
+        return this.hashing;
+    }
+
     @Override
     public int capacity() {
         return this.table.length;
@@ -67,10 +160,137 @@ public class ChainingHashTable<E> implements HashTable<E> {
         return this.loadFactor;
     }
 
+    /**
+     * Turn incremental resize mode on or off. Turning it off completes any
+     * migration that is still in progress.
+     */
+    public void setIncrementalResize(boolean incrementalResize) {
+        this.incrementalResize = incrementalResize;
+        if (!incrementalResize) finishMigration();
+    }
+
+    public boolean isIncrementalResize() {
+        return this.incrementalResize;
+    }
+
+    /**
+     * @return true iff an incremental resize has started but not yet moved every old bucket
+     */
+    public boolean isMigrating() {
+        return this.oldTable != null;
+    }
+
+    /**
+     * Install a listener for lookups and resizes, replacing any previous
+     * one (including the one installed by enableStats()). null removes it.
+     */
+    public void setListener(HashTableListener listener) {
+        this.listener = listener;
+    }
+
+    public HashTableListener getListener() {
+        return this.listener;
+    }
+
+    /**
+     * Start collecting statistics about this table, replacing any listener.
+     * 
+     * @return the statistics, updated as the table is used
+     */
+    public HashTableStats enableStats() {
+        HashTableStats stats = new HashTableStats(this);
+        this.listener = stats;
+        return stats;
+    }
+
+    /**
+     * Turn on filtered mode, with a filter sized for the most elements the
+     * table can hold before its next resize, at the given false-positive
+     * probability.
+     */
+    public void enableFilter(double fpp) {
+        this.filterFpp = fpp;
+        rebuildFilter();
+    }
+
+    public void disableFilter() {
+        this.filter = null;
+    }
+
+    public boolean isFiltered() {
+        return this.filter != null;
+    }
+
+    void rebuildFilter() {
+        BloomFilter<E> newFilter = new BloomFilter<>((int) (this.table.length * MAX_LOAD_FACTOR) + 1, this.filterFpp);
+
+        for (int i = 0; i < this.bucketCount(); i++) {
+            ArrayList<E> curArray = this.retrieveCurList(i);
+            if (curArray == null) continue;
+
+            for (E var : curArray) {
+                newFilter.addHash(var.hashCode());
+            }
+        }
+        this.filter = newFilter;
+        this.filterRemovals = 0;
+    }
+
+    /**
+     * Called after every removal. Removed elements stay in the filter and
+     * raise its false-positive rate, so it is rebuilt once there are enough.
+     */
+    void countFilterRemoval() {
+        if (this.filter == null) return;
+
+        this.filterRemovals++;
+        if (this.filterRemovals > Math.max(FILTER_REBUILD_RATIO * this.size, this.table.length / 8)) rebuildFilter();
+    }
+
+    /**
+     * @return true iff filtered mode is on and the filter rules hash out
+     */
+    boolean filteredOut(int hash) {
+        if (this.filter == null || this.filter.mightContainHash(hash)) return false;
+
+        if (this.listener != null) this.listener.onLookup(false);
+        return true;
+    }
+
+    int indexFor(int hash, int capacity) {
+        return this.hashing.indexFor(hash, capacity);
+    }
+
     public void enLarge(){
-        int newLength = (this.table.length + 1) * 2 - 1;
-        ArrayList<E>[] newArr = (ArrayList<E>[]) new ArrayList[newLength];
+        int newLength = this.hashing.nextCapacity(this.table.length);
+
+        if (this.incrementalResize) {
+            // only one migration at a time; the previous one is nearly done by now anyway
+            finishMigration();
+            long start = this.listener == null ? 0 : System.nanoTime();
+            this.modCount ++;
+            this.oldTable = this.table;
+            this.migrationIndex = 0;
+            this.table = (ArrayList<E>[]) new ArrayList[newLength];
+            this.loadFactor = (double) this.size / (double) newLength;
+            if (this.filter != null) rebuildFilter(); // eagerly: it is sized by the new capacity
+            if (this.listener != null) this.listener.onResize(this.oldTable.length, newLength, System.nanoTime() - start);
+            return;
+        }
 
+        rehash(newLength);
+    }
+
+    /**
+     * Move every element into a new array of the given length at once,
+     * completing any incremental resize in progress first.
+     */
+    void rehash(int newLength) {
+        finishMigration();
+
+        long start = this.listener == null ? 0 : System.nanoTime();
+        int oldLength = this.table.length;
+        ArrayList<E>[] newArr = (ArrayList<E>[]) new ArrayList[newLength];
 
         for (int i = 0; i < this.table.length; i ++){
             ArrayList<E> curArray = this.table[i];
@@ -83,56 +303,233 @@ public class ChainingHashTable<E> implements HashTable<E> {
         }
 
         this.table = newArr;
+        this.modCount ++;
 
         //!update load factor
         this.loadFactor = (double) this.size / (double) newLength;
 
+        if (this.filter != null) rebuildFilter();
+        if (this.listener != null) this.listener.onResize(oldLength, newLength, System.nanoTime() - start);
+    }
+
+    /**
+     * Return the capacity this table needs to hold n elements without
+     * growing: the capacity for n / MAX_LOAD_FACTOR buckets, by the same
+     * rule the constructors use.
+     */
+    int capacityToHold(int n) {
+        return capacityToHold(n, this.hashing);
+    }
+
+    /**
+     * Return the capacity a table using the given hashing strategy needs to
+     * hold n elements without growing. Passing it to the constructors gives
+     * a table of exactly that capacity, which is at least 1 even for n = 0.
+     */
+    public static int capacityToHold(int n, HashingStrategy hashing) {
+        return hashing.capacityFor((int) Math.min(Integer.MAX_VALUE, Math.ceil(Math.max(n, 1) / MAX_LOAD_FACTOR)));
+    }
+
+    /**
+     * Grow the table, with a single rehash, so that it can hold n elements
+     * without growing again. Does nothing if it already can.
+     */
+    public void ensureCapacity(int n) {
+        int newLength = capacityToHold(n);
+        if (newLength > this.table.length) rehash(newLength);
+    }
+
+    /**
+     * Shrink the table to the smallest capacity that holds its current
+     * elements without growing.
+     */
+    public void trimToSize() {
+        int newLength = capacityToHold(Math.max(this.size, 1));
+        if (newLength < this.table.length || this.oldTable != null) rehash(Math.min(newLength, this.table.length));
+    }
+
+    /**
+     * Move the old bucket at oldIndex (if any) into the current table.
+     */
+    void migrateBucket(int oldIndex) {
+        ArrayList<E> curArray = this.oldTable[oldIndex];
+
+        if (curArray == null) return;
+
+        for (E var : curArray) {
+            add(var, this.table, this.table.length);
+        }
+        this.oldTable[oldIndex] = null;
+    }
+
+    /**
+     * Migrate up to count old buckets, in index order.
+     */
+    void migrateBuckets(int count) {
+        while (this.oldTable != null && count > 0) {
+            migrateBucket(this.migrationIndex);
+            this.migrationIndex++;
+            count--;
+            if (this.migrationIndex >= this.oldTable.length) this.oldTable = null;
+        }
+    }
+
+    void finishMigration() {
+        if (this.oldTable != null) migrateBuckets(this.oldTable.length);
+    }
+
+    /**
+     * Called at the start of every operation on e. Once this returns, e (if
+     * present) is guaranteed to be in the current table rather than the old one.
+     */
+    void advanceMigration(E e) {
+        advanceMigration(e.hashCode());
+    }
+
+    void advanceMigration(int hash) {
+        if (this.oldTable == null) return;
+
+        migrateBucket(indexFor(hash, this.oldTable.length));
+        migrateBuckets(MIGRATION_STEP);
     }
 
     public boolean add(E e, ArrayList<E>[] arr, int capacity){
-        int index = Math.abs(e.hashCode()) % capacity;
+        int index = indexFor(e.hashCode(), capacity);
 
         ArrayList<E> curArray = arr[index];
 
-        if(curArray == null) arr[index] = curArray = new ArrayList<>();
-
-        for (int i = 0; i < curArray.size(); i ++){
-            if (curArray.get(i).equals(e)) {
-                curArray.set(i, e);
-                return false;
-            }
+        int i = curArray == null ? -1 : curArray.indexOf(e);
+        if (i != -1) {
+            curArray.set(i, e);
+            return false;
         }
 
         // in case we did not find the equals element
 
-        curArray.add(e);
+        insertNew(e, arr, index);
 
         return true;
 
     }
 
+    /**
+     * Append e, which is known not to be in the table, to the bucket at
+     * index of arr. Does not change size.
+     */
+    void insertNew(E e, ArrayList<E>[] arr, int index) {
+        ArrayList<E> curArray = arr[index];
+
+        if (curArray == null) arr[index] = curArray = new ArrayList<>();
+
+        curArray.add(e);
+
+        if (curArray.size() >= TREEIFY_THRESHOLD && !(curArray instanceof SortedBucket)) {
+            arr[index] = new SortedBucket<>(curArray);
+        }
+    }
+
     @Override
     public boolean add(E e) {
 
         //if current loaf factor is larger than 0.75 then we will enlarge
-        if (loadFactor > 0.75) enLarge();
+        if (loadFactor > MAX_LOAD_FACTOR) enLarge();
 
+        advanceMigration(e);
 
         boolean res = add(e, this.table, this.table.length);
 
         if(res){
             //!always update load factor and size
             this.size ++;
+            this.modCount ++;
             this.loadFactor = (double) this.size / (double) this.capacity();
 
+            if (this.filter != null) this.filter.addHash(e.hashCode());
+        }
+        return res;
+    }
+
+    /**
+     * Add every element of c, growing the table at most once beforehand.
+     * 
+     * @return true iff the table changed
+     */
+    public boolean addAll(Collection<? extends E> c) {
+        ensureCapacity(this.size + c.size());
+
+        boolean res = false;
+        for (E e : c) {
+            res |= add(e);
         }
         return res;
     }
 
+    /**
+     * Add every element of c like addAll(), inserting in parallel. The
+     * buckets are split into contiguous ranges, one per task, and each task
+     * only inserts the elements that hash into its range, so no two tasks
+     * ever touch the same bucket.
+     * 
+     * The table must not be used by other threads during the call.
+     * 
+     * @return true iff the table changed
+     */
+    public boolean parallelAddAll(Collection<? extends E> c) {
+        ensureCapacity(this.size + c.size());
+        finishMigration();
+
+        Object[] elements = c.toArray();
+        int capacity = this.table.length;
+        int partitions = Math.min(capacity, 4 * Runtime.getRuntime().availableProcessors());
+
+        // bucket index of each element, then a counting sort of the elements by partition
+        int[] indices = new int[elements.length];
+        IntStream.range(0, elements.length).parallel()
+                .forEach(i -> indices[i] = indexFor(elements[i].hashCode(), capacity));
+
+        int[] starts = new int[partitions + 1];
+        for (int index : indices) starts[partitionOf(index, capacity, partitions) + 1]++;
+        for (int p = 0; p < partitions; p++) starts[p + 1] += starts[p];
+
+        Object[] sorted = new Object[elements.length];
+        int[] next = starts.clone();
+        for (int i = 0; i < elements.length; i++) {
+            sorted[next[partitionOf(indices[i], capacity, partitions)]++] = elements[i];
+        }
+
+        int added = IntStream.range(0, partitions).parallel().map(p -> {
+            int count = 0;
+            for (int i = starts[p]; i < starts[p + 1]; i++) {
+                @SuppressWarnings("unchecked")
+                E e = (E) sorted[i];
+                if (add(e, this.table, capacity)) count++;
+            }
+            return count;
+        }).sum();
+
+        if (added == 0) return false;
+
+        if (this.filter != null) {
+            for (Object var : elements) {
+                this.filter.addHash(var.hashCode());
+            }
+        }
+
+        this.size += added;
+        this.modCount ++;
+        this.loadFactor = (double) this.size / (double) capacity;
+        return true;
+    }
+
+    static int partitionOf(int index, int capacity, int partitions) {
+        return (int) ((long) index * partitions / capacity);
+    }
+
     @Override
     public boolean remove(E e) {
+        advanceMigration(e);
 
-        int index = Math.abs(e.hashCode()) % this.capacity();
+        int index = indexFor(e.hashCode(), this.capacity());
 
         ArrayList<E> curArray = this.table[index];
 
@@ -142,51 +539,193 @@ public class ChainingHashTable<E> implements HashTable<E> {
 
         if (res){
             this.size --;
+            this.modCount ++;
             this.loadFactor = (double) this.size / (double) this.capacity();
+            countFilterRemoval();
         }
         return res;
     }
 
     @Override
     public boolean contains(E e) {
-        int index = Math.abs(e.hashCode()) % this.capacity();
+        if (filteredOut(e.hashCode())) return false;
 
-        ArrayList<E> curArray = this.table[index];
+        advanceMigration(e);
 
-        if(curArray == null) return false;
+        int index = indexFor(e.hashCode(), this.capacity());
 
-        for (E var : curArray){
-            if (var.equals(e)) return true;
-        }
+        ArrayList<E> curArray = this.table[index];
 
-        return false;
+        boolean res = curArray != null && curArray.indexOf(e) != -1;
+
+        if (this.listener != null) this.listener.onLookup(res);
+        return res;
     }
 
     @Override
     public E get(E e) {
-        int index = Math.abs(e.hashCode()) % this.capacity();
+        if (filteredOut(e.hashCode())) return null;
+
+        advanceMigration(e);
+
+        int index = indexFor(e.hashCode(), this.capacity());
 
         ArrayList<E> curArray = this.table[index];
 
+        int i = curArray == null ? -1 : curArray.indexOf(e);
+
+        if (this.listener != null) this.listener.onLookup(i != -1);
+        return i == -1 ? null : curArray.get(i);
+    }
+
+    @Override
+    public <K> E getByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+        if (filteredOut(hash)) return null;
+
+        advanceMigration(hash);
+
+        ArrayList<E> curArray = this.table[indexFor(hash, this.capacity())];
+
+        int i = curArray == null ? -1 : indexOfKey(curArray, hash, key, matcher);
+
+        if (this.listener != null) this.listener.onLookup(i != -1);
+        return i == -1 ? null : curArray.get(i);
+    }
+
+    @Override
+    public <K> E removeByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+        advanceMigration(hash);
+
+        ArrayList<E> curArray = this.table[indexFor(hash, this.capacity())];
+
         if (curArray == null) return null;
 
-        for (E var : curArray){
-            if (var.equals(e)) return var;
+        int i = indexOfKey(curArray, hash, key, matcher);
+        if (i == -1) return null;
+
+        E res = curArray.remove(i);
+        this.size --;
+        this.modCount ++;
+        this.loadFactor = (double) this.size / (double) this.capacity();
+        countFilterRemoval();
+        return res;
+    }
+
+    /**
+     * Replace the element identified by key with the result of remapping
+     * (see HashTable.computeByKey), searching its bucket only once.
+     * 
+     * @throws ConcurrentModificationException if remapping structurally modifies the table
+     */
+    @Override
+    public <K> E computeByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher, UnaryOperator<E> remapping) {
+        // grow first, as add() does, so the bucket found below stays valid
+        if (loadFactor > MAX_LOAD_FACTOR) enLarge();
+
+        advanceMigration(hash);
+
+        int index = indexFor(hash, this.capacity());
+        ArrayList<E> curArray = this.table[index];
+        int i = curArray == null ? -1 : indexOfKey(curArray, hash, key, matcher);
+
+        int expectedModCount = this.modCount;
+        E res = remapping.apply(i == -1 ? null : curArray.get(i));
+        if (this.modCount != expectedModCount) throw new ConcurrentModificationException();
+
+        if (i != -1) {
+            if (res != null) {
+                curArray.set(i, res);
+                return res;
+            }
+            curArray.remove(i);
+            this.size --;
+            this.modCount ++;
+            this.loadFactor = (double) this.size / (double) this.capacity();
+            countFilterRemoval();
+            return null;
         }
 
-        return null;
+        if (res == null) return null;
+
+        insertNew(res, this.table, index);
+        this.size ++;
+        this.modCount ++;
+        this.loadFactor = (double) this.size / (double) this.capacity();
+
+        if (this.filter != null) this.filter.addHash(hash);
+        return res;
     }
 
+    <K> int indexOfKey(ArrayList<E> curArray, int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+        if (curArray instanceof SortedBucket) return ((SortedBucket<E>) curArray).indexOfKey(hash, key, matcher);
+
+        for (int i = 0; i < curArray.size(); i++) {
+            if (matcher.matches(curArray.get(i), key)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Return the number of buckets an iteration has to visit: the capacity,
+     * plus the length of the old array while an incremental resize is in progress.
+     */
+    public int bucketCount() {
+        return this.oldTable == null ? this.table.length : this.table.length + this.oldTable.length;
+    }
+
+    /**
+     * Return the bucket at tableIndex. Indices at or past capacity() refer to
+     * the old array of an incremental resize in progress.
+     */
     public ArrayList<E> retrieveCurList(int tableIndex){
+        if (tableIndex >= this.table.length) return this.oldTable[tableIndex - this.table.length];
         return this.table[tableIndex];
     }
 
     @Override
     public Iterator<E> iterator() {
-
+        finishMigration();
         Iterator<E> res = new HashTableIterator<E>(this);
         return res;
+    }
+
+    /**
+     * Perform the action on every element, walking the buckets directly
+     * rather than through an iterator.
+     * 
+     * @throws ConcurrentModificationException if the action structurally modifies the table
+     */
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        finishMigration();
+        int expectedModCount = this.modCount;
+        int bucketCount = this.bucketCount();
+
+        for (int i = 0; i < bucketCount; i++) {
+            ArrayList<E> curArray = this.retrieveCurList(i);
+            if (curArray == null) continue;
+
+            for (int j = 0; j < curArray.size(); j++) {
+                action.accept(curArray.get(j));
+            }
+            if (this.modCount != expectedModCount) throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Return a Spliterator that splits the table by bucket range.
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        finishMigration();
+        return new HashTableSpliterator<>(this);
+    }
+
+    public Stream<E> stream() {
+        return StreamSupport.stream(this.spliterator(), false);
+    }
 
-        
+    public Stream<E> parallelStream() {
+        return StreamSupport.stream(this.spliterator(), true);
     }
 }
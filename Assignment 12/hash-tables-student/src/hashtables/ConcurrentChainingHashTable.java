@@ -0,0 +1,365 @@
+package hashtables;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * A thread-safe implementation of HashTable.
+ *
+ * Like ChainingHashTable, this implementation uses chaining to resolve
+ * collisions, but the table is split into independently locked segments
+ * (lock striping). The high bits of an element's (spread) hash choose its
+ * segment and the low bits choose the bucket inside that segment.
+ *
+ * Writers (add and remove) lock only the segment they touch, so threads
+ * working on different segments never contend. Readers (contains, get and
+ * iteration) take no lock at all: chains are built from nodes whose next
+ * pointer never changes, removal copies the nodes in front of the removed
+ * one instead of unlinking it in place, and every bucket array is published
+ * through a volatile field, so a reader always sees a consistent chain.
+ *
+ * Each segment resizes on its own, under its own lock, once its load factor
+ * exceeds 0.75. Resizes of different segments therefore run in parallel on
+ * whichever threads trigger them, while readers keep using the old bucket
+ * array until the new one is published.
+ *
+ * Capacities are powers of two. capacity() is the total number of buckets
+ * over all segments. size() and loadFactor() are exact when the table is
+ * quiescent and a close estimate while writers are active. Iterators are
+ * weakly consistent: they never throw ConcurrentModificationException and
+ * see every element that was present for the whole iteration.
+ */
+public class ConcurrentChainingHashTable<E> implements HashTable<E> {
+
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    static final int MIN_SEGMENT_CAPACITY = 2;
+    static final int MAX_SEGMENT_CAPACITY = 1 << 30;
+
+    final Segment<E>[] segments;
+    final int segmentShift;
+
+    /**
+     * Instantiate a new hash table with room for a small number of elements
+     * and the default number of segments.
+     */
+    public ConcurrentChainingHashTable() {
+        this(DEFAULT_CONCURRENCY_LEVEL * MIN_SEGMENT_CAPACITY, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Instantiate a new hash table with a capacity of at least n and the
+     * default number of segments.
+     */
+    public ConcurrentChainingHashTable(int n) {
+        this(n, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Instantiate a new hash table with a capacity of at least n, split into
+     * at least concurrencyLevel segments (rounded up to a power of two).
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public ConcurrentChainingHashTable(int n, int concurrencyLevel) {
+        if (n < 0 || concurrencyLevel <= 0) throw new IllegalArgumentException();
+
+        int segmentCount = powerOfTwoAtLeast(Math.min(concurrencyLevel, 1 << 16));
+        int segmentCapacity = powerOfTwoAtLeast(Math.max(MIN_SEGMENT_CAPACITY, (n + segmentCount - 1) / segmentCount));
+
+        this.segments = (Segment<E>[]) new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new Segment<>(segmentCapacity);
+        }
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+    }
+
+    static int powerOfTwoAtLeast(int n) {
+        if (n >= MAX_SEGMENT_CAPACITY) return MAX_SEGMENT_CAPACITY;
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * Mix the bits of a hash code so that both the high bits (segment) and
+     * the low bits (bucket) depend on all of its bits.
+     */
+    static int spread(int h) {
+        return HashingStrategy.spread(h);
+    }
+
+    Segment<E> segmentFor(int hash) {
+        // segmentShift is 32 for a single segment, and >>> 32 is a no-op in Java
+        return this.segments.length == 1 ? this.segments[0] : this.segments[hash >>> this.segmentShift];
+    }
+
+    @Override
+    public int capacity() {
+        long res = 0;
+        for (Segment<E> segment : this.segments) {
+            res += segment.table.length();
+        }
+        return (int) Math.min(res, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int size() {
+        long res = 0;
+        for (Segment<E> segment : this.segments) {
+            res += segment.count;
+        }
+        return (int) Math.min(res, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public double loadFactor() {
+        return (double) this.size() / (double) this.capacity();
+    }
+
+    @Override
+    public boolean add(E e) {
+        int hash = spread(e.hashCode());
+        return segmentFor(hash).add(e, hash);
+    }
+
+    @Override
+    public boolean remove(E e) {
+        int hash = spread(e.hashCode());
+        return segmentFor(hash).remove(e, hash);
+    }
+
+    @Override
+    public boolean contains(E e) {
+        return get(e) != null;
+    }
+
+    @Override
+    public E get(E e) {
+        int hash = spread(e.hashCode());
+        AtomicReferenceArray<Node<E>> tab = segmentFor(hash).table;
+
+        for (Node<E> node = tab.get(hash & (tab.length() - 1)); node != null; node = node.next) {
+            E var = node.element;
+            if (node.hash == hash && var.equals(e)) return var;
+        }
+        return null;
+    }
+
+    @Override
+    public <K> E getByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+        int spreadHash = spread(hash);
+        AtomicReferenceArray<Node<E>> tab = segmentFor(spreadHash).table;
+
+        for (Node<E> node = tab.get(spreadHash & (tab.length() - 1)); node != null; node = node.next) {
+            E var = node.element;
+            if (node.hash == spreadHash && matcher.matches(var, key)) return var;
+        }
+        return null;
+    }
+
+    @Override
+    public <K> E removeByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+        int spreadHash = spread(hash);
+        return segmentFor(spreadHash).removeByKey(spreadHash, key, matcher);
+    }
+
+    /**
+     * Replace the element identified by key with the result of remapping
+     * (see HashTable.computeByKey), atomically: the segment of the key stays
+     * locked from the lookup to the update, so concurrent calls for the same
+     * key never lose each other's results. remapping should be short, since
+     * other writers to the segment wait for it.
+     */
+    @Override
+    public <K> E computeByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher, UnaryOperator<E> remapping) {
+        int spreadHash = spread(hash);
+        return segmentFor(spreadHash).computeByKey(spreadHash, key, matcher, remapping);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new ConcurrentIterator();
+    }
+
+    /**
+     * A chain node. The next pointer is final so that a reader that has
+     * reached a node can always finish walking the chain it started on.
+     */
+    static final class Node<E> {
+        final int hash;
+        volatile E element;
+        final Node<E> next;
+
+        Node(int hash, E element, Node<E> next) {
+            this.hash = hash;
+            this.element = element;
+            this.next = next;
+        }
+    }
+
+    /**
+     * A lock-protected chaining table holding the elements of one stripe.
+     */
+    static final class Segment<E> extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        volatile AtomicReferenceArray<Node<E>> table;
+        volatile int count; // only written while holding the lock
+
+        Segment(int capacity) {
+            this.table = new AtomicReferenceArray<>(capacity);
+        }
+
+        boolean add(E e, int hash) {
+            lock();
+            try {
+                AtomicReferenceArray<Node<E>> tab = this.table;
+                int index = hash & (tab.length() - 1);
+                Node<E> head = tab.get(index);
+
+                for (Node<E> node = head; node != null; node = node.next) {
+                    if (node.hash == hash && node.element.equals(e)) {
+                        node.element = e;
+                        return false;
+                    }
+                }
+
+                tab.set(index, new Node<>(hash, e, head));
+                int newCount = this.count + 1;
+                this.count = newCount;
+                if ((double) newCount / (double) tab.length() > 0.75) enLarge();
+                return true;
+            } finally {
+                unlock();
+            }
+        }
+
+        boolean remove(E e, int hash) {
+            return removeByKey(hash, e, (var, key) -> var.equals(key)) != null;
+        }
+
+        <K> E removeByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+            lock();
+            try {
+                AtomicReferenceArray<Node<E>> tab = this.table;
+                int index = hash & (tab.length() - 1);
+                Node<E> head = tab.get(index);
+
+                Node<E> target = head;
+                while (target != null && !(target.hash == hash && matcher.matches(target.element, key))) {
+                    target = target.next;
+                }
+                if (target == null) return null;
+
+                unlink(tab, index, head, target);
+                return target.element;
+            } finally {
+                unlock();
+            }
+        }
+
+        <K> E computeByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher, UnaryOperator<E> remapping) {
+            lock();
+            try {
+                AtomicReferenceArray<Node<E>> tab = this.table;
+                int index = hash & (tab.length() - 1);
+                Node<E> head = tab.get(index);
+
+                Node<E> target = head;
+                while (target != null && !(target.hash == hash && matcher.matches(target.element, key))) {
+                    target = target.next;
+                }
+
+                E res = remapping.apply(target == null ? null : target.element);
+
+                if (target != null && res != null) {
+                    target.element = res;
+                } else if (target != null) {
+                    unlink(tab, index, head, target);
+                } else if (res != null) {
+                    tab.set(index, new Node<>(hash, res, head));
+                    int newCount = this.count + 1;
+                    this.count = newCount;
+                    if ((double) newCount / (double) tab.length() > 0.75) enLarge();
+                }
+                return res;
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Remove target from the chain starting at head, in bucket index of
+         * tab. Must be called while holding the lock.
+         */
+        void unlink(AtomicReferenceArray<Node<E>> tab, int index, Node<E> head, Node<E> target) {
+            // copy the nodes in front of target; readers already past them are unaffected
+            Node<E> newHead = target.next;
+            for (Node<E> node = head; node != target; node = node.next) {
+                newHead = new Node<>(node.hash, node.element, newHead);
+            }
+            tab.set(index, newHead);
+            this.count = this.count - 1;
+        }
+
+        /**
+         * Double the bucket array. Must be called while holding the lock.
+         */
+        void enLarge() {
+            AtomicReferenceArray<Node<E>> oldTab = this.table;
+            int oldLength = oldTab.length();
+            if (oldLength >= MAX_SEGMENT_CAPACITY) return;
+
+            int newLength = oldLength * 2;
+            AtomicReferenceArray<Node<E>> newTab = new AtomicReferenceArray<>(newLength);
+            for (int i = 0; i < oldLength; i++) {
+                for (Node<E> node = oldTab.get(i); node != null; node = node.next) {
+                    int index = node.hash & (newLength - 1);
+                    newTab.set(index, new Node<>(node.hash, node.element, newTab.get(index)));
+                }
+            }
+            this.table = newTab;
+        }
+    }
+
+    private class ConcurrentIterator implements Iterator<E> {
+        int segmentIndex = 0;
+        AtomicReferenceArray<Node<E>> tab = segments[0].table;
+        int bucketIndex = 0;
+        Node<E> nextNode = null;
+
+        ConcurrentIterator() {
+            advance();
+        }
+
+        void advance() {
+            if (this.nextNode != null) this.nextNode = this.nextNode.next;
+
+            while (this.nextNode == null) {
+                if (this.bucketIndex >= this.tab.length()) {
+                    this.segmentIndex++;
+                    if (this.segmentIndex >= segments.length) return;
+                    this.tab = segments[this.segmentIndex].table;
+                    this.bucketIndex = 0;
+                    continue;
+                }
+                this.nextNode = this.tab.get(this.bucketIndex);
+                this.bucketIndex++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.nextNode != null;
+        }
+
+        @Override
+        public E next() {
+            if (this.nextNode == null) throw new NoSuchElementException();
+
+            E res = this.nextNode.element;
+            advance();
+            return res;
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package hashtables;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.UnaryOperator;
+
+/**
+ * An implementation of HashTable.
+ *
+ * This implementation uses bucketized cuckoo hashing. Every element has two
+ * candidate buckets, picked by two different hash functions, and each bucket
+ * holds SLOTS_PER_BUCKET elements. An element is always stored in one of its
+ * two buckets, so contains(), get() and remove() look at no more than
+ * 2 * SLOTS_PER_BUCKET slots, plus a small stash.
+ *
+ * add() puts an element into a free slot of either bucket. When both are
+ * full, it evicts an element from one of them and moves that element to its
+ * other bucket, possibly evicting another, and so on, up to MAX_KICKS times.
+ * An element still homeless after that goes to the stash, a short list
+ * searched after the buckets. Once the stash holds STASH_SIZE elements, a
+ * failed insert grows the table instead, unless the load factor is below
+ * MIN_RESIZE_LOAD_FACTOR: failures in a table that empty come from elements
+ * whose hash codes collide, which growing cannot separate, so those
+ * elements stay in the stash.
+ *
+ * The capacity is the number of slots, a power of two. When the load factor
+ * exceeds MAX_LOAD_FACTOR, the next add() doubles it.
+ */
+public class CuckooHashTable<E> implements HashTable<E> {
+
+    static final int SLOTS_PER_BUCKET = 4;
+    static final int MAX_KICKS = 500;
+    static final int STASH_SIZE = 4;
+    static final double MAX_LOAD_FACTOR = 0.9;
+    static final double MIN_RESIZE_LOAD_FACTOR = 0.25;
+
+    int size;
+    Object[] elements; // bucket b is elements[b * SLOTS_PER_BUCKET ... (b + 1) * SLOTS_PER_BUCKET - 1]
+    int[] hashes;
+    int bucketMask;
+    ArrayList<E> stash;
+    double loadFactor;
+    int random; // xorshift state, for picking the slot to evict
+
+    /**
+     * Instantiate a new hash table with 16 slots.
+     */
+    public CuckooHashTable() {
+        this(16);
+    }
+
+    /**
+     * Instantiate a new hash table with at least n slots.
+     */
+    public CuckooHashTable(int n) {
+        int bucketCount = 1;
+        while (bucketCount * SLOTS_PER_BUCKET < n) bucketCount <<= 1;
+
+        this.size = 0;
+        this.elements = new Object[bucketCount * SLOTS_PER_BUCKET];
+        this.hashes = new int[bucketCount * SLOTS_PER_BUCKET];
+        this.bucketMask = bucketCount - 1;
+        this.stash = new ArrayList<>();
+        this.loadFactor = 0.0;
+        this.random = 0x2545f491;
+    }
+
+    @Override
+    public int capacity() {
+        return this.elements.length;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public double loadFactor() {
+        return this.loadFactor;
+    }
+
+    int bucket1(int hash) {
+        return HashingStrategy.spread(hash) & this.bucketMask;
+    }
+
+    int bucket2(int hash) {
+        return HashingStrategy.spread(hash ^ 0x5bd1e995) & this.bucketMask;
+    }
+
+    /**
+     * Return the candidate bucket of an element with the given hash other than b.
+     */
+    int alternate(int bucket, int hash) {
+        int b1 = bucket1(hash);
+        return bucket == b1 ? bucket2(hash) : b1;
+    }
+
+    /**
+     * Return the slot holding an element equals() to e, or -1 if there is
+     * none in the buckets (it may still be in the stash).
+     */
+    int findSlot(Object e, int hash) {
+        int slot = findSlotInBucket(bucket1(hash), e, hash);
+        return slot != -1 ? slot : findSlotInBucket(bucket2(hash), e, hash);
+    }
+
+    int findSlotInBucket(int bucket, Object e, int hash) {
+        int start = bucket * SLOTS_PER_BUCKET;
+        for (int slot = start; slot < start + SLOTS_PER_BUCKET; slot++) {
+            if (this.hashes[slot] == hash && e.equals(this.elements[slot])) return slot;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    <K> int findSlotByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+        int slot = findSlotByKeyInBucket(bucket1(hash), hash, key, matcher);
+        return slot != -1 ? slot : findSlotByKeyInBucket(bucket2(hash), hash, key, matcher);
+    }
+
+    @SuppressWarnings("unchecked")
+    <K> int findSlotByKeyInBucket(int bucket, int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+        int start = bucket * SLOTS_PER_BUCKET;
+        for (int slot = start; slot < start + SLOTS_PER_BUCKET; slot++) {
+            Object cur = this.elements[slot];
+            if (cur != null && this.hashes[slot] == hash && matcher.matches((E) cur, key)) return slot;
+        }
+        return -1;
+    }
+
+    int indexInStash(Object e) {
+        for (int i = 0; i < this.stash.size(); i++) {
+            if (e.equals(this.stash.get(i))) return i;
+        }
+        return -1;
+    }
+
+    <K> int indexInStashByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+        for (int i = 0; i < this.stash.size(); i++) {
+            E cur = this.stash.get(i);
+            if (cur.hashCode() == hash && matcher.matches(cur, key)) return i;
+        }
+        return -1;
+    }
+
+    boolean tryPlace(int bucket, Object e, int hash) {
+        int start = bucket * SLOTS_PER_BUCKET;
+        for (int slot = start; slot < start + SLOTS_PER_BUCKET; slot++) {
+            if (this.elements[slot] == null) {
+                this.elements[slot] = e;
+                this.hashes[slot] = hash;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int nextRandom() {
+        int x = this.random;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        this.random = x;
+        return x;
+    }
+
+    /**
+     * Place e in one of its buckets, evicting other elements to their
+     * alternate buckets as needed.
+     *
+     * @return null if every element found a slot, or the element left homeless
+     */
+    Object cuckoo(Object e, int hash) {
+        int bucket = bucket1(hash);
+        if (tryPlace(bucket, e, hash) || tryPlace(bucket2(hash), e, hash)) return null;
+
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            int slot = bucket * SLOTS_PER_BUCKET + (nextRandom() & (SLOTS_PER_BUCKET - 1));
+
+            Object evicted = this.elements[slot];
+            int evictedHash = this.hashes[slot];
+            this.elements[slot] = e;
+            this.hashes[slot] = hash;
+            e = evicted;
+            hash = evictedHash;
+
+            bucket = alternate(bucket, hash);
+            if (tryPlace(bucket, e, hash)) return null;
+        }
+        return e;
+    }
+
+    /**
+     * Insert an element that is known not to be in the table yet. Does not
+     * change size.
+     */
+    @SuppressWarnings("unchecked")
+    void insertNew(Object e, int hash) {
+        Object homeless = cuckoo(e, hash);
+        if (homeless == null) return;
+
+        if (this.stash.size() < STASH_SIZE || (double) this.size / (double) this.capacity() < MIN_RESIZE_LOAD_FACTOR) {
+            this.stash.add((E) homeless);
+            return;
+        }
+        rebuild(this.elements.length * 2, homeless);
+    }
+
+    /**
+     * Move every element, the stash and extra (if non-null) into a table with
+     * the given number of slots.
+     */
+    void rebuild(int newLength, Object extra) {
+        Object[] oldElements = this.elements;
+        int[] oldHashes = this.hashes;
+        ArrayList<E> oldStash = this.stash;
+
+        this.elements = new Object[newLength];
+        this.hashes = new int[newLength];
+        this.bucketMask = newLength / SLOTS_PER_BUCKET - 1;
+        this.stash = new ArrayList<>();
+
+        for (int i = 0; i < oldElements.length; i++) {
+            if (oldElements[i] != null) insertNew(oldElements[i], oldHashes[i]);
+        }
+        for (E e : oldStash) insertNew(e, e.hashCode());
+        if (extra != null) insertNew(extra, extra.hashCode());
+
+        this.loadFactor = (double) this.size / (double) this.capacity();
+    }
+
+    public void enLarge() {
+        rebuild(this.elements.length * 2, null);
+    }
+
+    @Override
+    public boolean add(E e) {
+        if (loadFactor > MAX_LOAD_FACTOR) enLarge();
+
+        int hash = e.hashCode();
+        int slot = findSlot(e, hash);
+        if (slot != -1) {
+            this.elements[slot] = e;
+            return false;
+        }
+        if (!this.stash.isEmpty()) {
+            int i = indexInStash(e);
+            if (i != -1) {
+                this.stash.set(i, e);
+                return false;
+            }
+        }
+
+        insertNew(e, hash);
+        this.size++;
+        this.loadFactor = (double) this.size / (double) this.capacity();
+        return true;
+    }
+
+    void removeSlot(int slot) {
+        this.elements[slot] = null;
+        this.hashes[slot] = 0;
+        this.size--;
+        this.loadFactor = (double) this.size / (double) this.capacity();
+    }
+
+    void removeFromStash(int i) {
+        this.stash.remove(i);
+        this.size--;
+        this.loadFactor = (double) this.size / (double) this.capacity();
+    }
+
+    @Override
+    public boolean remove(E e) {
+        int slot = findSlot(e, e.hashCode());
+        if (slot != -1) {
+            removeSlot(slot);
+            return true;
+        }
+        if (this.stash.isEmpty()) return false;
+
+        int i = indexInStash(e);
+        if (i == -1) return false;
+        removeFromStash(i);
+        return true;
+    }
+
+    @Override
+    public boolean contains(E e) {
+        if (findSlot(e, e.hashCode()) != -1) return true;
+        return !this.stash.isEmpty() && indexInStash(e) != -1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(E e) {
+        int slot = findSlot(e, e.hashCode());
+        if (slot != -1) return (E) this.elements[slot];
+        if (this.stash.isEmpty()) return null;
+
+        int i = indexInStash(e);
+        return i == -1 ? null : this.stash.get(i);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K> E getByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+        int slot = findSlotByKey(hash, key, matcher);
+        if (slot != -1) return (E) this.elements[slot];
+        if (this.stash.isEmpty()) return null;
+
+        int i = indexInStashByKey(hash, key, matcher);
+        return i == -1 ? null : this.stash.get(i);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K> E removeByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+        int slot = findSlotByKey(hash, key, matcher);
+        if (slot != -1) {
+            E res = (E) this.elements[slot];
+            removeSlot(slot);
+            return res;
+        }
+        if (this.stash.isEmpty()) return null;
+
+        int i = indexInStashByKey(hash, key, matcher);
+        if (i == -1) return null;
+        E res = this.stash.get(i);
+        removeFromStash(i);
+        return res;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K> E computeByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher, UnaryOperator<E> remapping) {
+        if (loadFactor > MAX_LOAD_FACTOR) enLarge();
+
+        int slot = findSlotByKey(hash, key, matcher);
+        int i = slot != -1 || this.stash.isEmpty() ? -1 : indexInStashByKey(hash, key, matcher);
+
+        E old = slot != -1 ? (E) this.elements[slot] : i != -1 ? this.stash.get(i) : null;
+        E res = remapping.apply(old);
+
+        if (slot != -1) {
+            if (res == null) {
+                removeSlot(slot);
+            } else {
+                this.elements[slot] = res;
+            }
+            return res;
+        }
+        if (i != -1) {
+            if (res == null) {
+                removeFromStash(i);
+            } else {
+                this.stash.set(i, res);
+            }
+            return res;
+        }
+
+        if (res == null) return null;
+
+        insertNew(res, hash);
+        this.size++;
+        this.loadFactor = (double) this.size / (double) this.capacity();
+        return res;
+    }
+
+    /**
+     * @return the number of elements currently in the stash
+     */
+    public int stashSize() {
+        return this.stash.size();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new CuckooIterator();
+    }
+
+    private class CuckooIterator implements Iterator<E> {
+        int index = nextOccupied(0); // a slot, or elements.length + an index into the stash
+
+        int nextOccupied(int from) {
+            Object[] elements = CuckooHashTable.this.elements;
+            while (from < elements.length && elements[from] == null) from++;
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.index < CuckooHashTable.this.elements.length + CuckooHashTable.this.stash.size();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (!hasNext()) throw new NoSuchElementException();
+
+            Object[] elements = CuckooHashTable.this.elements;
+            if (this.index >= elements.length) {
+                return CuckooHashTable.this.stash.get(this.index++ - elements.length);
+            }
+
+            E res = (E) elements[this.index];
+            this.index = nextOccupied(this.index + 1);
+            return res;
+        }
+    }
+}
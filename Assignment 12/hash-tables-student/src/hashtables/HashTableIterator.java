@@ -1,20 +1,37 @@
 package hashtables;
 
 import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
-import java.util.List;
 import java.util.NoSuchElementException;
 
+/**
+ * An iterator over a ChainingHashTable.
+ * 
+ * The iterator always holds the position of the next element (its bucket and
+ * its index in that bucket), so hasNext() is a field check and next() only
+ * scans forward when it leaves a bucket.
+ * 
+ * It is fail-fast: if the table is structurally modified after the iterator
+ * was created (an element added or removed, or a resize), next() throws a
+ * ConcurrentModificationException. Migrating buckets during an incremental
+ * resize is not a structural modification: the table finishes any migration
+ * before handing out an iterator.
+ */
 public class HashTableIterator<E> implements Iterator<E> {
 
     ChainingHashTable<E> table;
     int tableIndex;
     int listIndex;
+    ArrayList<E> curArray; // the bucket holding the next element, or null when there is none
+    int expectedModCount;
 
     public HashTableIterator(ChainingHashTable<E> table){
         this.table = table;
-        this.tableIndex = 0;
+        this.expectedModCount = table.modCount;
+        this.tableIndex = -1;
         this.listIndex = 0;
+        moveToBucket(this.retrieveClosestNonNullList(-1));
     }
 
     
@@ -22,63 +39,37 @@ public class HashTableIterator<E> implements Iterator<E> {
         //this will return the closest index of a NonNullList from tableIndex onward (exclusive tableIndex)
         //if there is no more then it will return -1
         
-        if (tableIndex >= this.table.capacity() - 1) return -1;
-        
-        tableIndex += 1;
-        
-        ArrayList<E> curArray = this.table.retrieveCurList(tableIndex);
-        
-        while(curArray == null){
-            tableIndex += 1;
-            if (tableIndex >= this.table.capacity()) return -1; //!in case there is no more spot left
-            curArray = this.table.retrieveCurList(tableIndex);
+        int bucketCount = this.table.bucketCount();
+
+        for (tableIndex += 1; tableIndex < bucketCount; tableIndex++) {
+            ArrayList<E> curArray = this.table.retrieveCurList(tableIndex);
+            if (curArray != null && !curArray.isEmpty()) return tableIndex; // buckets emptied by remove() count as null
         }
         
-        return tableIndex;
-        
+        return -1;
+    }
+
+    void moveToBucket(int tableIndex) {
+        this.tableIndex = tableIndex;
+        this.listIndex = 0;
+        this.curArray = tableIndex == -1 ? null : this.table.retrieveCurList(tableIndex);
     }
     
     @Override
     public boolean hasNext(){
-
-        ArrayList<E> curArray = this.table.retrieveCurList(this.tableIndex);
-
-        if(curArray != null && this.listIndex < curArray.size()) return true;
-
-        //reach here because either curArray is null or the listIndex got out of bound
-
-        int nextAvailableArray = this.retrieveClosestNonNullList(tableIndex);
-
-        return nextAvailableArray != -1;
-
+        return this.curArray != null;
     }
 
 
     @Override
     public E next(){
-        // return the current value and then moves next
-
-        //remember to update the listIndex again if moves to the next list
-
-        if (!this.hasNext()) throw new NoSuchElementException(); //rules out case where after 
-
-        
-        ArrayList<E> curArray = this.table.retrieveCurList(this.tableIndex); // return arrayList at the current table index (index of underlying array)
-
-
-        if(curArray == null || this.listIndex >= curArray.size()){
-            int temp = this.tableIndex;
-            int nextAvailableIndex = this.retrieveClosestNonNullList(temp);
-            curArray = this.table.retrieveCurList(nextAvailableIndex); //!this already updated the tableIndex to the next non-null table
-            this.listIndex = 0;
-            this.tableIndex = nextAvailableIndex; //! must update tableIndex
-            System.out.println("___________" + this.tableIndex + "__________");
-        } 
-
+        if (this.table.modCount != this.expectedModCount) throw new ConcurrentModificationException();
+        if (this.curArray == null) throw new NoSuchElementException();
 
-        E res =  curArray.get(this.listIndex);
+        E res = this.curArray.get(this.listIndex);
 
         this.listIndex ++;
+        if (this.listIndex >= this.curArray.size()) moveToBucket(this.retrieveClosestNonNullList(this.tableIndex));
 
         return res;
     }
@@ -0,0 +1,32 @@
+package hashtables;
+
+/**
+ * Receives events from a ChainingHashTable, for metrics. Installed with
+ * ChainingHashTable.setListener(); a table without a listener pays only a
+ * null check per event.
+ * 
+ * Listeners are called on the thread performing the operation, inside the
+ * operation, so they should be quick.
+ */
+public interface HashTableListener {
+
+    /**
+     * Called after each contains(), get() and getByKey().
+     * 
+     * @param hit true iff the element was found
+     */
+    default void onLookup(boolean hit) {
+    }
+
+    /**
+     * Called after the table changes capacity. For an incremental resize,
+     * nanos only covers allocating the new array; the migration is spread
+     * over later operations.
+     * 
+     * @param oldCapacity the capacity before the resize
+     * @param newCapacity the capacity after the resize
+     * @param nanos       the time the resize took
+     */
+    default void onResize(int oldCapacity, int newCapacity, long nanos) {
+    }
+}
@@ -0,0 +1,93 @@
+package hashtables;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator over a range of buckets of a ChainingHashTable.
+ * 
+ * Splitting halves the bucket range, so a parallel stream over the table
+ * hands each worker a disjoint set of buckets. Like HashTableIterator, it
+ * is fail-fast: traversal throws a ConcurrentModificationException if the
+ * table was structurally modified after the traversal started.
+ */
+public class HashTableSpliterator<E> implements Spliterator<E> {
+
+    final ChainingHashTable<E> table;
+    int index;      // the next bucket to visit
+    int listIndex;  // the next element in bucket index, for tryAdvance
+    final int fence;  // one past the last bucket to visit
+    final int expectedModCount;
+    long estimate;
+
+    public HashTableSpliterator(ChainingHashTable<E> table) {
+        this(table, 0, table.bucketCount(), table.size(), table.modCount);
+    }
+
+    HashTableSpliterator(ChainingHashTable<E> table, int origin, int fence, long estimate, int expectedModCount) {
+        this.table = table;
+        this.index = origin;
+        this.fence = fence;
+        this.estimate = estimate;
+        this.expectedModCount = expectedModCount;
+    }
+
+    @Override
+    public Spliterator<E> trySplit() {
+        if (this.listIndex != 0) return null;
+
+        int lo = this.index;
+        int mid = (lo + this.fence) >>> 1;
+        if (lo >= mid) return null;
+
+        this.index = mid;
+        this.estimate >>>= 1;
+        return new HashTableSpliterator<>(this.table, lo, mid, this.estimate, this.expectedModCount);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super E> action) {
+        if (action == null) throw new NullPointerException();
+
+        while (this.index < this.fence) {
+            ArrayList<E> curArray = this.table.retrieveCurList(this.index);
+            if (curArray != null && this.listIndex < curArray.size()) {
+                E e = curArray.get(this.listIndex++);
+                action.accept(e);
+                if (this.table.modCount != this.expectedModCount) throw new ConcurrentModificationException();
+                return true;
+            }
+            this.index++;
+            this.listIndex = 0;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super E> action) {
+        if (action == null) throw new NullPointerException();
+
+        for (; this.index < this.fence; this.index++) {
+            ArrayList<E> curArray = this.table.retrieveCurList(this.index);
+            if (curArray == null) continue;
+
+            for (int i = this.listIndex; i < curArray.size(); i++) {
+                action.accept(curArray.get(i));
+            }
+            this.listIndex = 0;
+        }
+        if (this.table.modCount != this.expectedModCount) throw new ConcurrentModificationException();
+    }
+
+    @Override
+    public long estimateSize() {
+        return this.estimate;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.DISTINCT | Spliterator.NONNULL;
+    }
+}
@@ -0,0 +1,167 @@
+package hashtables;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.function.IntConsumer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Statistics about one ChainingHashTable: lookup hits and misses and
+ * resizes, counted as they happen, and chain lengths, computed from the
+ * buckets on request. Created by ChainingHashTable.enableStats(), and can
+ * be exported over JMX with register().
+ * 
+ * The counters are plain fields updated by the table's own thread, so
+ * another thread (such as a JMX client) may read slightly stale values.
+ * The chain lengths are best-effort in the same way: the table is not
+ * thread-safe, so a walk that runs while its thread adds, removes or
+ * resizes sees some mix of its states. Each walk reads the bucket arrays
+ * once, so a resize cannot make it index past them, and any other failure
+ * ends it early with what it has counted; no exception reaches the caller.
+ */
+public class HashTableStats implements HashTableListener, HashTableStatsMXBean {
+
+    /**
+     * The length of the chain-length histogram; its last slot counts every
+     * chain at least that long.
+     */
+    public static final int HISTOGRAM_LENGTH = 16;
+
+    final ChainingHashTable<?> table;
+    long hitCount;
+    long missCount;
+    long resizeCount;
+    long resizeTimeNanos;
+
+    HashTableStats(ChainingHashTable<?> table) {
+        this.table = table;
+    }
+
+    @Override
+    public void onLookup(boolean hit) {
+        if (hit) this.hitCount++;
+        else this.missCount++;
+    }
+
+    @Override
+    public void onResize(int oldCapacity, int newCapacity, long nanos) {
+        this.resizeCount++;
+        this.resizeTimeNanos += nanos;
+    }
+
+    @Override
+    public int getSize() {
+        return this.table.size();
+    }
+
+    @Override
+    public int getCapacity() {
+        return this.table.capacity();
+    }
+
+    @Override
+    public double getLoadFactor() {
+        return this.table.loadFactor();
+    }
+
+    @Override
+    public long getHitCount() {
+        return this.hitCount;
+    }
+
+    @Override
+    public long getMissCount() {
+        return this.missCount;
+    }
+
+    @Override
+    public long getResizeCount() {
+        return this.resizeCount;
+    }
+
+    @Override
+    public long getResizeTimeNanos() {
+        return this.resizeTimeNanos;
+    }
+
+    /**
+     * Return the length of the longest chain. Walks every bucket.
+     */
+    @Override
+    public int getMaxChainLength() {
+        int[] res = new int[1];
+        forEachChainLength(length -> res[0] = Math.max(res[0], length));
+        return res[0];
+    }
+
+    /**
+     * Return the mean length of the non-empty chains, which is the mean
+     * number of elements a successful lookup shares its bucket with.
+     * Walks every bucket.
+     */
+    @Override
+    public double getMeanChainLength() {
+        long[] histogram = getChainLengthHistogram();
+        long nonEmpty = 0;
+        for (int i = 1; i < histogram.length; i++) nonEmpty += histogram[i];
+        return nonEmpty == 0 ? 0.0 : (double) this.table.size() / (double) nonEmpty;
+    }
+
+    /**
+     * Return the number of buckets holding 0, 1, 2, ... elements, up to
+     * HISTOGRAM_LENGTH - 1 or more. Walks every bucket.
+     */
+    @Override
+    public long[] getChainLengthHistogram() {
+        long[] res = new long[HISTOGRAM_LENGTH];
+        forEachChainLength(length -> res[Math.min(length, HISTOGRAM_LENGTH - 1)]++);
+        return res;
+    }
+
+    /**
+     * Pass the length of every bucket, 0 for an empty one, to action. Safe
+     * to call from any thread, as described above.
+     */
+    void forEachChainLength(IntConsumer action) {
+        // read the arrays once: the table's thread may replace them meanwhile
+        ArrayList<?>[] table = this.table.table;
+        ArrayList<?>[] oldTable = this.table.oldTable;
+        try {
+            forEachChainLength(table, action);
+            if (oldTable != null) forEachChainLength(oldTable, action);
+        } catch (RuntimeException e) {
+            // a bucket changed under us; keep what was counted
+        }
+    }
+
+    static void forEachChainLength(ArrayList<?>[] arr, IntConsumer action) {
+        for (ArrayList<?> curArray : arr) {
+            action.accept(curArray == null ? 0 : curArray.size());
+        }
+    }
+
+    /**
+     * Reset the hit, miss and resize counters.
+     */
+    public void reset() {
+        this.hitCount = 0;
+        this.missCount = 0;
+        this.resizeCount = 0;
+        this.resizeTimeNanos = 0;
+    }
+
+    /**
+     * Register these statistics with the platform MBean server, under
+     * hashtables:type=HashTableStats,name=(the given name).
+     * 
+     * @return the name they were registered under
+     * @throws JMException if the name is invalid or already registered
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("hashtables:type=HashTableStats,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+}
@@ -0,0 +1,27 @@
+package hashtables;
+
+/**
+ * The JMX view of a HashTableStats.
+ */
+public interface HashTableStatsMXBean {
+
+    int getSize();
+
+    int getCapacity();
+
+    double getLoadFactor();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    long getResizeCount();
+
+    long getResizeTimeNanos();
+
+    int getMaxChainLength();
+
+    double getMeanChainLength();
+
+    long[] getChainLengthHistogram();
+}
@@ -0,0 +1,83 @@
+package hashtables;
+
+/**
+ * How a ChainingHashTable turns an element's hash code into a bucket index,
+ * and which capacities it uses to make that work.
+ */
+public enum HashingStrategy {
+
+    /**
+     * The original scheme: the capacity is 2^n - 1 and the bucket index is
+     * |hashCode| mod capacity. The odd capacity hides weak low bits in hash
+     * codes, at the price of an integer division on every operation.
+     */
+    LEGACY_MODULO {
+        @Override
+        int indexFor(int hash, int capacity) {
+            // taking abs after the mod also handles Integer.MIN_VALUE, which abs() leaves negative
+            return Math.abs(hash % capacity);
+        }
+
+        @Override
+        int capacityFor(int n) {
+            int tempPower = (int) Math.ceil(Math.log(n + 1) / Math.log(2.0));
+            return (int) Math.pow(2.0, tempPower) - 1;
+        }
+
+        @Override
+        int nextCapacity(int capacity) {
+            return (capacity + 1) * 2 - 1;
+        }
+    },
+
+    /**
+     * The capacity is 2^n and the bucket index is the low n bits of the hash
+     * code after it has been run through spread(). Masking replaces the
+     * division, and spreading makes every bit of the hash code count, so
+     * hash codes that differ only in their high bits no longer collide.
+     */
+    SPREAD_MASK {
+        @Override
+        int indexFor(int hash, int capacity) {
+            return spread(hash) & (capacity - 1);
+        }
+
+        @Override
+        int capacityFor(int n) {
+            return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+        }
+
+        @Override
+        int nextCapacity(int capacity) {
+            return capacity * 2;
+        }
+    };
+
+    /**
+     * Return the bucket index in [0, capacity) of an element with the given hash code.
+     */
+    abstract int indexFor(int hash, int capacity);
+
+    /**
+     * Return the smallest capacity allowed by this strategy that is at least n.
+     */
+    abstract int capacityFor(int n);
+
+    /**
+     * Return the capacity that follows the given one when a table grows.
+     */
+    abstract int nextCapacity(int capacity);
+
+    /**
+     * Mix the bits of a hash code (the finalizer of MurmurHash3), so that
+     * every output bit depends on every input bit.
+     */
+    public static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,34 @@
+package hashtables;
+
+/**
+ * Decides whether an element stored in a HashTable is the one a lookup key
+ * refers to. Used by HashTable.getByKey() and HashTable.removeByKey() so that
+ * callers storing composite elements (such as map entries) can probe the
+ * table by key alone, without building a throwaway element to compare against.
+ */
+@FunctionalInterface
+public interface KeyMatcher<E, K> {
+
+    /**
+     * @param element an element stored in the table
+     * @param key     the key being looked up
+     * @return true iff element is the element identified by key
+     */
+    boolean matches(E element, K key);
+
+    /**
+     * Order a stored element relative to a key, for buckets that keep their
+     * elements sorted (see ChainingHashTable). Among elements with equal hash
+     * codes, the result must agree with the order SortedBucket gives the
+     * elements themselves, KeyOrder.compare(). Returning 0 is always safe:
+     * it only means that the element has to be checked with matches().
+     * 
+     * @param element an element stored in the table
+     * @param key     the key being looked up
+     * @return a negative number, zero, or a positive number as element orders before, 
+     *         together with, or after the element identified by key
+     */
+    default int compare(E element, K key) {
+        return 0;
+    }
+}
@@ -0,0 +1,51 @@
+package hashtables;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * The order that sorted buckets give colliding elements, and that
+ * KeyMatcher.compare() has to agree with: by class name, then, for two
+ * elements of the same class C that implements Comparable&lt;C&gt;, by
+ * compareTo(). Anything else is left unordered.
+ *
+ * Like the JDK's HashMap, compareTo() is only called when the class
+ * declares itself comparable to its own instances, so a class that is
+ * Comparable to some other type never gets a ClassCastException here.
+ */
+public final class KeyOrder {
+
+    private static final ClassValue<Boolean> SELF_COMPARABLE = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> c) {
+            if (c == String.class) return true;
+            for (Type t : c.getGenericInterfaces()) {
+                if (!(t instanceof ParameterizedType)) continue;
+                ParameterizedType p = (ParameterizedType) t;
+                if (p.getRawType() != Comparable.class) continue;
+                Type arg = p.getActualTypeArguments()[0];
+                // Comparable<C>, or Comparable<C<...>> for a generic C
+                if (arg == c) return true;
+                if (arg instanceof ParameterizedType && ((ParameterizedType) arg).getRawType() == c) return true;
+            }
+            return false;
+        }
+    };
+
+    private KeyOrder() {
+    }
+
+    /**
+     * Order a and b as described above. Returns 0 when either is null, or
+     * when they are distinct elements this cannot order.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static int compare(Object a, Object b) {
+        if (a == null || b == null) return 0;
+        Class<?> ca = a.getClass();
+        Class<?> cb = b.getClass();
+        if (ca != cb) return ca.getName().compareTo(cb.getName());
+        if (SELF_COMPARABLE.get(ca)) return ((Comparable) a).compareTo(b);
+        return 0;
+    }
+}
@@ -0,0 +1,301 @@
+package hashtables;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.UnaryOperator;
+
+/**
+ * An implementation of HashTable.
+ *
+ * This implementation uses open addressing with Robin Hood linear probing to
+ * resolve collisions. Elements live directly in a flat Object[] and the hash
+ * code of every stored element is cached in a parallel int[], so a probe only
+ * calls equals() when the cached hashes match. There is no per-bucket list
+ * to allocate or to chase.
+ *
+ * Robin Hood probing keeps the elements of a probe sequence ordered by their
+ * distance from their home slot: an element being inserted takes the place of
+ * any element that is closer to its own home slot. This bounds the variance
+ * of probe lengths and lets an unsuccessful search stop as soon as it finds
+ * an element that is closer to home than the searched element would be.
+ * Removal shifts the following elements of the run back by one slot, so no
+ * tombstones are needed.
+ *
+ * Capacity and resizing follow the same contract as ChainingHashTable: the
+ * capacity is 2^n - 1 for some positive integer n, and when the load factor
+ * exceeds 0.75, the next add() triggers a resize by incrementing n.
+ */
+public class OpenAddressingHashTable<E> implements HashTable<E> {
+
+    int size;
+    Object[] elements;
+    int[] hashes;
+    double loadFactor;
+
+    /**
+     * Instantiate a new hash table. The initial capacity should be 7.
+     */
+    public OpenAddressingHashTable() {
+        this.size = 0;
+        this.elements = new Object[7];
+        this.hashes = new int[7];
+        this.loadFactor = 0.0;
+    }
+
+    /**
+     * Instantiate a new hash table. The initial capacity should be
+     * at least sufficient to hold n elements, but must be one less
+     * than a power of two.
+     */
+    public OpenAddressingHashTable(int n) {
+        this.size = 0;
+        int tempPower = (int) Math.ceil(Math.log(n + 1) / Math.log(2.0));
+        int newLength = (int) Math.pow(2.0, tempPower) - 1;
+        this.elements = new Object[newLength];
+        this.hashes = new int[newLength];
+        this.loadFactor = 0.0;
+    }
+
+    @Override
+    public int capacity() {
+        return this.elements.length;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public double loadFactor() {
+        return this.loadFactor;
+    }
+
+    int homeIndex(int hash, int capacity) {
+        return (hash & 0x7fffffff) % capacity;
+    }
+
+    int probeDistance(int index, int hash, int capacity) {
+        int dist = index - homeIndex(hash, capacity);
+        return dist < 0 ? dist + capacity : dist;
+    }
+
+    /**
+     * Return the slot holding an element equals() to e, or -1 if there is none.
+     */
+    int findIndex(Object e, int hash) {
+        int capacity = this.elements.length;
+        int index = homeIndex(hash, capacity);
+
+        for (int dist = 0; dist < capacity; dist++) {
+            Object cur = this.elements[index];
+            if (cur == null) return -1;
+
+            // every element of this run from here on is closer to home than e would be
+            if (probeDistance(index, this.hashes[index], capacity) < dist) return -1;
+
+            if (this.hashes[index] == hash && cur.equals(e)) return index;
+
+            if (++index == capacity) index = 0;
+        }
+        return -1;
+    }
+
+    /**
+     * Return the slot holding the element identified by key, or -1 if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    <K> int findIndexByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+        int capacity = this.elements.length;
+        int index = homeIndex(hash, capacity);
+
+        for (int dist = 0; dist < capacity; dist++) {
+            Object cur = this.elements[index];
+            if (cur == null) return -1;
+            if (probeDistance(index, this.hashes[index], capacity) < dist) return -1;
+
+            if (this.hashes[index] == hash && matcher.matches((E) cur, key)) return index;
+
+            if (++index == capacity) index = 0;
+        }
+        return -1;
+    }
+
+    /**
+     * Insert an element that is known not to be in the table yet.
+     */
+    void insertNew(Object e, int hash, Object[] elements, int[] hashes) {
+        int capacity = elements.length;
+        int index = homeIndex(hash, capacity);
+        int dist = 0;
+
+        while (elements[index] != null) {
+            int curDist = probeDistance(index, hashes[index], capacity);
+            if (curDist < dist) {
+                // take the slot from the richer element and keep placing that one
+                Object tempElement = elements[index];
+                int tempHash = hashes[index];
+                elements[index] = e;
+                hashes[index] = hash;
+                e = tempElement;
+                hash = tempHash;
+                dist = curDist;
+            }
+            if (++index == capacity) index = 0;
+            dist++;
+        }
+
+        elements[index] = e;
+        hashes[index] = hash;
+    }
+
+    public void enLarge() {
+        int newLength = (this.elements.length + 1) * 2 - 1;
+        Object[] newElements = new Object[newLength];
+        int[] newHashes = new int[newLength];
+
+        for (int i = 0; i < this.elements.length; i++) {
+            if (this.elements[i] == null) continue;
+            insertNew(this.elements[i], this.hashes[i], newElements, newHashes);
+        }
+
+        this.elements = newElements;
+        this.hashes = newHashes;
+        this.loadFactor = (double) this.size / (double) newLength;
+    }
+
+    @Override
+    public boolean add(E e) {
+        if (loadFactor > 0.75) enLarge();
+
+        int hash = e.hashCode();
+        int index = findIndex(e, hash);
+
+        if (index != -1) {
+            this.elements[index] = e;
+            return false;
+        }
+
+        insertNew(e, hash, this.elements, this.hashes);
+        this.size++;
+        this.loadFactor = (double) this.size / (double) this.capacity();
+        return true;
+    }
+
+    @Override
+    public boolean remove(E e) {
+        int index = findIndex(e, e.hashCode());
+
+        if (index == -1) return false;
+
+        removeAt(index);
+        return true;
+    }
+
+    void removeAt(int index) {
+        // backward shift: pull the rest of the run one slot closer to home
+        int capacity = this.elements.length;
+        int next = index + 1 == capacity ? 0 : index + 1;
+        while (this.elements[next] != null && probeDistance(next, this.hashes[next], capacity) > 0) {
+            this.elements[index] = this.elements[next];
+            this.hashes[index] = this.hashes[next];
+            index = next;
+            if (++next == capacity) next = 0;
+        }
+        this.elements[index] = null;
+        this.hashes[index] = 0;
+
+        this.size--;
+        this.loadFactor = (double) this.size / (double) this.capacity();
+    }
+
+    @Override
+    public boolean contains(E e) {
+        return findIndex(e, e.hashCode()) != -1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(E e) {
+        int index = findIndex(e, e.hashCode());
+
+        if (index == -1) return null;
+        return (E) this.elements[index];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K> E getByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+        int index = findIndexByKey(hash, key, matcher);
+
+        if (index == -1) return null;
+        return (E) this.elements[index];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K> E removeByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+        int index = findIndexByKey(hash, key, matcher);
+
+        if (index == -1) return null;
+
+        E res = (E) this.elements[index];
+        removeAt(index);
+        return res;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K> E computeByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher, UnaryOperator<E> remapping) {
+        if (loadFactor > 0.75) enLarge();
+
+        int index = findIndexByKey(hash, key, matcher);
+        E res = remapping.apply(index == -1 ? null : (E) this.elements[index]);
+
+        if (index != -1) {
+            if (res == null) {
+                removeAt(index);
+            } else {
+                this.elements[index] = res;
+            }
+            return res;
+        }
+
+        if (res == null) return null;
+
+        insertNew(res, hash, this.elements, this.hashes);
+        this.size++;
+        this.loadFactor = (double) this.size / (double) this.capacity();
+        return res;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new OpenAddressingIterator();
+    }
+
+    private class OpenAddressingIterator implements Iterator<E> {
+        int index = nextOccupied(0);
+
+        int nextOccupied(int from) {
+            Object[] elements = OpenAddressingHashTable.this.elements;
+            while (from < elements.length && elements[from] == null) from++;
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.index < OpenAddressingHashTable.this.elements.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (!hasNext()) throw new NoSuchElementException();
+
+            E res = (E) OpenAddressingHashTable.this.elements[this.index];
+            this.index = nextOccupied(this.index + 1);
+            return res;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package hashtables;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * A ChainingHashTable bucket that has grown past the treeify threshold.
+ *
+ * It is still an ArrayList, so iteration and retrieveCurList() work exactly
+ * as for ordinary buckets, but its elements are kept sorted: first by hash
+ * code, then, among elements with equal hash codes, as KeyOrder orders
+ * them. Lookups binary-search that order and only fall back to calling
+ * equals() on the (usually tiny) run of elements that the order cannot tell
+ * apart, so a bucket flooded with colliding Comparable elements (such as
+ * Strings) costs O(log n) to search instead of O(n).
+ */
+class SortedBucket<E> extends ArrayList<E> {
+    private static final long serialVersionUID = 1L;
+
+    static final Comparator<Object> ORDER = (a, b) -> {
+        int ha = a.hashCode();
+        int hb = b.hashCode();
+        if (ha != hb) return ha < hb ? -1 : 1;
+        return KeyOrder.compare(a, b);
+    };
+
+    SortedBucket(Collection<? extends E> elements) {
+        super(elements);
+        sort(ORDER);
+    }
+
+    /**
+     * Return the first index whose element does not order before o.
+     */
+    int lowerBound(Object o) {
+        int lo = 0;
+        int hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ORDER.compare(get(mid), o) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        for (int i = lowerBound(o); i < size(); i++) {
+            E var = get(i);
+            if (ORDER.compare(var, o) != 0) break;
+            if (var.equals(o)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Return the index of the element identified by key, or -1. hash is the
+     * hash code of that element, as for HashTable.getByKey().
+     */
+    <K> int indexOfKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+        int lo = 0;
+        int hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareToKey(get(mid), hash, key, matcher) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        for (int i = lo; i < size(); i++) {
+            E var = get(i);
+            if (compareToKey(var, hash, key, matcher) != 0) break;
+            if (matcher.matches(var, key)) return i;
+        }
+        return -1;
+    }
+
+    static <E, K> int compareToKey(E element, int hash, K key, KeyMatcher<? super E, ? super K> matcher) {
+        int h = element.hashCode();
+        if (h != hash) return h < hash ? -1 : 1;
+        return matcher.compare(element, key);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) != -1;
+    }
+
+    @Override
+    public boolean add(E e) {
+        add(lowerBound(e), e);
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index == -1) return false;
+
+        remove(index);
+        return true;
+    }
+}
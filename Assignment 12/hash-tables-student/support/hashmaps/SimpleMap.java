@@ -4,7 +4,10 @@
 
 package hashmaps;
 
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * An interface specifying a sample key-value mapping.
@@ -68,4 +71,84 @@ public interface SimpleMap<K, V> {
      */
     public Set<K> keys();
 
+    /**
+     * Associate v with k unless k is already mapped to a non-null value.
+     * 
+     * These default compute-style methods are built from get(), put() and
+     * remove(), so they search the map more than once and are not atomic;
+     * implementations may override them to do better. As in java.util.Map,
+     * a key mapped to null counts as absent.
+     * 
+     * @param k the (non-null) key
+     * @param v the value to associate with the key if it is absent
+     * @return the value previously associated with k, or null if it was absent
+     */
+    public default V putIfAbsent(K k, V v) {
+        V cur = this.get(k);
+        if (cur == null) this.put(k, v);
+        return cur;
+    }
+
+    /**
+     * If k is absent, associate it with the value computed by mappingFunction,
+     * unless that value is null.
+     * 
+     * @param k               the (non-null) key
+     * @param mappingFunction computes the value for an absent key
+     * @return the value now associated with k, or null if there is none
+     */
+    public default V computeIfAbsent(K k, Function<? super K, ? extends V> mappingFunction) {
+        V cur = this.get(k);
+        if (cur != null) return cur;
+
+        V v = mappingFunction.apply(k);
+        if (v != null) this.put(k, v);
+        return v;
+    }
+
+    /**
+     * Associate k with the value computed by remappingFunction from k and its
+     * current value (null if absent). If the computed value is null, k is
+     * removed.
+     * 
+     * @param k                 the (non-null) key
+     * @param remappingFunction computes the new value from the key and the current value
+     * @return the value now associated with k, or null if there is none
+     */
+    public default V compute(K k, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        V cur = this.get(k);
+        V v = remappingFunction.apply(k, cur);
+
+        if (v != null) {
+            this.put(k, v);
+        } else if (cur != null) {
+            this.remove(k);
+        }
+        return v;
+    }
+
+    /**
+     * Associate v with k if k is absent; otherwise associate k with the value
+     * computed by remappingFunction from its current value and v, or remove k
+     * if that value is null. For example, merge(word, 1, Integer::sum) counts
+     * occurrences of word.
+     * 
+     * @param k                 the (non-null) key
+     * @param v                 the (non-null) value to merge in
+     * @param remappingFunction combines the current value and v
+     * @return the value now associated with k, or null if there is none
+     */
+    public default V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(v);
+
+        V cur = this.get(k);
+        V res = (cur == null) ? v : remappingFunction.apply(cur, v);
+
+        if (res != null) {
+            this.put(k, res);
+        } else {
+            this.remove(k);
+        }
+        return res;
+    }
 }
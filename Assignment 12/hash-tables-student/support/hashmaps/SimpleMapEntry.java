@@ -3,15 +3,18 @@
  */
 package hashmaps;
 
+import hashtables.KeyOrder;
+
 /**
  * An entry representing a key-value pair to be used in an implementation of
  * SimpleMap.
  * 
  * The SimpleMapEntry associates a given key and value as a pair.
  * SimpleMapEntries are considered equal on the basis of their keys -- their
- * value is ignored.
+ * value is ignored. They are ordered by their keys too, when the keys are
+ * Comparable, which lets a hash table keep colliding entries sorted.
  */
-public class SimpleMapEntry<K, V> {
+public class SimpleMapEntry<K, V> implements Comparable<SimpleMapEntry<K, V>> {
     final K k;
     final V v;
 
@@ -27,6 +30,13 @@ public class SimpleMapEntry<K, V> {
 
     @Override
     public int hashCode() {
+        return hash(k);
+    }
+
+    /**
+     * Return the hashCode() that an entry with key k has, without building the entry.
+     */
+    static int hash(Object k) {
         //!hash code is calculated based on k
         final int prime = 31;
         int result = 1;
@@ -51,4 +61,9 @@ public class SimpleMapEntry<K, V> {
             return false;
         return true;
     }
+
+    @Override
+    public int compareTo(SimpleMapEntry<K, V> other) {
+        return KeyOrder.compare(k, other.k);
+    }
 }
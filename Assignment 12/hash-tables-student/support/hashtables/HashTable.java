@@ -4,6 +4,8 @@
 
 package hashtables;
 
+import java.util.function.UnaryOperator;
+
 /**
  * An interface specifying a hash table, that is, an array-based 
  * constant-time data structure to track the membership of 
@@ -83,4 +85,63 @@ public interface HashTable<E> extends Iterable<E> {
      * @return true iff the element e is stored in the hash table
      */
     boolean contains(E e);
-}
\ No newline at end of file
+
+    /**
+     * Return the element identified by key, or null if not present.
+     * 
+     * The hash must be the hashCode() of the element that matches the key; it
+     * is used to locate the element, and the matcher decides which of the
+     * elements found there (if any) is the one identified by key. This lets a
+     * caller probe the table without building an element to compare against.
+     * 
+     * @param hash    the hashCode() of the element being looked up
+     * @param key     the (non-null) key identifying the element
+     * @param matcher decides whether a stored element is identified by key
+     * @return the element identified by key, or null if not present
+     */
+    <K> E getByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher);
+
+    /**
+     * Remove the element identified by key, if present, returning it.
+     * 
+     * The hash must be the hashCode() of the element that matches the key,
+     * as for getByKey().
+     * 
+     * @param hash    the hashCode() of the element being removed
+     * @param key     the (non-null) key identifying the element
+     * @param matcher decides whether a stored element is identified by key
+     * @return the removed element, or null if not present
+     */
+    <K> E removeByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher);
+
+    /**
+     * Replace the element identified by key with the result of remapping.
+     * 
+     * remapping is called once, with the element identified by key, or null
+     * if there is none. If it returns null, the element (if any) is removed;
+     * otherwise the result, which must be identified by the same key, takes
+     * its place or is inserted. The hash is used as for getByKey().
+     * 
+     * This default looks the element up and then adds or removes the result.
+     * Implementations override it to do both with a single search of the
+     * table, and a thread-safe table does it atomically. remapping must not
+     * modify the table itself.
+     * 
+     * @param hash      the hashCode() of the element identified by key
+     * @param key       the (non-null) key identifying the element
+     * @param matcher   decides whether a stored element is identified by key
+     * @param remapping computes the new element from the current one (or null)
+     * @return the element now identified by key, or null if there is none
+     */
+    default <K> E computeByKey(int hash, K key, KeyMatcher<? super E, ? super K> matcher, UnaryOperator<E> remapping) {
+        E old = getByKey(hash, key, matcher);
+        E res = remapping.apply(old);
+
+        if (res != null) {
+            add(res);
+        } else if (old != null) {
+            removeByKey(hash, key, matcher);
+        }
+        return res;
+    }
+}
@@ -0,0 +1,206 @@
+package hashmaps;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import hashmaps.BoundedCache.EvictionPolicy;
+
+
+public class BoundedCacheTest {
+
+    @Test
+    public void testEmpty() throws Exception {
+        BoundedCache<Integer, String> c = new BoundedCache<>(10);
+        assertEquals(0, c.size());
+        assertEquals(null, c.get(1));
+        assertEquals(new HashSet<>(), c.keys());
+        assertEquals(1, c.missCount());
+    }
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        for (EvictionPolicy policy : EvictionPolicy.values()) {
+            BoundedCache<Integer, String> c = new BoundedCache<>(10, policy);
+            c.put(1, "a");
+            c.put(2, "b");
+            c.put(1, "c");
+            assertEquals(2, c.size());
+            assertEquals("c", c.get(1));
+            assertEquals("b", c.get(2));
+            assertEquals("d", c.getOrDefault(3, "d"));
+            assertEquals("c", c.remove(1));
+            assertEquals(null, c.remove(1));
+            assertEquals(1, c.size());
+            assertEquals(1, c.weight());
+        }
+    }
+
+    @Test
+    public void testLruEvictsLeastRecentlyUsed() throws Exception {
+        BoundedCache<Integer, Integer> c = new BoundedCache<>(3, EvictionPolicy.LRU);
+        c.put(1, 1);
+        c.put(2, 2);
+        c.put(3, 3);
+        c.get(1);
+        c.put(4, 4);
+
+        assertEquals(3, c.size());
+        assertEquals(null, c.get(2));
+        assertEquals(Integer.valueOf(1), c.get(1));
+        assertEquals(Integer.valueOf(3), c.get(3));
+        assertEquals(Integer.valueOf(4), c.get(4));
+        assertEquals(1, c.evictionCount());
+    }
+
+    @Test
+    public void testSizeNeverExceedsMaximum() throws Exception {
+        for (EvictionPolicy policy : EvictionPolicy.values()) {
+            BoundedCache<Integer, Integer> c = new BoundedCache<>(100, policy);
+            Random r = new Random(1);
+            for (int i = 0; i < 10000; i++) {
+                c.put(r.nextInt(1000), i);
+                assertTrue(c.size() <= 100);
+            }
+            assertEquals(100, c.size());
+            assertEquals(100, c.keys().size());
+        }
+    }
+
+    @Test
+    public void testTinyLfuKeepsFrequentKeysUnderScan() throws Exception {
+        BoundedCache<Integer, Integer> c = new BoundedCache<>(100);
+        for (int round = 0; round < 20; round++) {
+            for (int k = 0; k < 50; k++) {
+                if (c.get(k) == null) c.put(k, k);
+            }
+        }
+
+        // a scan of one-off keys, many times the cache size
+        for (int k = 1000; k < 11000; k++) c.put(k, k);
+
+        int kept = 0;
+        for (int k = 0; k < 50; k++) {
+            if (c.get(k) != null) kept++;
+        }
+        assertTrue("kept " + kept, kept >= 45);
+    }
+
+    @Test
+    public void testLruLosesFrequentKeysUnderScan() throws Exception {
+        BoundedCache<Integer, Integer> c = new BoundedCache<>(100, EvictionPolicy.LRU);
+        for (int k = 0; k < 50; k++) c.put(k, k);
+        for (int k = 1000; k < 11000; k++) c.put(k, k);
+
+        for (int k = 0; k < 50; k++) assertEquals(null, c.get(k));
+    }
+
+    @Test
+    public void testWeigher() throws Exception {
+        for (EvictionPolicy policy : EvictionPolicy.values()) {
+            BoundedCache<Integer, String> c = new BoundedCache<>(10, policy);
+            c.setWeigher((k, v) -> v.length());
+            c.put(1, "aaaa");
+            c.put(2, "bbbb");
+            assertEquals(8, c.weight());
+            c.put(2, "b");
+            assertEquals(5, c.weight());
+            c.put(3, "cccccc");
+            assertTrue(c.weight() <= 10);
+
+            // an entry heavier than the whole cache does not stay
+            c.put(4, "ddddddddddd");
+            assertEquals(null, c.get(4));
+            assertTrue(c.weight() <= 10);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWeigherOnNonEmptyCache() throws Exception {
+        BoundedCache<Integer, String> c = new BoundedCache<>(10);
+        c.put(1, "a");
+        c.setWeigher((k, v) -> v.length());
+    }
+
+    @Test
+    public void testExpireAfterWrite() throws Exception {
+        long[] time = { 0 };
+        BoundedCache<Integer, String> c = new BoundedCache<>(10);
+        c.setTicker(() -> time[0]);
+        c.setExpireAfterWrite(10, TimeUnit.NANOSECONDS);
+
+        c.put(1, "a");
+        time[0] = 5;
+        c.put(2, "b");
+        assertEquals("a", c.get(1));
+
+        time[0] = 10;
+        assertEquals(null, c.get(1));
+        assertEquals("b", c.get(2));
+        assertEquals(1, c.size());
+
+        c.put(2, "c");
+        time[0] = 19;
+        assertEquals(new HashSet<>(Arrays.asList(2)), c.keys());
+        time[0] = 20;
+        c.cleanUp();
+        assertEquals(0, c.size());
+        assertEquals(0, c.weight());
+    }
+
+    @Test
+    public void testCounters() throws Exception {
+        BoundedCache<Integer, Integer> c = new BoundedCache<>(2, EvictionPolicy.LRU);
+        c.put(1, 1);
+        c.get(1);
+        c.get(1);
+        c.get(2);
+        c.put(2, 2);
+        c.put(3, 3);
+
+        assertEquals(2, c.hitCount());
+        assertEquals(1, c.missCount());
+        assertEquals(1, c.evictionCount());
+        assertEquals(2.0 / 3.0, c.hitRate(), 1e-9);
+    }
+
+    @Test
+    public void testTinyLfuAdmitsFrequentWindowEntry() throws Exception {
+        BoundedCache<Integer, Integer> c = new BoundedCache<>(100);
+        for (int k = 0; k < 100; k++) c.put(k, k);
+
+        // 500 is requested often before it is cached, 501 never
+        for (int i = 0; i < 5; i++) c.get(500);
+        c.put(500, 500);
+        c.put(501, 501);
+
+        // 500 left the window and beat probation's least recently used entry
+        assertEquals(Integer.valueOf(500), c.get(500));
+        assertEquals(null, c.get(0));
+        assertEquals(100, c.size());
+    }
+
+    @Test
+    public void testComputeCountsOneAccess() throws Exception {
+        for (EvictionPolicy policy : EvictionPolicy.values()) {
+            BoundedCache<String, Integer> c = new BoundedCache<>(10, policy);
+            assertEquals(Integer.valueOf(1), c.merge("a", 1, Integer::sum));
+            assertEquals(Integer.valueOf(2), c.merge("a", 1, Integer::sum));
+            assertEquals(Integer.valueOf(2), c.computeIfAbsent("a", k -> 7));
+            assertEquals(Integer.valueOf(7), c.computeIfAbsent("b", k -> 7));
+            assertEquals(Integer.valueOf(8), c.compute("b", (k, v) -> v + 1));
+            assertEquals(null, c.compute("b", (k, v) -> null));
+            assertEquals(null, c.get("b"));
+            assertEquals(1, c.size());
+
+            // each call above counted as exactly one hit or miss
+            assertEquals(4, c.hitCount());
+            assertEquals(3, c.missCount());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package hashmaps;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class FrozenHashMapTest {
+
+    @Test
+    public void testEmpty() throws Exception {
+        FrozenHashMap<Integer, Integer> f = new SimpleHashMap<Integer, Integer>().freeze();
+        assertEquals(0, f.size());
+        assertEquals(null, f.get(1));
+        assertEquals(new HashSet<>(), f.keys());
+    }
+
+    @Test
+    public void testSmall() throws Exception {
+        SimpleHashMap<String, Integer> m = new SimpleHashMap<>();
+        m.put("a", 1);
+        FrozenHashMap<String, Integer> f = m.freeze();
+        assertEquals(1, f.size());
+        assertEquals(Integer.valueOf(1), f.get("a"));
+        assertEquals(null, f.get("b"));
+        assertEquals(Integer.valueOf(2), f.getOrDefault("b", 2));
+    }
+
+    @Test
+    public void testManyKeys() throws Exception {
+        SimpleHashMap<Integer, Integer> m = new SimpleHashMap<>();
+        Random r = new Random(3);
+        for (int i = 0; i < 100000; i++) {
+            m.put(r.nextInt(), i);
+        }
+        m.put(7, null);
+
+        FrozenHashMap<Integer, Integer> f = m.freeze();
+        assertEquals(m.size(), f.size());
+        assertEquals(m.keys(), f.keys());
+        for (Integer k : m.keys()) {
+            assertEquals(m.get(k), f.get(k));
+        }
+        for (int i = 0; i < 1000; i++) {
+            int k = r.nextInt();
+            assertEquals(m.get(k), f.get(k));
+        }
+
+        // the table is minimal: one slot per distinct hash code
+        assertEquals(f.size(), f.slotCount);
+    }
+
+    @Test
+    public void testSnapshotIsIndependent() throws Exception {
+        SimpleHashMap<Integer, Integer> m = new SimpleHashMap<>();
+        m.put(1, 1);
+        FrozenHashMap<Integer, Integer> f = m.freeze();
+        m.put(1, 2);
+        m.put(2, 2);
+        assertEquals(Integer.valueOf(1), f.get(1));
+        assertEquals(null, f.get(2));
+    }
+
+    @Test
+    public void testCollidingKeys() throws Exception {
+        // "Aa" and "BB" have the same hash code
+        List<String> keys = new ArrayList<>();
+        keys.add("");
+        for (int i = 0; i < 6; i++) {
+            List<String> next = new ArrayList<>();
+            for (String s : keys) {
+                next.add(s + "Aa");
+                next.add(s + "BB");
+            }
+            keys = next;
+        }
+
+        SimpleHashMap<String, Integer> m = new SimpleHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            m.put(keys.get(i), i);
+        }
+        m.put("other", -1);
+
+        FrozenHashMap<String, Integer> f = m.freeze();
+        assertEquals(keys.size() + 1, f.size());
+        assertEquals(2, f.slotCount);
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(Integer.valueOf(i), f.get(keys.get(i)));
+        }
+        assertEquals(Integer.valueOf(-1), f.get("other"));
+        assertEquals(null, f.get("AaAaAaAaAaAB"));
+        assertEquals(m.keys(), f.keys());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPut() throws Exception {
+        new SimpleHashMap<Integer, Integer>().freeze().put(1, 1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRemove() throws Exception {
+        new SimpleHashMap<Integer, Integer>().freeze().remove(1);
+    }
+}
@@ -0,0 +1,94 @@
+package hashmaps;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class LongObjectHashMapTest {
+
+    @Test
+    public void testEmpty() throws Exception {
+        LongObjectHashMap<String> m = new LongObjectHashMap<>();
+        assertEquals(0, m.size());
+        assertEquals(null, m.get(1));
+        assertEquals(0, m.keys().length);
+    }
+
+    @Test
+    public void testPutGetReplace() throws Exception {
+        LongObjectHashMap<String> m = new LongObjectHashMap<>();
+        m.put(1, "a");
+        m.put(-1, "b");
+        assertEquals("a", m.get(1));
+        assertEquals("b", m.get(-1));
+        assertEquals(null, m.get(2));
+        assertEquals("c", m.getOrDefault(2, "c"));
+
+        m.put(1, "d");
+        assertEquals("d", m.get(1));
+        assertEquals(2, m.size());
+    }
+
+    @Test
+    public void testZeroKey() throws Exception {
+        LongObjectHashMap<String> m = new LongObjectHashMap<>();
+        assertEquals(null, m.remove(0));
+        m.put(0, "zero");
+        assertEquals(1, m.size());
+        assertEquals("zero", m.get(0));
+        assertArrayEquals(new long[] {0}, m.keys());
+        assertEquals("zero", m.remove(0));
+        assertEquals(0, m.size());
+        assertEquals(null, m.get(0));
+    }
+
+    @Test
+    public void testKeys() throws Exception {
+        LongObjectHashMap<Integer> m = new LongObjectHashMap<>();
+        for (int i = -50; i < 50; i++) {
+            m.put(i * 1000L, i);
+        }
+        long[] keys = m.keys();
+        Arrays.sort(keys);
+        for (int i = 0; i < 100; i++) {
+            assertEquals((i - 50) * 1000L, keys[i]);
+        }
+    }
+
+    @Test
+    public void testManyActions1000() throws Exception {
+        final int ROUNDS = 1000;
+        final int ACTIONS = 1000;
+        final int BOUND = 100;
+        Random random = new Random(0);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            HashMap<Long, Integer> hm = new HashMap<>();
+            LongObjectHashMap<Integer> m = new LongObjectHashMap<>();
+
+            for (int i = 0; i < ACTIONS; i++) {
+                double d = random.nextDouble();
+                // keys are spread over the whole long range, but few enough to collide often
+                long k = (random.nextInt(BOUND) - BOUND / 2) * (1L << 40);
+                if (d < 0.35) {
+                    int v = random.nextInt(BOUND);
+                    m.put(k, v);
+                    hm.put(k, v);
+                    assertEquals(Integer.valueOf(v), m.get(k));
+                } else if (d < 0.65) {
+                    assertEquals(hm.remove(k), m.remove(k));
+                } else if (d < 0.85) {
+                    assertEquals(hm.get(k), m.get(k));
+                } else {
+                    assertEquals(hm.getOrDefault(k, BOUND), m.getOrDefault(k, BOUND));
+                }
+                assertEquals(hm.size(), m.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package hashmaps;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+
+public class MappedHashMapTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Path file() {
+        return new File(this.folder.getRoot(), "map.db").toPath();
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        try (MappedHashMap<String, Integer> m = new MappedHashMap<>(file(), Serializer.STRING, Serializer.INTEGER)) {
+            assertEquals(0, m.size());
+            assertEquals(null, m.get("a"));
+            assertTrue(m.keys().isEmpty());
+        }
+    }
+
+    @Test
+    public void testPutGetReplaceRemove() throws Exception {
+        try (MappedHashMap<String, Integer> m = new MappedHashMap<>(file(), Serializer.STRING, Serializer.INTEGER)) {
+            m.put("a", 1);
+            m.put("b", 2);
+            m.put("a", 3);
+            m.put("c", null);
+            assertEquals(3, m.size());
+            assertEquals(Integer.valueOf(3), m.get("a"));
+            assertEquals(Integer.valueOf(2), m.get("b"));
+            assertEquals(null, m.get("c"));
+            assertTrue(m.keys().contains("c"));
+
+            assertEquals(Integer.valueOf(3), m.remove("a"));
+            assertEquals(null, m.remove("a"));
+            assertEquals(null, m.get("a"));
+            assertEquals(2, m.size());
+
+            m.put("a", 4);
+            assertEquals(Integer.valueOf(4), m.get("a"));
+            assertEquals(3, m.size());
+        }
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        try (MappedHashMap<Long, String> m = new MappedHashMap<>(file(), Serializer.LONG, Serializer.STRING)) {
+            for (long i = 0; i < 1000; i++) m.put(i, "v" + i);
+            for (long i = 0; i < 1000; i += 2) m.remove(i);
+        }
+
+        try (MappedHashMap<Long, String> m = new MappedHashMap<>(file(), Serializer.LONG, Serializer.STRING)) {
+            assertEquals(500, m.size());
+            for (long i = 0; i < 1000; i++) {
+                assertEquals(i % 2 == 0 ? null : "v" + i, m.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testManyAgainstHashMap() throws Exception {
+        HashMap<Integer, Integer> expected = new HashMap<>();
+        Random r = new Random(42);
+
+        try (MappedHashMap<Integer, Integer> m = new MappedHashMap<>(file(), Serializer.INTEGER, Serializer.INTEGER)) {
+            for (int i = 0; i < 20000; i++) {
+                int k = r.nextInt(5000);
+                if (r.nextInt(4) == 0) {
+                    assertEquals(expected.remove(k), m.remove(k));
+                } else {
+                    expected.put(k, i);
+                    m.put(k, i);
+                }
+            }
+            assertEquals(expected.size(), m.size());
+            assertEquals(expected.keySet(), m.keys());
+            for (int k : expected.keySet()) assertEquals(expected.get(k), m.get(k));
+        }
+    }
+
+    @Test
+    public void testCompactShrinksFile() throws Exception {
+        try (MappedHashMap<Integer, String> m = new MappedHashMap<>(file(), Serializer.INTEGER, Serializer.STRING)) {
+            for (int i = 0; i < 100; i++) m.put(i, "first");
+            // few enough dead records not to compact automatically
+            for (int i = 0; i < 40; i++) m.put(i, "second");
+            assertEquals(140, m.recordCount);
+            int before = m.dataEnd;
+            m.compact();
+            assertEquals(100, m.recordCount);
+            assertTrue(m.dataEnd < before);
+            assertEquals(100, m.size());
+            for (int i = 0; i < 100; i++) assertEquals(i < 40 ? "second" : "first", m.get(i));
+        }
+    }
+
+    @Test
+    public void testUpdatesCompactAutomatically() throws Exception {
+        try (MappedHashMap<Integer, String> m = new MappedHashMap<>(file(), Serializer.INTEGER, Serializer.STRING)) {
+            for (int i = 0; i < 100; i++) m.put(i, "first");
+            int bound = 0;
+            for (int round = 0; round < 50; round++) {
+                for (int i = 0; i < 100; i++) {
+                    m.put(i, "round " + round);
+                    assertTrue(m.recordCount - m.size() <= m.recordCount * MappedHashMap.MAX_DEAD_SHARE);
+                }
+                if (round == 0) bound = m.buffer.capacity();
+            }
+            // the file stopped growing once it held twice the live records
+            assertEquals(bound, m.buffer.capacity());
+            assertEquals(100, m.size());
+            for (int i = 0; i < 100; i++) assertEquals("round 49", m.get(i));
+
+            for (int i = 0; i < 90; i++) {
+                m.remove(i);
+                assertTrue(m.recordCount < MappedHashMap.MIN_COMPACT_RECORDS
+                        || m.recordCount - m.size() <= m.recordCount * MappedHashMap.MAX_DEAD_SHARE);
+            }
+            assertEquals(10, m.size());
+            assertEquals(m.size(), m.keys().size());
+        }
+
+        try (MappedHashMap<Integer, String> m = new MappedHashMap<>(file(), Serializer.INTEGER, Serializer.STRING)) {
+            assertEquals(10, m.size());
+            assertEquals("round 49", m.get(95));
+        }
+    }
+
+    @Test
+    public void testDirtyFileRecountsSize() throws Exception {
+        MappedHashMap<String, String> m = new MappedHashMap<>(file(), Serializer.STRING, Serializer.STRING);
+        m.put("a", "1");
+        m.put("b", "2");
+        m.flush();
+        // simulate a crash between publishing a record and updating the size
+        m.buffer.putInt(MappedHashMap.SIZE_OFFSET, 7);
+        m.buffer.force();
+        m.channel.close();
+
+        try (MappedHashMap<String, String> reopened = new MappedHashMap<>(file(), Serializer.STRING, Serializer.STRING)) {
+            assertEquals(2, reopened.size());
+            assertEquals("2", reopened.get("b"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsForeignFile() throws Exception {
+        Files.write(file(), new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+        new MappedHashMap<>(file(), Serializer.STRING, Serializer.STRING);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() throws Exception {
+        MappedHashMap<String, String> m = new MappedHashMap<>(file(), Serializer.STRING, Serializer.STRING);
+        m.close();
+        m.get("a");
+    }
+}
@@ -0,0 +1,112 @@
+package hashmaps;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import hashtables.HashTableStats;
+
+
+public class ShardedHashMapTest {
+
+    @Test
+    public void testEmpty() throws Exception {
+        ShardedHashMap<Integer, Integer> m = new ShardedHashMap<>();
+        assertEquals(16, m.shardCount());
+        assertEquals(0, m.size());
+        assertEquals(null, m.get(1));
+        assertEquals(new HashSet<>(), m.keys());
+    }
+
+    @Test
+    public void testMergeAndCompute() throws Exception {
+        ShardedHashMap<Integer, Integer> m = new ShardedHashMap<>(4);
+        for (int i = 0; i < 1000; i++) {
+            m.merge(i % 100, 1, Integer::sum);
+        }
+        assertEquals(100, m.size());
+        assertEquals(Integer.valueOf(10), m.get(37));
+
+        assertEquals(Integer.valueOf(10), m.putIfAbsent(37, 0));
+        assertEquals(Integer.valueOf(-1), m.computeIfAbsent(1000, k -> -1));
+        assertEquals(null, m.compute(37, (k, v) -> null));
+        assertEquals(100, m.size());
+    }
+
+    @Test
+    public void testShardCountRoundsUp() throws Exception {
+        assertEquals(1, new ShardedHashMap<Integer, Integer>(1).shardCount());
+        assertEquals(8, new ShardedHashMap<Integer, Integer>(5).shardCount());
+    }
+
+    @Test
+    public void testSingleShard() throws Exception {
+        ShardedHashMap<Integer, Integer> m = new ShardedHashMap<>(1);
+        for (int i = 0; i < 100; i++) {
+            m.put(i, i);
+        }
+        assertEquals(100, m.size());
+        assertEquals(Integer.valueOf(42), m.get(42));
+    }
+
+    @Test
+    public void testManyActions() throws Exception {
+        Random random = new Random(16);
+        HashMap<Integer, Integer> hm = new HashMap<>();
+        ShardedHashMap<Integer, Integer> m = new ShardedHashMap<>(8);
+
+        for (int i = 0; i < 100000; i++) {
+            double d = random.nextDouble();
+            int k = random.nextInt(10000);
+            if (d < 0.5) {
+                m.put(k, i);
+                hm.put(k, i);
+            } else if (d < 0.75) {
+                assertEquals(hm.remove(k), m.remove(k));
+            } else {
+                assertEquals(hm.getOrDefault(k, -1), m.getOrDefault(k, -1));
+            }
+        }
+        assertEquals(hm.size(), m.size());
+        assertEquals(hm.keySet(), m.keys());
+    }
+
+    @Test
+    public void testShardsAreBalancedAndResizeIndependently() throws Exception {
+        ShardedHashMap<Integer, Integer> m = new ShardedHashMap<>(16);
+        HashTableStats[] stats = m.enableStats();
+        for (int i = 0; i < 160000; i++) {
+            m.put(i, i);
+        }
+
+        int[] sizes = m.shardSizes();
+        int total = 0;
+        for (int size : sizes) {
+            assertTrue(size > 8000 && size < 12000);
+            total += size;
+        }
+        assertEquals(160000, total);
+
+        for (int i = 0; i < 16; i++) {
+            assertEquals(sizes[i], stats[i].getSize());
+            assertTrue(stats[i].getResizeCount() > 0);
+            assertTrue(m.shardCapacities()[i] >= sizes[i]);
+        }
+    }
+
+    @Test
+    public void testPresized() throws Exception {
+        ShardedHashMap<Integer, Integer> m = new ShardedHashMap<>(4, 4000);
+        HashTableStats[] stats = m.enableStats();
+        for (int i = 0; i < 3000; i++) {
+            m.put(i, i);
+        }
+        for (HashTableStats s : stats) {
+            assertEquals(0, s.getResizeCount());
+        }
+    }
+}
@@ -6,13 +6,21 @@ package hashmaps;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import hashtables.ChainingHashTable;
+import hashtables.ConcurrentChainingHashTable;
+import hashtables.CuckooHashTable;
+import hashtables.HashTable;
+import hashtables.OpenAddressingHashTable;
+
 
 public class SimpleHashMapTest {
     //  @Rule
@@ -168,4 +176,254 @@ public class SimpleHashMapTest {
         }
     }
 
+    @Test
+    public void testManyActionsConcurrentTable() throws Exception {
+        final int ACTIONS = 1000;
+        final int BOUND = 100;
+        Random random = new Random(0);
+
+        HashMap<Integer, Integer> hm = new HashMap<>();
+        SimpleHashMap<Integer, Integer> m = new SimpleHashMap<>(new ConcurrentChainingHashTable<>());
+
+        for (int i = 0; i < ACTIONS; i++) {
+            double d = random.nextDouble();
+            int k = random.nextInt(BOUND);
+            if (d < 0.35) {
+                int v = random.nextInt(BOUND);
+                m.put(k, v);
+                hm.put(k, v);
+            } else if (d < 0.65) {
+                assertEquals(hm.remove(k), m.remove(k));
+            } else {
+                assertEquals(hm.get(k), m.get(k));
+            }
+            assertEquals(hm.size(), m.size());
+        }
+        assertEquals(hm.keySet(), m.keys());
+    }
+
+    @Test
+    public void testManyActionsCuckooTable() throws Exception {
+        final int ACTIONS = 10000;
+        final int BOUND = 1000;
+        Random random = new Random(0);
+
+        HashMap<Integer, Integer> hm = new HashMap<>();
+        SimpleHashMap<Integer, Integer> m = new SimpleHashMap<>(new CuckooHashTable<>());
+
+        for (int i = 0; i < ACTIONS; i++) {
+            double d = random.nextDouble();
+            int k = random.nextInt(BOUND);
+            if (d < 0.35) {
+                int v = random.nextInt(BOUND);
+                m.put(k, v);
+                hm.put(k, v);
+            } else if (d < 0.65) {
+                assertEquals(hm.remove(k), m.remove(k));
+            } else {
+                assertEquals(hm.get(k), m.get(k));
+            }
+            assertEquals(hm.size(), m.size());
+        }
+        assertEquals(hm.keySet(), m.keys());
+    }
+
+    @Test
+    public void testConcurrentPuts() throws Exception {
+        final int THREADS = 8;
+        final int PER_THREAD = 10000;
+        SimpleHashMap<Integer, Integer> m = new SimpleHashMap<>(new ConcurrentChainingHashTable<>());
+
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < PER_THREAD; i++) {
+                    m.put(id * PER_THREAD + i, id);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(THREADS * PER_THREAD, m.size());
+        for (int i = 0; i < THREADS * PER_THREAD; i++) {
+            assertEquals(Integer.valueOf(i / PER_THREAD), m.get(i));
+        }
+    }
+
+    @Test
+    public void testCollidingKeys() throws Exception {
+        // "Aa" and "BB" have the same hash code, so all of these keys collide
+        List<String> keys = new ArrayList<>();
+        keys.add("");
+        for (int i = 0; i < 10; i++) {
+            List<String> next = new ArrayList<>();
+            for (String s : keys) {
+                next.add(s + "Aa");
+                next.add(s + "BB");
+            }
+            keys = next;
+        }
+
+        SimpleHashMap<String, Integer> m = new SimpleHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            m.put(keys.get(i), i);
+        }
+        assertEquals(keys.size(), m.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(Integer.valueOf(i), m.get(keys.get(i)));
+        }
+        assertEquals(null, m.get("AaAaAaAaAaAaAaAaAaAB"));
+
+        for (int i = 0; i < keys.size(); i += 2) {
+            assertEquals(Integer.valueOf(i), m.remove(keys.get(i)));
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(i % 2 == 0 ? null : Integer.valueOf(i), m.get(keys.get(i)));
+        }
+    }
+
+    @Test
+    public void testPresizedForNothing() throws Exception {
+        SimpleHashMap<Integer, Integer> m = new SimpleHashMap<>(0);
+        for (int i = 0; i < 100; i++) {
+            m.put(i, i);
+        }
+        assertEquals(100, m.size());
+        assertEquals(Integer.valueOf(42), m.get(42));
+    }
+
+    @Test
+    public void testPutAll() throws Exception {
+        SimpleHashMap<Integer, Integer> source = new SimpleHashMap<>(1000);
+        for (int i = 0; i < 1000; i++) {
+            source.put(i, i);
+        }
+
+        SimpleHashMap<Integer, Integer> m = new SimpleHashMap<>();
+        m.put(0, -1);
+        m.put(-5, -5);
+        m.putAll(source);
+        assertEquals(1001, m.size());
+        assertEquals(Integer.valueOf(0), m.get(0));
+        assertEquals(Integer.valueOf(-5), m.get(-5));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.valueOf(i), m.get(i));
+        }
+
+        // the source is unaffected
+        m.remove(1);
+        assertEquals(Integer.valueOf(1), source.get(1));
+
+        SimpleHashMap<Integer, Integer> c = new SimpleHashMap<>(new ConcurrentChainingHashTable<>());
+        c.putAll(m);
+        assertEquals(m.keys(), c.keys());
+
+        SimpleHashMap<Integer, Integer> fromOther = new SimpleHashMap<>();
+        fromOther.putAll(new BoundedCache<Integer, Integer>(10));
+        assertEquals(0, fromOther.size());
+    }
+
+    @Test
+    public void testComputeMethods() throws Exception {
+        SimpleHashMap<String, Integer> m = new SimpleHashMap<>();
+
+        assertEquals(null, m.putIfAbsent("a", 1));
+        assertEquals(Integer.valueOf(1), m.putIfAbsent("a", 2));
+        assertEquals(Integer.valueOf(1), m.get("a"));
+
+        assertEquals(Integer.valueOf(1), m.computeIfAbsent("a", k -> 5));
+        assertEquals(Integer.valueOf(2), m.computeIfAbsent("bb", String::length));
+        assertEquals(null, m.computeIfAbsent("c", k -> null));
+        assertEquals(2, m.size());
+
+        assertEquals(Integer.valueOf(11), m.compute("a", (k, v) -> v + 10));
+        assertEquals(Integer.valueOf(0), m.compute("c", (k, v) -> v == null ? 0 : v + 1));
+        assertEquals(null, m.compute("c", (k, v) -> null));
+        assertEquals(null, m.get("c"));
+        assertEquals(2, m.size());
+
+        assertEquals(Integer.valueOf(1), m.merge("d", 1, Integer::sum));
+        assertEquals(Integer.valueOf(2), m.merge("d", 1, Integer::sum));
+        assertEquals(null, m.merge("d", 1, (a, b) -> null));
+        assertEquals(2, m.size());
+
+        // a key mapped to null counts as absent
+        m.put("n", null);
+        assertEquals(null, m.putIfAbsent("n", 3));
+        assertEquals(Integer.valueOf(3), m.get("n"));
+    }
+
+    @Test
+    public void testManyComputeActions() throws Exception {
+        final int ACTIONS = 10000;
+        final int BOUND = 300;
+
+        List<HashTable<SimpleMapEntry<Integer, Integer>>> tables = new ArrayList<>();
+        tables.add(new ChainingHashTable<>());
+        tables.add(new ConcurrentChainingHashTable<>());
+        tables.add(new CuckooHashTable<>());
+        tables.add(new OpenAddressingHashTable<>());
+
+        for (HashTable<SimpleMapEntry<Integer, Integer>> table : tables) {
+            Random random = new Random(0);
+            HashMap<Integer, Integer> hm = new HashMap<>();
+            SimpleHashMap<Integer, Integer> m = new SimpleHashMap<>(table);
+
+            for (int i = 0; i < ACTIONS; i++) {
+                double d = random.nextDouble();
+                int k = random.nextInt(BOUND);
+                int v = random.nextInt(BOUND);
+                if (d < 0.2) {
+                    assertEquals(hm.putIfAbsent(k, v), m.putIfAbsent(k, v));
+                } else if (d < 0.4) {
+                    assertEquals(hm.computeIfAbsent(k, key -> key + v), m.computeIfAbsent(k, key -> key + v));
+                } else if (d < 0.6) {
+                    // remove the mapping about a third of the time
+                    assertEquals(hm.compute(k, (key, cur) -> v % 3 == 0 ? null : v),
+                            m.compute(k, (key, cur) -> v % 3 == 0 ? null : v));
+                } else if (d < 0.8) {
+                    assertEquals(hm.merge(k, v, (a, b) -> (a + b) % 5 == 0 ? null : a + b),
+                            m.merge(k, v, (a, b) -> (a + b) % 5 == 0 ? null : a + b));
+                } else {
+                    assertEquals(hm.remove(k), m.remove(k));
+                }
+                assertEquals(hm.size(), m.size());
+            }
+            for (int k = 0; k < BOUND; k++) {
+                assertEquals(hm.get(k), m.get(k));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentMerge() throws Exception {
+        final int THREADS = 8;
+        final int PER_THREAD = 20000;
+        final int KEYS = 100;
+        SimpleHashMap<Integer, Integer> m = new SimpleHashMap<>(new ConcurrentChainingHashTable<>());
+
+        // every thread counts the same keys, so an update lost between the get and the put would show
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < PER_THREAD; i++) {
+                    m.merge(i % KEYS, 1, Integer::sum);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(KEYS, m.size());
+        for (int k = 0; k < KEYS; k++) {
+            assertEquals(Integer.valueOf(THREADS * PER_THREAD / KEYS), m.get(k));
+        }
+    }
+
 }
@@ -0,0 +1,71 @@
+package hashtables;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class BloomFilterTest {
+
+    @Test
+    public void testEmpty() throws Exception {
+        BloomFilter<Integer> f = new BloomFilter<>(100, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(f.mightContain(i));
+        }
+    }
+
+    @Test
+    public void testSizing() throws Exception {
+        BloomFilter<Integer> f = new BloomFilter<>(1000000, 0.01);
+        // about 9.6 bits per element for 1%, rounded up to a power-of-two number of blocks
+        assertTrue(f.bitSize() >= 9585059L);
+        assertTrue(f.bitSize() <= 2 * 9585059L);
+        assertEquals(7, f.hashCount());
+    }
+
+    @Test
+    public void testNoFalseNegatives() throws Exception {
+        BloomFilter<Integer> f = new BloomFilter<>(100000, 0.01);
+        Random r = new Random(15);
+        int[] added = new int[100000];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = r.nextInt();
+            f.add(added[i]);
+        }
+        for (int k : added) {
+            assertTrue(f.mightContain(k));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate() throws Exception {
+        for (double fpp : new double[] { 0.1, 0.01, 0.001 }) {
+            BloomFilter<Integer> f = new BloomFilter<>(100000, fpp);
+            for (int i = 0; i < 100000; i++) {
+                f.add(2 * i);
+            }
+            int falsePositives = 0;
+            for (int i = 0; i < 100000; i++) {
+                if (f.mightContain(2 * i + 1)) falsePositives++;
+            }
+            assertTrue(fpp + ": " + falsePositives, falsePositives / 100000.0 < 2 * fpp);
+        }
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        BloomFilter<String> f = new BloomFilter<>(10, 0.01);
+        f.add("a");
+        assertTrue(f.mightContain("a"));
+        f.clear();
+        assertFalse(f.mightContain("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadFpp() throws Exception {
+        new BloomFilter<Integer>(10, 1.0);
+    }
+}
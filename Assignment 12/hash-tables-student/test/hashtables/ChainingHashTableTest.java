@@ -6,18 +6,28 @@ package hashtables;
 
 import static org.junit.Assert.*;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.Before;
 import org.junit.Test;
 
 
-public class ChainingHashTableTest {
+public class ChainingHashTableTest extends HashTableContractTest {
     //  @Rule
     //  public Timeout globalTimeout = Timeout.seconds(10); // 10 seconds
 
@@ -25,464 +35,734 @@ public class ChainingHashTableTest {
     public void setup() {
     }
 
-    @Test
-    public void testNewTable() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertEquals(0, t.size());
-        assertEquals(7, t.capacity());
+    @Override
+    protected <E> ChainingHashTable<E> newTable() {
+        return new ChainingHashTable<>();
     }
 
-    @Test
-    public void testNewTableCapacity5() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>(5);
-        assertEquals(7, t.capacity());
+    @Override
+    protected <E> ChainingHashTable<E> newTable(int n) {
+        return new ChainingHashTable<>(n);
     }
 
     @Test
-    public void testNewTableCapacity15() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>(15);
+    public void testIncrementalEnlarge() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        t.setIncrementalResize(true);
+        for (int i = 0; i < 6; i++) {
+            t.add(i);
+        }
+        t.add(6);
         assertEquals(15, t.capacity());
-    }
+        assertEquals(7.0 / 15, t.loadFactor(), 0);
+        assertTrue(t.isMigrating());
 
-    @Test
-    public void testNewTableCapacityMultiple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>(2);
-        assertEquals(3, t.capacity());
-
-        t = new ChainingHashTable<>(7);
-        assertEquals(7, t.capacity());
-
-        t = new ChainingHashTable<>(20);
-        assertEquals(31, t.capacity());
-
-        t = new ChainingHashTable<>(65000);
-        assertEquals(65535, t.capacity());
+        List<Integer> l = new ArrayList<>();
+        for (Integer i : t) {
+            l.add(i);
+        }
+        assertEquals(7, l.size());
+        for (int i = 0; i < 7; i++) {
+            assertTrue(l.contains(i));
+            assertTrue(t.contains(i));
+        }
+        assertFalse(t.isMigrating());
     }
 
     @Test
-    public void testSizeSimple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertEquals(0, t.size());
-
-        t.add(0);
-        assertEquals(1, t.size());
+    public void testIncrementalLookupsDuringIteration() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>(1000);
+        t.setIncrementalResize(true);
+        for (int i = 0; i < 769; i++) {
+            t.add(i);
+        }
+        assertTrue(t.isMigrating());
 
-        t.add(1);
-        assertEquals(2, t.size());
+        // lookups migrate buckets, which must not invalidate the iterator
+        Set<Integer> seen = new HashSet<>();
+        Iterator<Integer> it = t.iterator();
+        while (it.hasNext()) {
+            Integer i = it.next();
+            assertTrue(t.contains(i));
+            assertEquals(Integer.valueOf(768 - i), t.get(768 - i));
+            seen.add(i);
+        }
+        assertEquals(769, seen.size());
 
-        t.add(2);
-        assertEquals(3, t.size());
+        for (int i = 769; !t.isMigrating(); i++) {
+            t.add(i);
+        }
+        int[] count = new int[1];
+        t.forEach(i -> {
+            assertTrue(t.contains(i));
+            count[0]++;
+        });
+        assertEquals(t.size(), count[0]);
     }
 
     @Test
-    public void testSizeCollision() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertEquals(0, t.size());
-
-        t.add(0);
-        assertEquals(1, t.size());
+    public void testIncrementalMigrationIsBounded() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>(1000);
+        t.setIncrementalResize(true);
+        for (int i = 0; i < 769; i++) {
+            t.add(i);
+        }
+        assertEquals(2047, t.capacity());
+        assertTrue(t.isMigrating());
 
-        t.add(7);
-        assertEquals(2, t.size());
+        // each operation moves at most MIGRATION_STEP buckets plus its own
+        assertFalse(t.add(0));
+        assertTrue(t.isMigrating());
 
-        t.add(15);
-        assertEquals(3, t.size());
+        t.setIncrementalResize(false);
+        assertFalse(t.isMigrating());
+        for (int i = 0; i < 769; i++) {
+            assertTrue(t.contains(i));
+        }
     }
 
     @Test
-    public void testCapacitySimple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertEquals(7, t.capacity());
-
-        t.add(0);
-        assertEquals(7, t.capacity());
-
-        t.add(1);
-        assertEquals(7, t.capacity());
+    public void test1000x1000RandomAddRemoveIncremental() throws Exception {
+        Random random = new Random(0);
+        for (int round = 0; round < 1000; round++) {
+            ChainingHashTable<Integer> t = new ChainingHashTable<>();
+            t.setIncrementalResize(true);
+            Set<Integer> h = new HashSet<Integer>();
+            int n = 3;
+            int cap = 7;
+            for (int i = 0; i < 1000; i++) {
+                final int r = random.nextInt(100);
+                if (random.nextDouble() < 0.67) {
+                    // add
+                    if (t.loadFactor() > 0.75) {
+                        n++;
+                        cap = (int) (Math.pow(2, n) - 1);
+                    }
+                    if (h.contains(r)) {
+                        assertFalse(t.add(r));
+                    } else {
+                        assertTrue(t.add(r));
+                        assertEquals(cap, t.capacity());
+                        h.add(r);
+                    }
+                } else {
+                    // remove
+                    if (h.contains(r)) {
+                        assertTrue(t.remove(r));
+                        h.remove(r);
+                    } else {
+                        assertFalse(t.remove(r));
+                    }
+                }
+                assertEquals(h.size(), t.size());
+            }
 
-        t.add(2);
-        assertEquals(7, t.capacity());
+            Set<Integer> seen = new HashSet<Integer>();
+            for (Integer i : t) {
+                assertTrue(seen.add(i));
+            }
+            assertEquals(h, seen);
+            for (Integer i : h) {
+                assertTrue(t.contains(i));
+            }
+        }
     }
 
     @Test
-    public void testCapacityCollision() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertEquals(7, t.capacity());
-
-        t.add(0);
-        assertEquals(7, t.capacity());
-
-        t.add(7);
-        assertEquals(7, t.capacity());
-
-        t.add(14);
-        assertEquals(7, t.capacity());
+    public void testComputeByKey() throws Exception {
+        ChainingHashTable<BadKey> t = new ChainingHashTable<>();
+        KeyMatcher<BadKey, Integer> byId = (k, id) -> k.id == id;
+
+        // every BadKey collides, so this also covers a treeified bucket
+        for (int i = 0; i < 20; i++) {
+            final int id = i;
+            assertEquals(i, t.computeByKey(42, id, byId, cur -> cur == null ? new BadKey(id) : null).id);
+        }
+        assertEquals(20, t.size());
+        assertTrue(t.retrieveCurList(t.indexFor(42, t.capacity())) instanceof SortedBucket);
+
+        BadKey replacement = new BadKey(5);
+        assertSame(replacement, t.computeByKey(42, 5, byId, cur -> replacement));
+        assertSame(replacement, t.get(new BadKey(5)));
+        assertEquals(20, t.size());
+
+        assertEquals(null, t.computeByKey(42, 7, byId, cur -> null));
+        assertFalse(t.contains(new BadKey(7)));
+        assertEquals(null, t.computeByKey(42, 100, byId, cur -> null));
+        assertEquals(19, t.size());
+
+        try {
+            t.computeByKey(42, 200, byId, cur -> {
+                t.add(new BadKey(300));
+                return null;
+            });
+            fail();
+        } catch (ConcurrentModificationException e) {
+        }
     }
 
     @Test
-    public void testLoadFactorSimple() throws Exception {
+    public void testMinValueHash() throws Exception {
         ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertEquals(0, t.loadFactor(), 0);
-
-        t.add(0);
-        assertEquals(1.0/7, t.loadFactor(), 0);
-
-        t.add(1);
-        assertEquals(2.0/7, t.loadFactor(), 0);
-
-        t.add(2);
-        assertEquals(3.0/7, t.loadFactor(), 0);
+        assertTrue(t.add(Integer.MIN_VALUE));
+        assertTrue(t.contains(Integer.MIN_VALUE));
+        assertTrue(t.remove(Integer.MIN_VALUE));
+
+        t = new ChainingHashTable<>(HashingStrategy.SPREAD_MASK);
+        assertTrue(t.add(Integer.MIN_VALUE));
+        assertTrue(t.contains(Integer.MIN_VALUE));
+        assertTrue(t.remove(Integer.MIN_VALUE));
     }
 
     @Test
-    public void testLoadFactorCollision() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertEquals(0, t.loadFactor(), 0);
-
-        t.add(0);
-        assertEquals(1.0 / 7, t.loadFactor(), 0);
+    public void testSpreadMaskCapacity() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>(HashingStrategy.SPREAD_MASK);
+        assertEquals(8, t.capacity());
+        assertEquals(32, new ChainingHashTable<Integer>(20, HashingStrategy.SPREAD_MASK).capacity());
+        assertEquals(65536, new ChainingHashTable<Integer>(65000, HashingStrategy.SPREAD_MASK).capacity());
 
+        for (int i = 0; i < 7; i++) {
+            t.add(i);
+            assertEquals(8, t.capacity());
+        }
         t.add(7);
-        assertEquals(2.0 / 7, t.loadFactor(), 0);
-
-        t.add(14);
-        assertEquals(3.0 / 7, t.loadFactor(), 0);
-    }
-    
-    @Test
-    public void testContainsSimple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertFalse(t.contains(0));
-        assertFalse(t.contains(7));
-
-        t.add(0);
-        assertTrue(t.contains(0));
-        assertFalse(t.contains(7));
+        assertEquals(16, t.capacity());
+        assertEquals(8.0 / 16, t.loadFactor(), 0);
     }
 
     @Test
-    public void testContainsCollision() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertFalse(t.contains(0));
-        assertFalse(t.contains(7));
-
-        t.add(0);
-        assertTrue(t.contains(0));
-        assertFalse(t.contains(7));
+    public void testSpreadMaskDistributesStridedKeys() throws Exception {
+        // these keys only differ above bit 10; masking them directly would put all of them in one bucket
+        ChainingHashTable<Integer> t = new ChainingHashTable<>(1024, HashingStrategy.SPREAD_MASK);
+        for (int i = 0; i < 768; i++) {
+            t.add(i << 10);
+        }
+        assertEquals(1024, t.capacity());
 
-        t.add(7);
-        assertTrue(t.contains(0));
-        assertTrue(t.contains(7));
+        int longest = 0;
+        for (int i = 0; i < t.capacity(); i++) {
+            ArrayList<Integer> bucket = t.retrieveCurList(i);
+            if (bucket != null) longest = Math.max(longest, bucket.size());
+        }
+        assertTrue(longest <= 8);
     }
 
     @Test
-    public void testGetSimple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertEquals(null, t.get(0));
-        assertEquals(null, t.get(7));
+    public void test1000RandomAddRemoveSpreadMask() throws Exception {
+        Random random = new Random(0);
+        ChainingHashTable<Integer> t = new ChainingHashTable<>(HashingStrategy.SPREAD_MASK);
+        Set<Integer> h = new HashSet<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            final int r = random.nextInt();
+            if (random.nextDouble() < 0.67) {
+                assertEquals(h.add(r), t.add(r));
+            } else {
+                int victim = h.isEmpty() ? r : h.iterator().next();
+                assertEquals(h.remove(victim), t.remove(victim));
+            }
+            assertEquals(h.size(), t.size());
+        }
 
-        t.add(0);
+        for (Integer i : h) {
+            assertTrue(t.contains(i));
+        }
+    }
 
-        assertEquals(Integer.valueOf(0), t.get(0));
-        assertEquals(null, t.get(7));
+    /**
+     * Return 2^n distinct strings that all have the same hashCode(), built
+     * from "Aa" and "BB" (which collide with each other).
+     */
+    static List<String> collidingStrings(int n) {
+        List<String> res = new ArrayList<>();
+        res.add("");
+        for (int i = 0; i < n; i++) {
+            List<String> next = new ArrayList<>();
+            for (String s : res) {
+                next.add(s + "Aa");
+                next.add(s + "BB");
+            }
+            res = next;
+        }
+        return res;
     }
-    
-    @Test
-    public void testGetCollision() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertEquals(null, t.get(0));
-        assertEquals(null, t.get(7));
 
-        t.add(0);
+    /**
+     * A key that is neither Comparable nor well hashed.
+     */
+    static class BadKey {
+        final int id;
 
-        assertEquals(Integer.valueOf(0), t.get(0));
-        assertEquals(null, t.get(7));
+        BadKey(int id) {
+            this.id = id;
+        }
 
-        t.add(7);
+        @Override
+        public int hashCode() {
+            return 42;
+        }
 
-        assertEquals(Integer.valueOf(0), t.get(0));
-        assertEquals(Integer.valueOf(7), t.get(7));
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof BadKey && ((BadKey) obj).id == this.id;
+        }
     }
 
-
-
     @Test
-    public void testRemoveSimple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertFalse(t.contains(0));
-        assertFalse(t.contains(7));
-
-        t.add(0);
+    public void testTreeifiedCollidingStrings() throws Exception {
+        List<String> keys = collidingStrings(10);
+        ChainingHashTable<String> t = new ChainingHashTable<>();
+        for (String k : keys) {
+            assertTrue(t.add(k));
+        }
+        for (String k : keys) {
+            assertFalse(t.add(k));
+        }
+        assertEquals(keys.size(), t.size());
 
-        assertTrue(t.contains(0));
-        assertFalse(t.contains(7));
+        int index = Math.abs(keys.get(0).hashCode() % t.capacity());
+        assertTrue(t.retrieveCurList(index) instanceof SortedBucket);
 
-        assertTrue(t.remove(0));
+        for (String k : keys) {
+            assertTrue(t.contains(k));
+            assertEquals(k, t.get(k));
+        }
+        assertFalse(t.contains("AaAaAaAaAaAaAaAaAaAB"));
 
-        assertFalse(t.contains(0));
-        assertFalse(t.contains(7));
+        Set<String> seen = new HashSet<>();
+        for (String k : t) {
+            seen.add(k);
+        }
+        assertEquals(new HashSet<>(keys), seen);
 
-        assertFalse(t.remove(0));
-        assertFalse(t.remove(7));
+        for (int i = 0; i < keys.size(); i += 2) {
+            assertTrue(t.remove(keys.get(i)));
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(i % 2 == 1, t.contains(keys.get(i)));
+        }
     }
 
     @Test
-    public void testRemoveCollision() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertFalse(t.contains(0));
-        assertFalse(t.contains(7));
+    public void testTreeifiedNonComparableKeys() throws Exception {
+        ChainingHashTable<Object> t = new ChainingHashTable<>();
+        for (int i = 0; i < 50; i++) {
+            assertTrue(t.add(new BadKey(i)));
+            assertTrue(t.add("s" + i));
+        }
+        assertEquals(100, t.size());
+        for (int i = 0; i < 50; i++) {
+            assertTrue(t.contains(new BadKey(i)));
+            assertTrue(t.contains("s" + i));
+        }
+        assertFalse(t.contains(new BadKey(50)));
 
-        t.add(0);
+        for (int i = 0; i < 50; i += 3) {
+            assertTrue(t.remove(new BadKey(i)));
+        }
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i % 3 != 0, t.contains(new BadKey(i)));
+        }
+    }
 
-        assertTrue(t.contains(0));
-        assertFalse(t.contains(7));
+    /**
+     * A colliding key that is Comparable, but to another type.
+     */
+    static class ForeignComparableKey implements Comparable<String> {
+        final int id;
 
-        t.add(7);
+        ForeignComparableKey(int id) {
+            this.id = id;
+        }
 
-        assertTrue(t.contains(0));
-        assertTrue(t.contains(7));
+        @Override
+        public int compareTo(String o) {
+            return o.length();
+        }
 
-        assertTrue(t.remove(7));
+        @Override
+        public int hashCode() {
+            return 42;
+        }
 
-        assertTrue(t.contains(0));
-        assertFalse(t.contains(7));
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ForeignComparableKey && ((ForeignComparableKey) obj).id == this.id;
+        }
+    }
 
-        assertFalse(t.remove(7));
-        assertTrue(t.remove(0));
+    @Test
+    public void testTreeifiedForeignComparableKeys() throws Exception {
+        ChainingHashTable<Object> t = new ChainingHashTable<>();
+        for (int i = 0; i < 30; i++) {
+            assertTrue(t.add(new ForeignComparableKey(i)));
+        }
+        assertTrue(t.retrieveCurList(t.indexFor(42, t.capacity())) instanceof SortedBucket);
+        for (int i = 0; i < 30; i++) {
+            assertTrue(t.contains(new ForeignComparableKey(i)));
+        }
+        assertFalse(t.contains(new ForeignComparableKey(30)));
+        assertTrue(t.remove(new ForeignComparableKey(7)));
+        assertEquals(29, t.size());
+    }
 
-        assertFalse(t.contains(0));
-        assertFalse(t.contains(7));
+    @Test(expected = ConcurrentModificationException.class)
+    public void testIteratorFailFast() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        for (int i = 0; i < 5; i++) {
+            t.add(i);
+        }
+        Iterator<Integer> it = t.iterator();
+        it.next();
+        t.add(100);
+        it.next();
     }
 
     @Test
-    public void testRemoveCollisionOffset() throws Exception {
+    public void testIteratorOverwriteIsNotAModification() throws Exception {
         ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertFalse(t.contains(0));
-        assertFalse(t.contains(7));
-
-        t.add(0);
-
-        assertTrue(t.contains(0));
-        assertFalse(t.contains(7));
-
-        t.add(7);
-
-        assertTrue(t.contains(0));
-        assertTrue(t.contains(7));
-
-        assertTrue(t.remove(0));
-
-        assertFalse(t.contains(0));
-        assertTrue(t.contains(7));
-    }    
+        for (int i = 0; i < 5; i++) {
+            t.add(i);
+        }
+        int count = 0;
+        for (Integer i : t) {
+            assertFalse(t.add(i));
+            count++;
+        }
+        assertEquals(5, count);
+    }
 
     @Test
-    public void testRemoveCollisionOffsetReadd() throws Exception {
+    public void testForEach() throws Exception {
         ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertFalse(t.contains(0));
-        assertFalse(t.contains(7));
-
-        t.add(0);
-
-        assertTrue(t.contains(0));
-        assertFalse(t.contains(7));
-
-        t.add(7);
-
-        assertTrue(t.contains(0));
-        assertTrue(t.contains(7));
+        Set<Integer> h = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            t.add(i * 31);
+            h.add(i * 31);
+        }
+        Set<Integer> seen = new HashSet<>();
+        t.forEach(i -> assertTrue(seen.add(i)));
+        assertEquals(h, seen);
+    }
 
-        assertTrue(t.remove(0));
+    @Test(expected = ConcurrentModificationException.class)
+    public void testForEachFailFast() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        for (int i = 0; i < 5; i++) {
+            t.add(i);
+        }
+        t.forEach(i -> t.remove(i));
+    }
 
-        assertFalse(t.contains(0));
-        assertTrue(t.contains(7));
+    @Test
+    public void testSpliteratorSplitsByBucket() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        for (int i = 0; i < 100; i++) {
+            t.add(i);
+        }
+        Spliterator<Integer> right = t.spliterator();
+        Spliterator<Integer> left = right.trySplit();
+        assertNotNull(left);
 
-        assertTrue(t.add(0));
-        assertTrue(t.contains(0));
-        assertTrue(t.contains(7));
+        Set<Integer> seen = new HashSet<>();
+        left.forEachRemaining(i -> assertTrue(seen.add(i)));
+        while (right.tryAdvance(i -> assertTrue(seen.add(i)))) {
+        }
+        assertEquals(100, seen.size());
     }
 
     @Test
-    public void testAddMultiple() throws Exception {
+    public void testParallelStream() throws Exception {
         ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertTrue(t.add(0));
-        assertFalse(t.add(0));
+        long expected = 0;
+        for (int i = 0; i < 100000; i++) {
+            t.add(i);
+            expected += i;
+        }
+        assertEquals(expected, t.parallelStream().mapToLong(i -> i).sum());
+        assertEquals(100000, t.parallelStream().collect(Collectors.toSet()).size());
+
+        t.setIncrementalResize(true);
+        for (int i = 100000; i < 200000; i++) {
+            t.add(i);
+        }
+        assertTrue(t.isMigrating());
+        assertEquals(200000, t.parallelStream().distinct().count());
     }
 
     @Test
-    public void testIteratorEmpty() throws Exception {
+    public void testAddAllGrowsOnce() throws Exception {
         ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        for (Integer i : t) {
-            fail();
+        List<Integer> l = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            l.add(i);
+        }
+        assertTrue(t.addAll(l));
+        assertEquals(1000, t.size());
+        assertEquals(2047, t.capacity());
+        assertTrue(t.loadFactor() <= 0.75);
+        assertEquals(1 + 1000, t.modCount); // one rehash, then 1000 insertions
+
+        assertFalse(t.addAll(l.subList(0, 10)));
+        assertEquals(2047, t.capacity());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(t.contains(i));
         }
     }
 
     @Test
-    public void testIteratorSimple() throws Exception {
+    public void testEnsureCapacityAndTrimToSize() throws Exception {
         ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        for (int i = 0; i < 6; i++) {
+        t.ensureCapacity(100);
+        assertEquals(255, t.capacity());
+        t.ensureCapacity(10);
+        assertEquals(255, t.capacity());
+
+        for (int i = 0; i < 10; i++) {
             t.add(i);
         }
+        t.trimToSize();
+        assertEquals(15, t.capacity());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(t.contains(i));
+        }
 
-        List<Integer> l = new ArrayList<>();
-        for (Integer i : t) {
-            l.add(i);
+        ChainingHashTable<Integer> s = new ChainingHashTable<>(HashingStrategy.SPREAD_MASK);
+        s.ensureCapacity(100);
+        assertEquals(256, s.capacity());
+        s.trimToSize();
+        assertEquals(2, s.capacity());
+    }
+
+    @Test
+    public void testTrimToSizeFinishesMigration() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        t.setIncrementalResize(true);
+        for (int i = 0; i < 100; i++) {
+            t.add(i);
         }
+        assertTrue(t.isMigrating());
+        t.trimToSize();
+        assertFalse(t.isMigrating());
+        assertEquals(100, t.size());
+        assertEquals(100, t.stream().distinct().count());
+    }
 
-        assertEquals(6, l.size());
-        for (int i = 0; i < 6; i++) {
-            assertTrue(l.contains(i));
+    @Test
+    public void testParallelAddAll() throws Exception {
+        for (HashingStrategy hashing : HashingStrategy.values()) {
+            ChainingHashTable<Integer> t = new ChainingHashTable<>(hashing);
+            t.add(-1);
+            List<Integer> l = new ArrayList<>();
+            for (int i = 0; i < 100000; i++) {
+                l.add(i % 60000);
+            }
+            assertTrue(t.parallelAddAll(l));
+            assertEquals(60001, t.size());
+            assertEquals(60001, t.stream().distinct().count());
+            for (int i = -1; i < 60000; i++) {
+                assertTrue(t.contains(i));
+            }
+            assertFalse(t.parallelAddAll(l));
         }
     }
 
     @Test
-    public void testIteratorCollisions() throws Exception {
-        List<Integer> values = Arrays.asList(0, 7, 14, 2, 9);
+    public void testStats() throws Exception {
         ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        for (Integer i : values) {
+        HashTableStats stats = t.enableStats();
+        for (int i = 0; i < 100; i++) {
             t.add(i);
         }
+        assertEquals(5, stats.getResizeCount()); // 7 -> 15 -> 31 -> 63 -> 127 -> 255
+        assertTrue(stats.getResizeTimeNanos() > 0);
 
-        List<Integer> l = new ArrayList<>();
-        for (Integer i : t) {
-            l.add(i);
+        for (int i = 0; i < 150; i++) {
+            t.contains(i);
+        }
+        t.get(0);
+        t.get(-1);
+        assertEquals(101, stats.getHitCount());
+        assertEquals(51, stats.getMissCount());
+
+        long[] histogram = stats.getChainLengthHistogram();
+        long buckets = 0;
+        long elements = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            buckets += histogram[i];
+            elements += i * histogram[i];
         }
+        assertEquals(255, buckets);
+        assertEquals(100, elements);
+        assertEquals(1, stats.getMaxChainLength());
+        assertEquals(1.0, stats.getMeanChainLength(), 1e-9);
+
+        stats.reset();
+        assertEquals(0, stats.getHitCount());
+        t.setListener(null);
+        t.contains(0);
+        assertEquals(0, stats.getHitCount());
+    }
 
-        assertEquals(5, l.size());
-        for (Integer i : values) {
-            assertTrue(l.contains(i));
+    @Test
+    public void testStatsChainLengths() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>(63);
+        HashTableStats stats = t.enableStats();
+        for (int i = 0; i < 5; i++) {
+            t.add(i * 63);
         }
+        t.add(1);
+        assertEquals(5, stats.getMaxChainLength());
+        assertEquals(3.0, stats.getMeanChainLength(), 1e-9);
+        assertEquals(61, stats.getChainLengthHistogram()[0]);
+        assertEquals(1, stats.getChainLengthHistogram()[5]);
     }
-    
+
     @Test
-    public void testEnlargeSimple() throws Exception {
+    public void testStatsChainLengthsFromAnotherThread() throws Exception {
         ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertEquals(7, t.capacity());
-        for (int i = 0; i < 6; i++) {
+        t.setIncrementalResize(true);
+        HashTableStats stats = t.enableStats();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // like a JMX client, read the chain lengths while the table resizes
+        Thread reader = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    assertTrue(stats.getMaxChainLength() >= 0);
+                    assertEquals(HashTableStats.HISTOGRAM_LENGTH, stats.getChainLengthHistogram().length);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        Random random = new Random(0);
+        int[] added = new int[20000];
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < added.length; i++) {
+                added[i] = random.nextInt(1 << 20);
+                t.add(added[i]);
+            }
+            for (int i : added) {
+                t.remove(i);
+            }
+            t.trimToSize();
+        }
+        done.set(true);
+        reader.join();
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void testListener() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        t.setIncrementalResize(true);
+        List<String> events = new ArrayList<>();
+        t.setListener(new HashTableListener() {
+            @Override
+            public void onResize(int oldCapacity, int newCapacity, long nanos) {
+                events.add(oldCapacity + "->" + newCapacity);
+            }
+        });
+        for (int i = 0; i < 7; i++) {
             t.add(i);
-            assertEquals(7, t.capacity());
         }
-        t.add(6);
-        assertEquals(15, t.capacity());
+        t.ensureCapacity(100);
+        assertEquals(Arrays.asList("7->15", "15->255"), events);
     }
 
     @Test
-    public void testEnlargeCollision() throws Exception {
+    public void testStatsMXBean() throws Exception {
         ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        assertEquals(7, t.capacity());
-        for (int i = 1; i < 7; i++) {
-            t.add(i * 7);
-            assertEquals(7, t.capacity());
+        HashTableStats stats = t.enableStats();
+        t.add(1);
+        t.contains(1);
+
+        ObjectName name = stats.register("testStatsMXBean");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1L, server.getAttribute(name, "HitCount"));
+            assertEquals(1, server.getAttribute(name, "Size"));
+            assertEquals(7, ((long[]) server.getAttribute(name, "ChainLengthHistogram"))[0]
+                    + ((long[]) server.getAttribute(name, "ChainLengthHistogram"))[1]);
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
         }
-        t.add(0);
-        assertEquals(15, t.capacity());
     }
 
     @Test
-    public void test100Random() throws Exception {
-        Random random = new Random(0);
+    public void testFilteredMode() throws Exception {
         ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        Set<Integer> h = new HashSet<Integer>();
-        int n = 3;
-        int cap = 7;
         for (int i = 0; i < 100; i++) {
-            final int r = random.nextInt(100);
-            if (h.contains(r)) {
-                assertFalse(t.add(r));
-            } else {
-                if (t.loadFactor() > 0.75) {
-                    n++;
-                    cap = (int) (Math.pow(2, n) - 1);
-                }
-                assertTrue(t.add(r));
-                assertEquals(cap, t.capacity());
-                h.add(r);
-            }
-            assertEquals(h.size(), t.size());
+            t.add(i);
         }
+        t.enableFilter(0.01);
+        assertTrue(t.isFiltered());
+        HashTableStats stats = t.enableStats();
 
-        for (Integer i : h) {
+        for (int i = 100; i < 1000; i++) {
+            t.add(i);
+        }
+        for (int i = 0; i < 1000; i++) {
             assertTrue(t.contains(i));
+            assertEquals(Integer.valueOf(i), t.get(i));
+        }
+        for (int i = 1000; i < 2000; i++) {
+            assertFalse(t.contains(i));
+            assertEquals(null, t.get(i));
         }
+        assertEquals(2000, stats.getHitCount());
+        assertEquals(2000, stats.getMissCount());
+
+        t.remove(5);
+        assertFalse(t.contains(5));
+        t.disableFilter();
+        assertFalse(t.isFiltered());
+        assertTrue(t.contains(6));
     }
-    
+
     @Test
-    public void test1000RandomAddRemove() throws Exception {
-        Random random = new Random(0);
+    public void testFilterRebuiltAfterRemovals() throws Exception {
         ChainingHashTable<Integer> t = new ChainingHashTable<>();
-        Set<Integer> h = new HashSet<Integer>();
-        int n = 3;
-        int cap = 7;
         for (int i = 0; i < 1000; i++) {
-            final int r = random.nextInt(100);
-            if (random.nextDouble() < 0.67) {
-                // add
-                if (t.loadFactor() > 0.75) {
-                    n++;
-                    cap = (int) (Math.pow(2, n) - 1);
-                }
-                if (h.contains(r)) {
-                    assertFalse(t.add(r));
-                } else {
-                    assertTrue(t.add(r));
-                    assertEquals(cap, t.capacity());
-                    h.add(r);
-                }
-            } else {
-                // remove
-                if (h.contains(r)) {
-                    assertTrue(t.remove(r));
-                    h.remove(r);
-                } else {
-                    assertFalse(t.remove(r));
-                }
-            }
-            assertEquals(h.size(), t.size());
+            t.add(i);
+        }
+        t.enableFilter(0.01);
+        for (int i = 0; i < 900; i++) {
+            t.remove(i);
+            assertTrue(t.filterRemovals <= Math.max(ChainingHashTable.FILTER_REBUILD_RATIO * t.size(), t.capacity() / 8));
         }
 
-        for (Integer i : h) {
+        // most removed elements have been dropped from the filter again
+        int stale = 0;
+        for (int i = 0; i < 900; i++) {
+            if (t.filter.mightContainHash(Integer.valueOf(i).hashCode())) stale++;
+        }
+        assertTrue("stale " + stale, stale < 300);
+        for (int i = 900; i < 1000; i++) {
             assertTrue(t.contains(i));
         }
     }
 
     @Test
-    public void test1000x1000RandomAddRemove() throws Exception {
-        Random random = new Random(0);
-        for (int round = 0; round < 1000; round++) {
-            ChainingHashTable<Integer> t = new ChainingHashTable<>();
-            Set<Integer> h = new HashSet<Integer>();
-            int n = 3;
-            int cap = 7;
-            for (int i = 0; i < 1000; i++) {
-                final int r = random.nextInt(100);
-                if (random.nextDouble() < 0.67) {
-                    // add
-                    if (t.loadFactor() > 0.75) {
-                        n++;
-                        cap = (int) (Math.pow(2, n) - 1);
-                    }
-                    if (h.contains(r)) {
-                        assertFalse(t.add(r));
-                    } else {
-                        assertTrue(t.add(r));
-                        assertEquals(cap, t.capacity());
-                        h.add(r);
-                    }
-                } else {
-                    // remove
-                    if (h.contains(r)) {
-                        assertTrue(t.remove(r));
-                        h.remove(r);
-                    } else {
-                        assertFalse(t.remove(r));
-                    }
-                }
-                assertEquals(h.size(), t.size());
-            }
+    public void testFilteredModeIncremental() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        t.setIncrementalResize(true);
+        t.enableFilter(0.01);
+        List<Integer> l = new ArrayList<>();
+        for (int i = 0; i < 7000; i++) {
+            t.add(i * 7);
+            l.add(-i - 1);
+        }
+        assertTrue(t.isMigrating());
+        for (int i = 0; i < 7000; i++) {
+            assertTrue(t.contains(i * 7));
+        }
 
-            for (Integer i : h) {
-                assertTrue(t.contains(i));
-            }
+        t.parallelAddAll(l);
+        for (int i = 0; i < 7000; i++) {
+            assertTrue(t.contains(-i - 1));
         }
     }
 
@@ -507,6 +787,8 @@ public class ChainingHashTableTest {
         testRemoveCollisionOffset();
         testRemoveCollisionOffsetReadd();
         testAddMultiple();
+        testGetRemoveByKey();
+        testComputeByKey();
         testIteratorEmpty();
         testIteratorSimple();
         testIteratorCollisions();
@@ -515,6 +797,32 @@ public class ChainingHashTableTest {
         test100Random();
         test1000RandomAddRemove();
         test1000x1000RandomAddRemove();
+        testIncrementalEnlarge();
+        testIncrementalLookupsDuringIteration();
+        testIncrementalMigrationIsBounded();
+        test1000x1000RandomAddRemoveIncremental();
+        testMinValueHash();
+        testSpreadMaskCapacity();
+        testSpreadMaskDistributesStridedKeys();
+        test1000RandomAddRemoveSpreadMask();
+        testTreeifiedCollidingStrings();
+        testTreeifiedNonComparableKeys();
+        testTreeifiedForeignComparableKeys();
+        testIteratorOverwriteIsNotAModification();
+        testForEach();
+        testSpliteratorSplitsByBucket();
+        testParallelStream();
+        testAddAllGrowsOnce();
+        testEnsureCapacityAndTrimToSize();
+        testTrimToSizeFinishesMigration();
+        testParallelAddAll();
+        testStats();
+        testStatsChainLengths();
+        testStatsChainLengthsFromAnotherThread();
+        testListener();
+        testFilteredMode();
+        testFilterRebuiltAfterRemovals();
+        testFilteredModeIncremental();
     }
 
 }
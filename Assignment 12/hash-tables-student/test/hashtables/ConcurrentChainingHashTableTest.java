@@ -0,0 +1,212 @@
+package hashtables;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+
+public class ConcurrentChainingHashTableTest {
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60); // 60 seconds
+
+    static final int THREADS = 8;
+
+    @Test
+    public void testNewTable() throws Exception {
+        ConcurrentChainingHashTable<Integer> t = new ConcurrentChainingHashTable<>();
+        assertEquals(0, t.size());
+        assertEquals(0, t.loadFactor(), 0);
+        assertEquals(32, t.capacity());
+    }
+
+    @Test
+    public void testNewTableCapacity() throws Exception {
+        ConcurrentChainingHashTable<Integer> t = new ConcurrentChainingHashTable<>(1000, 4);
+        assertEquals(1024, t.capacity());
+
+        t = new ConcurrentChainingHashTable<>(10, 1);
+        assertEquals(16, t.capacity());
+    }
+
+    @Test
+    public void testAddContainsGetRemove() throws Exception {
+        ConcurrentChainingHashTable<Integer> t = new ConcurrentChainingHashTable<>();
+        assertFalse(t.contains(0));
+        assertEquals(null, t.get(0));
+
+        assertTrue(t.add(0));
+        assertFalse(t.add(0));
+        assertTrue(t.contains(0));
+        assertEquals(Integer.valueOf(0), t.get(0));
+        assertEquals(1, t.size());
+
+        assertTrue(t.remove(0));
+        assertFalse(t.remove(0));
+        assertFalse(t.contains(0));
+        assertEquals(0, t.size());
+    }
+
+    @Test
+    public void testEnlarge() throws Exception {
+        ConcurrentChainingHashTable<Integer> t = new ConcurrentChainingHashTable<>(2, 1);
+        assertEquals(2, t.capacity());
+        t.add(0);
+        assertEquals(2, t.capacity());
+        t.add(1);
+        assertEquals(4, t.capacity());
+        for (int i = 2; i < 100; i++) {
+            t.add(i);
+        }
+        assertTrue(t.loadFactor() <= 0.75);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(t.contains(i));
+        }
+    }
+
+    @Test
+    public void test1000RandomAddRemove() throws Exception {
+        Random random = new Random(0);
+        ConcurrentChainingHashTable<Integer> t = new ConcurrentChainingHashTable<>();
+        Set<Integer> h = new HashSet<Integer>();
+        for (int i = 0; i < 1000; i++) {
+            final int r = random.nextInt(100);
+            if (random.nextDouble() < 0.67) {
+                assertEquals(h.add(r), t.add(r));
+            } else {
+                assertEquals(h.remove(r), t.remove(r));
+            }
+            assertEquals(h.size(), t.size());
+        }
+
+        Set<Integer> seen = new HashSet<Integer>();
+        for (Integer i : t) {
+            assertTrue(seen.add(i));
+        }
+        assertEquals(h, seen);
+    }
+
+    @Test
+    public void testConcurrentDisjointAdds() throws Exception {
+        final int perThread = 50000;
+        ConcurrentChainingHashTable<Integer> t = new ConcurrentChainingHashTable<>();
+
+        runConcurrently(id -> {
+            for (int i = 0; i < perThread; i++) {
+                assertTrue(t.add(id * perThread + i));
+            }
+        });
+
+        assertEquals(THREADS * perThread, t.size());
+        for (int i = 0; i < THREADS * perThread; i++) {
+            assertTrue(t.contains(i));
+        }
+        int count = 0;
+        for (Integer i : t) {
+            count++;
+        }
+        assertEquals(THREADS * perThread, count);
+    }
+
+    @Test
+    public void testConcurrentOverlappingAdds() throws Exception {
+        final int n = 20000;
+        ConcurrentChainingHashTable<Integer> t = new ConcurrentChainingHashTable<>(2, 2);
+
+        runConcurrently(id -> {
+            for (int i = 0; i < n; i++) {
+                t.add(i);
+            }
+        });
+
+        assertEquals(n, t.size());
+    }
+
+    @Test
+    public void testConcurrentChurnWithReaders() throws Exception {
+        // keys below STABLE are added up front and never removed; readers must always see them
+        final int STABLE = 1000;
+        final int CHURN = 5000;
+        ConcurrentChainingHashTable<Integer> t = new ConcurrentChainingHashTable<>();
+        for (int i = 0; i < STABLE; i++) {
+            t.add(i);
+        }
+
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicBoolean readerFailed = new AtomicBoolean(false);
+        Thread reader = new Thread(() -> {
+            Random random = new Random(1);
+            while (!done.get()) {
+                int k = random.nextInt(STABLE);
+                if (!t.contains(k) || !Integer.valueOf(k).equals(t.get(k))) readerFailed.set(true);
+            }
+        });
+        reader.start();
+
+        runConcurrently(id -> {
+            Random random = new Random(id);
+            for (int i = 0; i < 100000; i++) {
+                int k = STABLE + id * CHURN + random.nextInt(CHURN);
+                if (random.nextBoolean()) {
+                    t.add(k);
+                } else {
+                    t.remove(k);
+                }
+            }
+            // leave every churned key removed
+            for (int k = STABLE + id * CHURN; k < STABLE + (id + 1) * CHURN; k++) {
+                t.remove(k);
+            }
+        });
+
+        done.set(true);
+        reader.join();
+
+        assertFalse(readerFailed.get());
+        assertEquals(STABLE, t.size());
+        for (int i = 0; i < STABLE; i++) {
+            assertTrue(t.contains(i));
+        }
+    }
+
+    interface Worker {
+        void run(int id) throws Exception;
+    }
+
+    static void runConcurrently(Worker worker) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+
+        for (int id = 0; id < THREADS; id++) {
+            final int threadId = id;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    worker.run(threadId);
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) throw new AssertionError(failures.get(0));
+    }
+}
@@ -0,0 +1,146 @@
+package hashtables;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import hashtables.ChainingHashTableTest.BadKey;
+
+
+public class CuckooHashTableTest {
+
+    @Test
+    public void testNewTable() throws Exception {
+        CuckooHashTable<Integer> t = new CuckooHashTable<>();
+        assertEquals(0, t.size());
+        assertEquals(16, t.capacity());
+        assertEquals(64, new CuckooHashTable<Integer>(50).capacity());
+        assertFalse(t.iterator().hasNext());
+    }
+
+    @Test
+    public void testAddContainsRemove() throws Exception {
+        CuckooHashTable<Integer> t = new CuckooHashTable<>();
+        assertTrue(t.add(1));
+        assertFalse(t.add(1));
+        assertTrue(t.add(2));
+        assertEquals(2, t.size());
+        assertTrue(t.contains(1));
+        assertFalse(t.contains(3));
+        assertEquals(Integer.valueOf(2), t.get(2));
+        assertEquals(null, t.get(3));
+        assertTrue(t.remove(1));
+        assertFalse(t.remove(1));
+        assertFalse(t.contains(1));
+        assertEquals(1, t.size());
+        assertEquals(1.0 / 16.0, t.loadFactor(), 1e-9);
+    }
+
+    @Test
+    public void testEnlarge() throws Exception {
+        CuckooHashTable<Integer> t = new CuckooHashTable<>();
+        for (int i = 0; i < 15; i++) {
+            t.add(i);
+        }
+        assertEquals(16, t.capacity());
+        t.add(15);
+        assertEquals(32, t.capacity());
+        for (int i = 0; i < 16; i++) {
+            assertTrue(t.contains(i));
+        }
+    }
+
+    @Test
+    public void testLookupsProbeTwoBuckets() throws Exception {
+        CuckooHashTable<Integer> t = new CuckooHashTable<>();
+        for (int i = 0; i < 100000; i++) {
+            t.add(i);
+        }
+        assertEquals(0, t.stashSize());
+        for (int i = 0; i < t.capacity(); i++) {
+            Object e = t.elements[i];
+            if (e == null) continue;
+            int bucket = i / CuckooHashTable.SLOTS_PER_BUCKET;
+            assertTrue(bucket == t.bucket1(e.hashCode()) || bucket == t.bucket2(e.hashCode()));
+        }
+    }
+
+    @Test
+    public void testCollidingHashCodesUseStash() throws Exception {
+        CuckooHashTable<BadKey> t = new CuckooHashTable<>();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(t.add(new BadKey(i)));
+        }
+        assertEquals(100, t.size());
+        assertTrue(t.stashSize() > 0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(t.contains(new BadKey(i)));
+        }
+        assertFalse(t.contains(new BadKey(100)));
+        for (int i = 0; i < 100; i += 2) {
+            assertTrue(t.remove(new BadKey(i)));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 1, t.contains(new BadKey(i)));
+        }
+        Set<BadKey> seen = new HashSet<>();
+        for (BadKey k : t) {
+            assertTrue(seen.add(k));
+        }
+        assertEquals(50, seen.size());
+    }
+
+    @Test
+    public void testGetRemoveByKey() throws Exception {
+        CuckooHashTable<BadKey> t = new CuckooHashTable<>();
+        for (int i = 0; i < 20; i++) {
+            t.add(new BadKey(i));
+        }
+        KeyMatcher<BadKey, Integer> byId = (k, id) -> k.id == id;
+        assertEquals(15, t.getByKey(42, 15, byId).id);
+        assertEquals(null, t.getByKey(42, 20, byId));
+        assertEquals(3, t.removeByKey(42, 3, byId).id);
+        assertEquals(null, t.removeByKey(42, 3, byId));
+        assertEquals(19, t.size());
+    }
+
+    @Test
+    public void testIterator() throws Exception {
+        CuckooHashTable<Integer> t = new CuckooHashTable<>();
+        Set<Integer> h = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            t.add(i * 17);
+            h.add(i * 17);
+        }
+        Set<Integer> seen = new HashSet<>();
+        Iterator<Integer> it = t.iterator();
+        while (it.hasNext()) {
+            assertTrue(seen.add(it.next()));
+        }
+        assertEquals(h, seen);
+    }
+
+    @Test
+    public void test1000x1000RandomAddRemove() throws Exception {
+        Random r = new Random(14);
+        CuckooHashTable<Integer> t = new CuckooHashTable<>();
+        Set<Integer> h = new HashSet<>();
+        for (int i = 0; i < 1000000; i++) {
+            int k = r.nextInt(1000);
+            if (r.nextBoolean()) {
+                assertEquals(h.add(k), t.add(k));
+            } else {
+                assertEquals(h.remove(k), t.remove(k));
+            }
+            assertEquals(h.size(), t.size());
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(h.contains(i), t.contains(i));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashtables;
+
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class OpenAddressingHashTableTest extends HashTableContractTest {
+    //  @Rule
+    //  public Timeout globalTimeout = Timeout.seconds(10); // 10 seconds
+
+    @Before
+    public void setup() {
+    }
+
+    @Override
+    protected <E> OpenAddressingHashTable<E> newTable() {
+        return new OpenAddressingHashTable<>();
+    }
+
+    @Override
+    protected <E> OpenAddressingHashTable<E> newTable(int n) {
+        return new OpenAddressingHashTable<>(n);
+    }
+
+    @Test
+    public void testOpenAddressingHashTableAll() throws Exception {
+        testNewTable();
+        testNewTableCapacity5();
+        testNewTableCapacity15();
+        testNewTableCapacityMultiple();
+        testSizeSimple();
+        testSizeCollision();
+        testCapacitySimple();
+        testCapacityCollision();
+        testLoadFactorSimple();
+        testLoadFactorCollision();
+        testContainsSimple();
+        testContainsCollision();
+        testGetSimple();
+        testGetCollision();
+        testRemoveSimple();
+        testRemoveCollision();
+        testRemoveCollisionOffset();
+        testRemoveCollisionOffsetReadd();
+        testAddMultiple();
+        testGetRemoveByKey();
+        testIteratorEmpty();
+        testIteratorSimple();
+        testIteratorCollisions();
+        testEnlargeSimple();
+        testEnlargeCollision();
+        test100Random();
+        test1000RandomAddRemove();
+        test1000x1000RandomAddRemove();
+    }
+
+}
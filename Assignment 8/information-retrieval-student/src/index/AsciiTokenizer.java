@@ -0,0 +1,114 @@
+package index;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * The default Tokenizer: splits text on runs of non-word characters, exactly
+ * like the regular expression \W+ (word characters being [a-zA-Z_0-9]), and
+ * lowercases terms.
+ *
+ * Since terms consist of ASCII characters only, the text is scanned a buffer at
+ * a time with a lookup table rather than a regular expression, and case is
+ * folded in place as each character is copied into the current term. Terms are
+ * then looked up in a dictionary of the terms seen so far, keyed by their
+ * characters, so that a term that has been seen before is returned as the same
+ * String without allocating anything. The dictionary grows with the vocabulary
+ * of the documents tokenized, whose terms the index keeps anyway.
+ *
+ * Unlike String.toLowerCase(), case folding does not depend on the default
+ * locale, so "I" is always "i".
+ *
+ * Instances are not thread-safe.
+ */
+public class AsciiTokenizer implements Tokenizer {
+
+	static final boolean[] WORD = new boolean[128];
+	static {
+		for (char c = 'a'; c <= 'z'; c++) WORD[c] = true;
+		for (char c = 'A'; c <= 'Z'; c++) WORD[c] = true;
+		for (char c = '0'; c <= '9'; c++) WORD[c] = true;
+		WORD['_'] = true;
+	}
+
+	final char[] buffer = new char[8192];
+	char[] term = new char[32];
+
+	// the dictionary: open addressing with linear probing, at most half full
+	String[] terms = new String[1024];
+	int count;
+
+	@Override
+	public void tokenize(Reader reader, Consumer<? super String> sink) throws IOException {
+		char[] buffer = this.buffer;
+		char[] term = this.term;
+		int length = 0;
+		int hash = 0;
+
+		int n;
+		while ((n = reader.read(buffer, 0, buffer.length)) != -1) {
+			for (int i = 0; i < n; i++) {
+				char c = buffer[i];
+				if (c < 128 && WORD[c]) {
+					if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+					if (length == term.length) term = this.term = Arrays.copyOf(term, length * 2);
+					term[length++] = c;
+					hash = 31 * hash + c;
+				} else if (length > 0) {
+					sink.accept(intern(term, length, hash));
+					length = 0;
+					hash = 0;
+				}
+			}
+		}
+		if (length > 0) sink.accept(intern(term, length, hash));
+	}
+
+	/**
+	 * @return the String of the first length characters of chars, from the dictionary
+	 * if it has been seen before. hash is its String.hashCode().
+	 */
+	String intern(char[] chars, int length, int hash) {
+		int mask = this.terms.length - 1;
+		int i = mix(hash) & mask;
+		for (String s = this.terms[i]; s != null; s = this.terms[i = (i + 1) & mask]) {
+			// hashCode() is cached by String, so this rules out most mismatches cheaply
+			if (s.hashCode() == hash && matches(s, chars, length)) return s;
+		}
+
+		String res = new String(chars, 0, length);
+		this.terms[i] = res;
+		if (++this.count > this.terms.length >> 1) resize();
+		return res;
+	}
+
+	static boolean matches(String s, char[] chars, int length) {
+		if (s.length() != length) return false;
+		for (int i = 0; i < length; i++) {
+			if (s.charAt(i) != chars[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Spread the hash's high bits, since the low bits of String hashes of short
+	 * terms are poorly distributed.
+	 */
+	static int mix(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	void resize() {
+		String[] old = this.terms;
+		this.terms = new String[old.length * 2];
+		int mask = this.terms.length - 1;
+		for (String s : old) {
+			if (s == null) continue;
+			int i = mix(s.hashCode()) & mask;
+			while (this.terms[i] != null) i = (i + 1) & mask;
+			this.terms[i] = s;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import documents.DocumentId;
+import index.PostingList.PostingIterator;
+
+/**
+ * Top-k retrieval over a disjunction of terms with Block-Max WAND.
+ *
+ * The k best documents seen so far are kept in a bounded min-heap, whose
+ * weakest entry sets a threshold score. Every term has an upper bound on the
+ * score it can contribute (its largest tf times its IDF), and the cursors
+ * over the terms' posting lists are kept sorted by their current document.
+ * The pivot is the first cursor at which the bounds of the cursors so far
+ * reach the threshold: no document before the pivot's can enter the heap,
+ * so the cursors behind it skip straight to it.
+ *
+ * Once the cursors line up on the pivot document, the tighter bounds of their
+ * current blocks (see PostingList) are checked as well. If even those cannot
+ * reach the threshold, the whole range up to the end of the shortest of those
+ * blocks is skipped without being decoded. For a single popular term, this
+ * means that only the blocks holding its highest frequencies are read.
+ *
+ * Removed documents are skipped when they come up as pivots; the bounds stay
+ * valid, as they only ever overestimate.
+ *
+ * Documents scoring exactly the threshold can still enter the heap by the
+ * document id tie-break, so bounds are only used to skip documents that
+ * score strictly less, and they are inflated by SLACK so that rounding in
+ * their sums never makes them fall below a score they should bound.
+ */
+final class BlockMaxWand {
+
+	static final double SLACK = 1 + 1e-9;
+
+	static final class Cursor {
+		final PostingIterator postings;
+		final double idf;
+		final double maxScore;
+
+		Cursor(PostingList list, double idf) {
+			this.postings = list.iterator();
+			this.idf = idf;
+			this.maxScore = list.maxTf() * idf * SLACK;
+		}
+
+		int doc() {
+			return this.postings.doc();
+		}
+	}
+
+	private BlockMaxWand() {
+	}
+
+	/**
+	 * Return the k highest-scoring documents matching at least one cursor's
+	 * term, most relevant first, but for those in deleted, where a document
+	 * scores the sum of tf * idf over the cursors on it.
+	 */
+	static List<SearchEngine.Hit> topK(Cursor[] cursors, int k, List<DocumentId> documents, BitSet deleted) {
+		if (k == 0) return new ArrayList<>();
+
+		// the weakest hit at the head
+		PriorityQueue<SearchEngine.Hit> heap = new PriorityQueue<>(k, Collections.reverseOrder());
+
+		// scores are summed in the order of the terms, as search() does, so equal tfs give equal scores
+		Cursor[] terms = cursors.clone();
+		for (Cursor var : cursors) {
+			var.postings.nextDoc();
+		}
+		int n = cursors.length;
+
+		while (true) {
+			sortByDoc(cursors);
+			double threshold = heap.size() < k ? Double.NEGATIVE_INFINITY : heap.peek().score;
+
+			int pivot = -1;
+			double bound = 0;
+			for (int i = 0; i < n && cursors[i].doc() != PostingIterator.NO_MORE_DOCS; i++) {
+				bound += cursors[i].maxScore;
+				if (bound >= threshold) {
+					pivot = i;
+					break;
+				}
+			}
+			if (pivot == -1) break;
+
+			int pivotDoc = cursors[pivot].doc();
+			if (cursors[0].doc() != pivotDoc) {
+				cursors[0].postings.advance(pivotDoc);
+				continue;
+			}
+
+			// every cursor up to pivot is on pivotDoc; so may be some after it
+			while (pivot + 1 < n && cursors[pivot + 1].doc() == pivotDoc) pivot++;
+
+			double blockBound = 0;
+			int skipTo = pivot + 1 < n ? cursors[pivot + 1].doc() : PostingIterator.NO_MORE_DOCS;
+			for (int i = 0; i <= pivot; i++) {
+				blockBound += cursors[i].postings.blockMaxTf() * cursors[i].idf * SLACK;
+				skipTo = Math.min(skipTo, cursors[i].postings.blockLastDoc() + 1);
+			}
+
+			if (blockBound < threshold) {
+				// nothing before skipTo can score more than blockBound
+				for (int i = 0; i <= pivot; i++) {
+					cursors[i].postings.advance(skipTo);
+				}
+				continue;
+			}
+
+			if (deleted.get(pivotDoc)) {
+				for (int i = 0; i <= pivot; i++) {
+					cursors[i].postings.nextDoc();
+				}
+				continue;
+			}
+
+			double score = 0;
+			for (Cursor var : terms) {
+				if (var.doc() == pivotDoc) score += var.postings.tf() * var.idf;
+			}
+			SearchEngine.Hit hit = new SearchEngine.Hit(documents.get(pivotDoc), score);
+			if (heap.size() < k) {
+				heap.add(hit);
+			} else if (hit.compareTo(heap.peek()) < 0) {
+				heap.poll();
+				heap.add(hit);
+			}
+
+			for (int i = 0; i <= pivot; i++) {
+				cursors[i].postings.nextDoc();
+			}
+		}
+
+		List<SearchEngine.Hit> res = new ArrayList<>(heap);
+		Collections.sort(res);
+		return res;
+	}
+
+	/**
+	 * Insertion sort by current document: there are only a few cursors, and
+	 * they are nearly sorted already after each step.
+	 */
+	static void sortByDoc(Cursor[] cursors) {
+		for (int i = 1; i < cursors.length; i++) {
+			Cursor var = cursors[i];
+			int j = i - 1;
+			while (j >= 0 && cursors[j].doc() > var.doc()) {
+				cursors[j + 1] = cursors[j];
+				j--;
+			}
+			cursors[j + 1] = var;
+		}
+	}
+}
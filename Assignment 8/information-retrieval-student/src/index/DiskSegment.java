@@ -0,0 +1,395 @@
+package index;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import documents.DocumentId;
+import index.PostingList.PostingIterator;
+
+/**
+ * An immutable part of an index on disk, holding the documents with ordinals base to
+ * base + count - 1 in three files named after the segment:
+ *
+ * - name.doc: the number of documents, the offset of each one's id, then the ids by ordinal
+ * - name.pst: the posting lists of the terms, as PostingList.write() writes them, one
+ *   after the other in term order
+ * - name.tim: the term dictionary, a sorted block dictionary: every term in order with
+ *   the offset of its posting list in name.pst, then an index of the first term of each
+ *   block of BLOCK_SIZE terms and the offset of the block, then the number of terms, of
+ *   blocks and the offset of the index
+ *
+ * Strings are written as their length in bytes followed by their UTF-8 encoding, and
+ * posting lists hold the documents' ordinals in the whole index, not just the segment.
+ *
+ * The files are memory-mapped, so opening a segment only reads the block index. Looking
+ * up a term binary searches the index, scans one block and copies the posting list out of
+ * the mapping, without decoding it. Mappings are read through duplicates, so lookups are
+ * safe on any number of threads.
+ *
+ * Each file is mapped as a single ByteBuffer and addressed by int offsets, so it has to
+ * stay below MAX_FILE_SIZE bytes.
+ */
+final class DiskSegment {
+
+	static final int BLOCK_SIZE = 32;
+
+	static final String[] EXTENSIONS = { ".doc", ".pst", ".tim" };
+
+	static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+
+	final String name;
+	final int base;
+	final int count;
+
+	final ByteBuffer docs;
+	final ByteBuffer postings;
+	final ByteBuffer terms;
+	final int termCount;
+	final String[] blockTerms; // the first term of each block
+	final int[] blockOffsets; // the offset of each block in terms
+
+	private DiskSegment(Path directory, String name, int base, int count) throws IOException {
+		this.name = name;
+		this.base = base;
+		this.count = count;
+		this.docs = map(directory.resolve(name + ".doc"));
+		this.postings = map(directory.resolve(name + ".pst"));
+		this.terms = map(directory.resolve(name + ".tim"));
+
+		ByteBuffer in = this.terms.duplicate();
+		in.position(in.limit() - 12);
+		this.termCount = in.getInt();
+		int blocks = in.getInt();
+		in.position(in.getInt());
+		this.blockTerms = new String[blocks];
+		this.blockOffsets = new int[blocks];
+		for (int i = 0; i < blocks; i++) {
+			this.blockTerms[i] = readString(in);
+			this.blockOffsets[i] = in.getInt();
+		}
+	}
+
+	/**
+	 * Open a segment written earlier.
+	 *
+	 * @throws IOException iff its files cannot be mapped
+	 */
+	static DiskSegment open(Path directory, String name, int base, int count) throws IOException {
+		return new DiskSegment(directory, name, base, count);
+	}
+
+	static ByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			// the mapping stays valid after the channel is closed
+			return channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * @return the ids of the documents in the segment, by ordinal - base
+	 */
+	List<DocumentId> documents() {
+		ByteBuffer in = this.docs.duplicate();
+		int n = in.getInt();
+		in.position(4 + 4 * n);
+		List<DocumentId> res = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			res.add(new DocumentId(readString(in)));
+		}
+		return res;
+	}
+
+	/**
+	 * @return the id of the document with ordinal base + index
+	 */
+	DocumentId document(int index) {
+		ByteBuffer in = this.docs.duplicate();
+		in.position(in.getInt(4 + 4 * index));
+		return new DocumentId(readString(in));
+	}
+
+	/**
+	 * @return a copy of the posting list of term in this segment, or null if no document
+	 * in the segment contains it
+	 */
+	PostingList postings(String term) {
+		// the last block starting at or before term
+		int lo = 0;
+		int hi = this.blockTerms.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this.blockTerms[mid].compareTo(term) <= 0) {
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		if (hi < 0) return null;
+
+		ByteBuffer in = this.terms.duplicate();
+		in.position(this.blockOffsets[hi]);
+		int end = Math.min(this.termCount, (hi + 1) * BLOCK_SIZE);
+		for (int i = hi * BLOCK_SIZE; i < end; i++) {
+			int c = readString(in).compareTo(term);
+			int offset = in.getInt();
+			if (c == 0) return readPostings(offset);
+			if (c > 0) break;
+		}
+		return null;
+	}
+
+	PostingList readPostings(int offset) {
+		ByteBuffer in = this.postings.duplicate();
+		in.position(offset);
+		return PostingList.read(in);
+	}
+
+	static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Delete the files of segment name, if they exist.
+	 */
+	static void delete(Path directory, String name) throws IOException {
+		for (String extension : EXTENSIONS) {
+			Files.deleteIfExists(directory.resolve(name + extension));
+		}
+	}
+
+	/**
+	 * @return true iff merging segments cannot give a file of limit bytes or more. A merged
+	 * file is never larger than the files it comes from put together: deleted postings are
+	 * dropped, and the 20 byte header a term's lists share makes up for the 12 byte skip
+	 * entry concatenating them may add.
+	 */
+	static boolean canMerge(List<DiskSegment> segments, long limit) {
+		long docs = 0;
+		long postings = 0;
+		long terms = 0;
+		for (DiskSegment var : segments) {
+			docs += var.docs.capacity();
+			postings += var.postings.capacity();
+			terms += var.terms.capacity();
+		}
+		return docs < limit && postings < limit && terms < limit;
+	}
+
+	/**
+	 * Write a segment of several adjacent segments, in order: the posting lists of each term
+	 * are concatenated, leaving out the postings of the documents in deleted. Their ids are
+	 * kept, so that ordinals do not change.
+	 *
+	 * @throws IOException iff the segment cannot be written
+	 */
+	static DiskSegment merge(Path directory, String name, List<DiskSegment> segments, BitSet deleted) throws IOException {
+		// a k-way merge of the segments' dictionaries, ties going to the earlier segment
+		PriorityQueue<TermCursor> queue = new PriorityQueue<>((a, b) -> {
+			int c = a.term.compareTo(b.term);
+			return c != 0 ? c : Integer.compare(a.order, b.order);
+		});
+		for (int i = 0; i < segments.size(); i++) {
+			TermCursor cursor = new TermCursor(segments.get(i), i);
+			if (cursor.next()) queue.add(cursor);
+		}
+
+		try (Writer writer = new Writer(directory, name)) {
+			while (!queue.isEmpty()) {
+				String term = queue.peek().term;
+				PostingList merged = new PostingList();
+				while (!queue.isEmpty() && queue.peek().term.equals(term)) {
+					TermCursor cursor = queue.poll();
+					PostingIterator it = cursor.segment.readPostings(cursor.offset).iterator();
+					while (it.nextDoc() != PostingIterator.NO_MORE_DOCS) {
+						if (!deleted.get(it.doc())) merged.add(it.doc(), it.tf());
+					}
+					if (cursor.next()) queue.add(cursor);
+				}
+				//a term only in removed documents is dropped altogether
+				if (merged.size() > 0) writer.add(term, merged);
+			}
+
+			List<DocumentId> documents = new ArrayList<>();
+			for (DiskSegment var : segments) {
+				documents.addAll(var.documents());
+			}
+			return writer.finish(segments.get(0).base, documents);
+		}
+	}
+
+	/**
+	 * Walks the dictionary of a segment in term order.
+	 */
+	static final class TermCursor {
+		final DiskSegment segment;
+		final int order;
+		final ByteBuffer in;
+		int remaining;
+		String term;
+		int offset; // of the term's posting list
+
+		TermCursor(DiskSegment segment, int order) {
+			this.segment = segment;
+			this.order = order;
+			this.in = segment.terms.duplicate();
+			this.remaining = segment.termCount;
+		}
+
+		boolean next() {
+			if (this.remaining == 0) return false;
+			this.remaining--;
+			this.term = readString(this.in);
+			this.offset = this.in.getInt();
+			return true;
+		}
+	}
+
+	/**
+	 * Writes a new segment. Terms are added in increasing order with their posting lists,
+	 * then finish() writes the dictionary and the documents and opens the segment. Every
+	 * file is forced to disk before finish() returns.
+	 *
+	 * On failure, the caller deletes whatever files were written. That includes a file that
+	 * would reach limit bytes, which fails with an IOException before it gets there.
+	 */
+	static final class Writer implements Closeable {
+		final Path directory;
+		final String name;
+		final FileChannel channel;
+		final DataOutputStream out;
+		final List<String> terms = new ArrayList<>();
+		final List<Integer> offsets = new ArrayList<>();
+		final long limit;
+
+		Writer(Path directory, String name) throws IOException {
+			this(directory, name, MAX_FILE_SIZE);
+		}
+
+		Writer(Path directory, String name, long limit) throws IOException {
+			this.directory = directory;
+			this.name = name;
+			this.limit = limit;
+			this.channel = FileChannel.open(directory.resolve(name + ".pst"), StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.WRITE);
+			this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(this.channel), 1 << 16));
+		}
+
+		void add(String term, PostingList list) throws IOException {
+			// size() is exact as long as every earlier check passed
+			checkSize(this.out.size() + list.writtenSize(), ".pst");
+			this.terms.add(term);
+			this.offsets.add(this.out.size());
+			list.write(this.out);
+		}
+
+		DiskSegment finish(int base, List<DocumentId> documents) throws IOException {
+			this.out.flush();
+			this.channel.force(true);
+
+			writeFile(this.directory.resolve(this.name + ".tim"), out -> {
+				List<String> blockTerms = new ArrayList<>();
+				List<Integer> blockOffsets = new ArrayList<>();
+				for (int i = 0; i < this.terms.size(); i++) {
+					if (i % BLOCK_SIZE == 0) {
+						blockTerms.add(this.terms.get(i));
+						blockOffsets.add(out.size());
+					}
+					writeString(out, this.terms.get(i));
+					out.writeInt(this.offsets.get(i));
+					checkSize(out.size(), ".tim");
+				}
+				int indexOffset = out.size();
+				for (int i = 0; i < blockTerms.size(); i++) {
+					writeString(out, blockTerms.get(i));
+					out.writeInt(blockOffsets.get(i));
+				}
+				out.writeInt(this.terms.size());
+				out.writeInt(blockTerms.size());
+				out.writeInt(indexOffset);
+				// size() stops at Integer.MAX_VALUE, which fails the check as well
+				checkSize(out.size(), ".tim");
+			});
+
+			long size = 4 + 4L * documents.size();
+			for (DocumentId var : documents) {
+				size += 4 + var.id.getBytes(StandardCharsets.UTF_8).length;
+			}
+			checkSize(size, ".doc");
+			writeFile(this.directory.resolve(this.name + ".doc"), out -> {
+				out.writeInt(documents.size());
+				int offset = 4 + 4 * documents.size();
+				for (DocumentId var : documents) {
+					out.writeInt(offset);
+					offset += 4 + var.id.getBytes(StandardCharsets.UTF_8).length;
+				}
+				for (DocumentId var : documents) {
+					writeString(out, var.id);
+				}
+			});
+
+			return open(this.directory, this.name, base, documents.size());
+		}
+
+		void checkSize(long size, String extension) throws IOException {
+			if (size >= this.limit) {
+				throw new IOException(this.name + extension + " would reach " + this.limit + " bytes, more than a segment file can hold");
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.channel.close();
+		}
+	}
+
+	interface FileContents {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * Write a file and force it to disk.
+	 */
+	static void writeFile(Path path, FileContents contents) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+			contents.write(out);
+			out.flush();
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Force the entries of a directory to disk, making the files created, renamed and
+	 * deleted in it so far durable. Does nothing on Windows, where directories cannot be
+	 * opened.
+	 */
+	static void syncDirectory(Path directory) throws IOException {
+		if (System.getProperty("os.name").startsWith("Windows")) return;
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+	}
+}
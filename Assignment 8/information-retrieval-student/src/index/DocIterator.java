@@ -0,0 +1,241 @@
+package index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import index.PostingList.PostingIterator;
+
+/**
+ * Walks the documents matching (part of) a Query in increasing ordinal order,
+ * document-at-a-time, with the same contract as PostingIterator: it starts
+ * before the first document, and nextDoc() and advance() return the new
+ * current document, or NO_MORE_DOCS.
+ */
+interface DocIterator {
+
+	int NO_MORE_DOCS = PostingIterator.NO_MORE_DOCS;
+
+	int doc();
+
+	int nextDoc();
+
+	/**
+	 * Move to the first document at or after target, never backwards.
+	 */
+	int advance(int target);
+
+	/**
+	 * @return the score of the current document: its summed tf-idf over the matching terms
+	 */
+	double score();
+
+	/**
+	 * @return an upper bound on the number of documents left, used to order conjunctions
+	 */
+	long cost();
+
+	/**
+	 * The documents of one term's posting list, scored by tf-idf, but for those in deleted.
+	 */
+	static final class TermIterator implements DocIterator {
+		final PostingIterator postings;
+		final double idf;
+		final BitSet deleted;
+
+		TermIterator(PostingList list, double idf, BitSet deleted) {
+			this.postings = list.iterator();
+			this.idf = idf;
+			this.deleted = deleted;
+		}
+
+		@Override
+		public int doc() {
+			return this.postings.doc();
+		}
+
+		@Override
+		public int nextDoc() {
+			return skipDeleted(this.postings.nextDoc());
+		}
+
+		@Override
+		public int advance(int target) {
+			return skipDeleted(this.postings.advance(target));
+		}
+
+		int skipDeleted(int doc) {
+			while (doc != NO_MORE_DOCS && this.deleted.get(doc)) doc = this.postings.nextDoc();
+			return doc;
+		}
+
+		@Override
+		public double score() {
+			return this.postings.tf() * this.idf;
+		}
+
+		@Override
+		public long cost() {
+			return this.postings.list.size();
+		}
+	}
+
+	/**
+	 * The documents matching every one of required and none of excluded.
+	 *
+	 * The rarest required iterator leads; every candidate it proposes is
+	 * checked by advancing the others to it, and whenever one of them
+	 * overshoots, its document becomes the next target (leapfrogging), so
+	 * long posting lists are mostly skipped over rather than decoded.
+	 */
+	static final class ConjunctionIterator implements DocIterator {
+		final DocIterator[] required; // sorted by cost, rarest first
+		final DocIterator[] excluded;
+		int doc;
+
+		ConjunctionIterator(DocIterator[] required, DocIterator[] excluded) {
+			this.required = required.clone();
+			Arrays.sort(this.required, (a, b) -> Long.compare(a.cost(), b.cost()));
+			this.excluded = excluded;
+			this.doc = -1;
+		}
+
+		@Override
+		public int doc() {
+			return this.doc;
+		}
+
+		@Override
+		public int nextDoc() {
+			if (this.doc == NO_MORE_DOCS) return NO_MORE_DOCS;
+			return advance(this.doc + 1);
+		}
+
+		@Override
+		public int advance(int target) {
+			int candidate = this.required[0].advance(target);
+
+			while (candidate != NO_MORE_DOCS) {
+				int next = candidate;
+				for (int i = 1; i < this.required.length && next == candidate; i++) {
+					next = this.required[i].advance(candidate);
+				}
+
+				if (next != candidate) {
+					candidate = this.required[0].advance(next);
+				} else if (isExcluded(candidate)) {
+					candidate = this.required[0].nextDoc();
+				} else {
+					break;
+				}
+			}
+			return this.doc = candidate;
+		}
+
+		boolean isExcluded(int candidate) {
+			for (DocIterator var : this.excluded) {
+				if (var.advance(candidate) == candidate) return true;
+			}
+			return false;
+		}
+
+		@Override
+		public double score() {
+			double res = 0;
+			for (DocIterator var : this.required) {
+				res += var.score();
+			}
+			return res;
+		}
+
+		@Override
+		public long cost() {
+			return this.required[0].cost();
+		}
+	}
+
+	/**
+	 * The documents matching at least one of clauses, scored by the sum over
+	 * the clauses that match.
+	 */
+	static final class DisjunctionIterator implements DocIterator {
+		final DocIterator[] clauses;
+		int doc;
+
+		DisjunctionIterator(DocIterator[] clauses) {
+			this.clauses = clauses;
+			this.doc = -1;
+		}
+
+		@Override
+		public int doc() {
+			return this.doc;
+		}
+
+		@Override
+		public int nextDoc() {
+			if (this.doc == NO_MORE_DOCS) return NO_MORE_DOCS;
+			return advance(this.doc + 1);
+		}
+
+		@Override
+		public int advance(int target) {
+			// queries have a handful of clauses, so a linear scan beats a heap here
+			int min = NO_MORE_DOCS;
+			for (DocIterator var : this.clauses) {
+				int d = var.doc() < target ? var.advance(target) : var.doc();
+				if (d < min) min = d;
+			}
+			return this.doc = min;
+		}
+
+		@Override
+		public double score() {
+			double res = 0;
+			for (DocIterator var : this.clauses) {
+				if (var.doc() == this.doc) res += var.score();
+			}
+			return res;
+		}
+
+		@Override
+		public long cost() {
+			long res = 0;
+			for (DocIterator var : this.clauses) {
+				res += var.cost();
+			}
+			return res;
+		}
+	}
+
+	/**
+	 * Matches nothing; stands in for a term that is not in the index.
+	 */
+	static final class EmptyIterator implements DocIterator {
+		int doc = -1;
+
+		@Override
+		public int doc() {
+			return this.doc;
+		}
+
+		@Override
+		public int nextDoc() {
+			return this.doc = NO_MORE_DOCS;
+		}
+
+		@Override
+		public int advance(int target) {
+			return this.doc = NO_MORE_DOCS;
+		}
+
+		@Override
+		public double score() {
+			return 0;
+		}
+
+		@Override
+		public long cost() {
+			return 0;
+		}
+	}
+}
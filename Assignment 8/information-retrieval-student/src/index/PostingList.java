@@ -0,0 +1,390 @@
+package index;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The postings of one term: the ordinals of the documents containing it, in
+ * increasing order, each with the term's frequency in that document.
+ *
+ * Postings are stored compressed in a single byte array. Each one is the gap
+ * from the previous document ordinal followed by the term frequency, both
+ * written as variable-byte integers (7 bits per byte, the high bit marking
+ * every byte but the last). Most gaps and frequencies are small, so a typical
+ * posting takes two or three bytes, instead of the boxed object and hash set
+ * entry per posting of a Set<DocumentId>.
+ *
+ * Every SKIP_INTERVAL postings, the list records the last document ordinal so
+ * far and the byte offset that follows it, so that a PostingIterator can
+ * advance() to a given document without decoding everything in front of it.
+ * It also records the largest term frequency of each such block (and of the
+ * whole list), which bounds the score of every document in the block for
+ * top-k retrieval (see BlockMaxWand).
+ *
+ * Postings can only be appended, with increasing document ordinals.
+ */
+class PostingList {
+
+	static final int SKIP_INTERVAL = 64;
+
+	static final byte[] EMPTY = new byte[0];
+
+	byte[] bytes;
+	int length; // bytes in use
+	int size; // number of postings
+	int lastDoc;
+
+	int[] skipDocs; // the last document of each complete block of SKIP_INTERVAL postings
+	int[] skipOffsets; // the offset of the first posting after that block
+	int[] skipMaxTfs; // the largest tf in that block
+
+	int maxTf;
+	int tailMaxTf; // the largest tf among the postings after the last complete block
+
+	// kept up to date by SearchEngine.documentFrequency()
+	int deletionsChecked; // the entries of SearchEngine.deletions checked against the list
+	int deletedPostings; // the postings found among them
+
+	// kept by SearchEngine.inverseDocumentFrequency()
+	double idf;
+	long idfGeneration; // the SearchEngine.generation idf was computed in, or -1
+
+	PostingList() {
+		this.bytes = EMPTY;
+		this.length = 0;
+		this.size = 0;
+		this.lastDoc = -1;
+		this.idfGeneration = -1;
+	}
+
+	/**
+	 * @return the number of postings, that is, of documents containing the term
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Append a posting. doc must be greater than every document already in the list.
+	 */
+	void add(int doc, int tf) {
+		if (doc <= this.lastDoc) throw new IllegalArgumentException("postings must be added in order: " + doc);
+
+		int gap = doc - this.lastDoc;
+		int needed = this.length + vIntLength(gap) + vIntLength(tf);
+		if (needed > this.bytes.length) {
+			// exact for the first posting, since most terms never get a second one
+			this.bytes = Arrays.copyOf(this.bytes, Math.max(needed, this.length + (this.length >> 1)));
+		}
+		writeVInt(gap);
+		writeVInt(tf);
+		this.lastDoc = doc;
+		this.size++;
+		this.maxTf = Math.max(this.maxTf, tf);
+		this.tailMaxTf = Math.max(this.tailMaxTf, tf);
+
+		if (this.size % SKIP_INTERVAL == 0) endBlock(this.size / SKIP_INTERVAL - 1, doc, this.length);
+	}
+
+	/**
+	 * Record the skip entry of a block, which ends with doc, just before offset.
+	 */
+	void endBlock(int block, int doc, int offset) {
+		ensureSkipCapacity(block + 1);
+		this.skipDocs[block] = doc;
+		this.skipOffsets[block] = offset;
+		this.skipMaxTfs[block] = this.tailMaxTf;
+		this.tailMaxTf = 0;
+	}
+
+	void ensureSkipCapacity(int blocks) {
+		if (this.skipDocs == null) {
+			int capacity = Math.max(4, blocks);
+			this.skipDocs = new int[capacity];
+			this.skipOffsets = new int[capacity];
+			this.skipMaxTfs = new int[capacity];
+		} else if (blocks > this.skipDocs.length) {
+			int capacity = Math.max(blocks, this.skipDocs.length * 2);
+			this.skipDocs = Arrays.copyOf(this.skipDocs, capacity);
+			this.skipOffsets = Arrays.copyOf(this.skipOffsets, capacity);
+			this.skipMaxTfs = Arrays.copyOf(this.skipMaxTfs, capacity);
+		}
+	}
+
+	/**
+	 * Append every posting of other. Its documents must all be greater than every
+	 * document already in this list.
+	 *
+	 * The postings are copied byte for byte: only other's first gap, which becomes
+	 * relative to this list's last document, is re-encoded. When this list ends on a
+	 * block boundary, other's skip entries are copied too, with their offsets shifted;
+	 * otherwise the blocks fall elsewhere in other, and the copied postings are decoded
+	 * once (but not re-encoded) to find them.
+	 */
+	void addAll(PostingList other) {
+		if (other.size == 0) return;
+
+		int firstDoc = other.iterator().nextDoc();
+		if (firstDoc <= this.lastDoc) throw new IllegalArgumentException("postings must be added in order: " + firstDoc);
+		int rest = vIntLength(firstDoc + 1); // other's first gap, counted from -1, ends there
+
+		int gap = firstDoc - this.lastDoc;
+		int needed = this.length + vIntLength(gap) + other.length - rest;
+		if (needed > this.bytes.length) {
+			this.bytes = Arrays.copyOf(this.bytes, Math.max(needed, this.length + (this.length >> 1)));
+		}
+		int start = this.length;
+		int startSize = this.size;
+		int startLastDoc = this.lastDoc;
+		writeVInt(gap);
+		int shift = this.length - rest; // from offsets in other to offsets in this list
+		System.arraycopy(other.bytes, rest, this.bytes, this.length, other.length - rest);
+		this.length = needed;
+		this.size += other.size;
+		this.lastDoc = other.lastDoc;
+		this.maxTf = Math.max(this.maxTf, other.maxTf);
+
+		if (startSize % SKIP_INTERVAL == 0) {
+			int base = startSize / SKIP_INTERVAL;
+			int blocks = other.skipCount();
+			if (blocks > 0) {
+				ensureSkipCapacity(base + blocks);
+				System.arraycopy(other.skipDocs, 0, this.skipDocs, base, blocks);
+				System.arraycopy(other.skipMaxTfs, 0, this.skipMaxTfs, base, blocks);
+				for (int i = 0; i < blocks; i++) {
+					this.skipOffsets[base + i] = other.skipOffsets[i] + shift;
+				}
+			}
+			this.tailMaxTf = other.tailMaxTf;
+			return;
+		}
+
+		PostingIterator it = new PostingIterator(this);
+		it.offset = start;
+		it.index = startSize;
+		it.doc = startLastDoc;
+		while (it.nextDoc() != PostingIterator.NO_MORE_DOCS) {
+			this.tailMaxTf = Math.max(this.tailMaxTf, it.tf());
+			if (it.index % SKIP_INTERVAL == 0) endBlock(it.index / SKIP_INTERVAL - 1, it.doc(), it.offset);
+		}
+	}
+
+	/**
+	 * @return a new list of the postings of this one for documents at or after from
+	 */
+	PostingList tail(int from) {
+		PostingList res = new PostingList();
+		PostingIterator it = iterator();
+		for (int doc = it.advance(from); doc != PostingIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+			res.add(doc, it.tf());
+		}
+		return res;
+	}
+
+	/**
+	 * Write the list as it is held in memory, compressed postings and skip entries
+	 * included, so that read() needs no decoding.
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeInt(this.size);
+		out.writeInt(this.lastDoc);
+		out.writeInt(this.maxTf);
+		out.writeInt(this.tailMaxTf);
+		out.writeInt(this.length);
+		out.write(this.bytes, 0, this.length);
+		for (int i = 0; i < skipCount(); i++) {
+			out.writeInt(this.skipDocs[i]);
+			out.writeInt(this.skipOffsets[i]);
+			out.writeInt(this.skipMaxTfs[i]);
+		}
+	}
+
+	/**
+	 * @return the number of bytes write() writes
+	 */
+	long writtenSize() {
+		return 20L + this.length + 12L * skipCount();
+	}
+
+	/**
+	 * Read a list written by write(), from the position of in onwards.
+	 */
+	static PostingList read(ByteBuffer in) {
+		PostingList res = new PostingList();
+		res.size = in.getInt();
+		res.lastDoc = in.getInt();
+		res.maxTf = in.getInt();
+		res.tailMaxTf = in.getInt();
+		res.length = in.getInt();
+		res.bytes = new byte[res.length];
+		in.get(res.bytes);
+		int blocks = res.skipCount();
+		if (blocks > 0) {
+			res.skipDocs = new int[blocks];
+			res.skipOffsets = new int[blocks];
+			res.skipMaxTfs = new int[blocks];
+			for (int i = 0; i < blocks; i++) {
+				res.skipDocs[i] = in.getInt();
+				res.skipOffsets[i] = in.getInt();
+				res.skipMaxTfs[i] = in.getInt();
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @return the largest term frequency in the list, 0 if it is empty
+	 */
+	int maxTf() {
+		return this.maxTf;
+	}
+
+	static int vIntLength(int v) {
+		int res = 1;
+		while ((v & ~0x7f) != 0) {
+			v >>>= 7;
+			res++;
+		}
+		return res;
+	}
+
+	void writeVInt(int v) {
+		while ((v & ~0x7f) != 0) {
+			this.bytes[this.length++] = (byte) ((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		this.bytes[this.length++] = (byte) v;
+	}
+
+	/**
+	 * @return the number of complete skip blocks
+	 */
+	int skipCount() {
+		return this.size / SKIP_INTERVAL;
+	}
+
+	/**
+	 * @return the frequency of the term in doc, or 0 if doc is not in the list
+	 */
+	int frequency(int doc) {
+		PostingIterator it = iterator();
+		return it.advance(doc) == doc ? it.tf() : 0;
+	}
+
+	PostingIterator iterator() {
+		return new PostingIterator(this);
+	}
+
+	/**
+	 * Decodes a PostingList one posting at a time. Like a Lucene DocIdSetIterator,
+	 * it starts before the first posting; nextDoc() and advance() move it
+	 * forward and return the current document, or NO_MORE_DOCS at the end.
+	 */
+	static final class PostingIterator {
+
+		static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+		final PostingList list;
+		int offset;
+		int index; // postings decoded so far
+		int doc;
+		int tf;
+
+		PostingIterator(PostingList list) {
+			this.list = list;
+			this.offset = 0;
+			this.index = 0;
+			this.doc = -1;
+			this.tf = 0;
+		}
+
+		int doc() {
+			return this.doc;
+		}
+
+		int tf() {
+			return this.tf;
+		}
+
+		/**
+		 * @return the largest tf in the block holding the current posting
+		 */
+		int blockMaxTf() {
+			int block = (this.index - 1) / SKIP_INTERVAL;
+			return block < this.list.skipCount() ? this.list.skipMaxTfs[block] : this.list.tailMaxTf;
+		}
+
+		/**
+		 * @return the last document of the block holding the current posting
+		 */
+		int blockLastDoc() {
+			int block = (this.index - 1) / SKIP_INTERVAL;
+			return block < this.list.skipCount() ? this.list.skipDocs[block] : this.list.lastDoc;
+		}
+
+		int readVInt() {
+			byte[] bytes = this.list.bytes;
+			int b = bytes[this.offset++];
+			int v = b & 0x7f;
+			for (int shift = 7; b < 0; shift += 7) {
+				b = bytes[this.offset++];
+				v |= (b & 0x7f) << shift;
+			}
+			return v;
+		}
+
+		int nextDoc() {
+			if (this.index >= this.list.size) return this.doc = NO_MORE_DOCS;
+
+			// doc is -1 before the first posting, and the first gap is counted from -1 too
+			this.doc += readVInt();
+			this.tf = readVInt();
+			this.index++;
+			return this.doc;
+		}
+
+		/**
+		 * Move to the first posting whose document is at least target (never
+		 * backwards), skipping whole blocks where possible. The block to skip to
+		 * is found by galloping over the skip entries (1, 2, 4, ... blocks ahead)
+		 * and then binary search, so a far-away target costs O(log distance).
+		 */
+		int advance(int target) {
+			if (this.doc >= target) return this.doc;
+
+			int[] skipDocs = this.list.skipDocs;
+			int block = this.index / SKIP_INTERVAL; // the block holding the next posting
+			int skipCount = this.list.skipCount();
+			if (block < skipCount && skipDocs[block] < target) {
+				// find lo < hi with skipDocs[lo] < target and skipDocs[hi] >= target (or hi == skipCount)
+				int lo = block;
+				int step = 1;
+				int hi = lo + step;
+				while (hi < skipCount && skipDocs[hi] < target) {
+					lo = hi;
+					step <<= 1;
+					hi = lo + step;
+				}
+				hi = Math.min(hi, skipCount);
+				while (hi - lo > 1) {
+					int mid = (lo + hi) >>> 1;
+					if (skipDocs[mid] < target) {
+						lo = mid;
+					} else {
+						hi = mid;
+					}
+				}
+				block = lo;
+
+				this.doc = skipDocs[block];
+				this.offset = this.list.skipOffsets[block];
+				this.index = (block + 1) * SKIP_INTERVAL;
+			}
+
+			while (this.doc < target) nextDoc();
+			return this.doc;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Boolean query over the terms of a SearchEngine, for SearchEngine.search().
+ *
+ * Queries are built from terms with and(), or() and not(), for example
+ *
+ *     Query.and(Query.term("tomato"), Query.or(Query.term("pizza"), Query.term("pasta")),
+ *             Query.not(Query.term("meat")))
+ *
+ * matches the documents containing "tomato", at least one of "pizza" and "pasta", and not
+ * "meat". A not() clause excludes documents and can only appear inside an and() that also
+ * has at least one other clause. Like lookups, terms are case-insensitive.
+ *
+ * A matching document is scored by the sum of the tf-idf of the terms it matches (terms
+ * under a not() never match).
+ */
+public abstract class Query {
+
+	Query() {
+	}
+
+	public static Query term(String term) {
+		return new Term(term.toLowerCase());
+	}
+
+	public static Query and(Query... clauses) {
+		return new And(clauses);
+	}
+
+	public static Query or(Query... clauses) {
+		if (clauses.length == 0) throw new IllegalArgumentException("or() needs at least one clause");
+		for (Query var : clauses) {
+			if (var instanceof Not) throw new IllegalArgumentException("not() can only be a clause of and()");
+		}
+		return new Or(clauses);
+	}
+
+	public static Query not(Query clause) {
+		return new Not(clause);
+	}
+
+	/**
+	 * Return an iterator over the documents of engine matching this query.
+	 *
+	 * @throws IllegalArgumentException if the query is a bare not()
+	 */
+	abstract DocIterator iterator(SearchEngine engine);
+
+	static final class Term extends Query {
+		final String term;
+
+		Term(String term) {
+			this.term = term;
+		}
+
+		@Override
+		DocIterator iterator(SearchEngine engine) {
+			PostingList list = engine.postingList(this.term);
+			if (list == null) return new DocIterator.EmptyIterator();
+			return new DocIterator.TermIterator(list, engine.inverseDocumentFrequency(this.term), engine.deleted);
+		}
+
+		@Override
+		public String toString() {
+			return this.term;
+		}
+	}
+
+	static final class And extends Query {
+		final Query[] clauses;
+
+		And(Query[] clauses) {
+			boolean positive = false;
+			for (Query var : clauses) {
+				positive |= !(var instanceof Not);
+			}
+			if (!positive) throw new IllegalArgumentException("and() needs at least one clause that is not a not()");
+			this.clauses = clauses.clone();
+		}
+
+		@Override
+		DocIterator iterator(SearchEngine engine) {
+			List<DocIterator> required = new ArrayList<>();
+			List<DocIterator> excluded = new ArrayList<>();
+			for (Query var : this.clauses) {
+				if (var instanceof Not) {
+					excluded.add(((Not) var).clause.iterator(engine));
+				} else {
+					required.add(var.iterator(engine));
+				}
+			}
+			return new DocIterator.ConjunctionIterator(required.toArray(new DocIterator[0]),
+					excluded.toArray(new DocIterator[0]));
+		}
+
+		@Override
+		public String toString() {
+			return join("AND", this.clauses);
+		}
+	}
+
+	static final class Or extends Query {
+		final Query[] clauses;
+
+		Or(Query[] clauses) {
+			this.clauses = clauses.clone();
+		}
+
+		@Override
+		DocIterator iterator(SearchEngine engine) {
+			DocIterator[] iterators = new DocIterator[this.clauses.length];
+			for (int i = 0; i < iterators.length; i++) {
+				iterators[i] = this.clauses[i].iterator(engine);
+			}
+			return iterators.length == 1 ? iterators[0] : new DocIterator.DisjunctionIterator(iterators);
+		}
+
+		@Override
+		public String toString() {
+			return join("OR", this.clauses);
+		}
+	}
+
+	static final class Not extends Query {
+		final Query clause;
+
+		Not(Query clause) {
+			this.clause = clause;
+		}
+
+		@Override
+		DocIterator iterator(SearchEngine engine) {
+			throw new IllegalArgumentException("not() can only be a clause of and()");
+		}
+
+		@Override
+		public String toString() {
+			return "NOT " + this.clause;
+		}
+	}
+
+	static String join(String operator, Query[] clauses) {
+		StringBuilder sb = new StringBuilder("(");
+		for (int i = 0; i < clauses.length; i++) {
+			if (i > 0) sb.append(' ').append(operator).append(' ');
+			sb.append(clauses[i]);
+		}
+		return sb.append(')').toString();
+	}
+}
@@ -0,0 +1,30 @@
+package index;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Scanner;
+import java.util.function.Consumer;
+
+/**
+ * Splits text on runs of non-word characters (the regular expression \W+) with a
+ * Scanner, and lowercases each term with String.toLowerCase().
+ *
+ * This is how SearchEngine originally tokenized documents; AsciiTokenizer gives the
+ * same terms much faster.
+ */
+public class ScannerTokenizer implements Tokenizer {
+
+	@Override
+	public void tokenize(Reader reader, Consumer<? super String> terms) throws IOException {
+		Scanner readString = new Scanner(reader);
+		readString.useDelimiter("\\W+");
+
+		while (readString.hasNext()) {
+			terms.accept(readString.next().toLowerCase());
+		}
+
+		//Scanner swallows the reader's exceptions
+		IOException e = readString.ioException();
+		if (e != null) throw e;
+	}
+}
@@ -4,58 +4,245 @@
 
 package index;
 
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.Reader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
-import comparators.TfIdfComparator;
 import documents.DocumentId;
+import index.PostingList.PostingIterator;
 
 /**
  * A simplified document indexer and search engine.
  * 
- * Documents are added to the engine one-by-one, and uniquely identified by a DocumentId.
+ * Documents are added to the engine one-by-one, or in batches indexed in parallel, and uniquely
+ * identified by a DocumentId.
  *
  * Documents are internally represented as "terms", which are lowercased versions of each word 
- * in the document. 
+ * in the document, as split by a Tokenizer. 
  * 
  * Queries for terms are also made on the lowercased version of the term. Terms are 
  * therefore case-insensitive.
  * 
  * Lookups for documents can be done by term, and the most relevant document(s) to a specific term 
- * (as computed by tf-idf) can also be retrieved.
+ * (as computed by tf-idf) can also be retrieved. Multi-term Boolean queries are answered by
+ * search() (see Query).
  *
  * See:
  * - <https://en.wikipedia.org/wiki/Inverted_index>
  * - <https://en.wikipedia.org/wiki/Search_engine_(computing)> 
  * - <https://en.wikipedia.org/wiki/Tf%E2%80%93idf>
  * 
+ * Internally, each document is given an ordinal (0, 1, 2, ...) in the order it is added,
+ * and the index maps every term to a PostingList: the ordinals of the documents containing
+ * the term, each with the term frequency, delta-encoded and compressed. Term frequencies
+ * are read from the posting lists too, so no per-document table of terms is kept.
+ * 
+ * IDF values are cached with each term's posting list until the next document is added or
+ * removed, which changes them all. Each one records the generation it was computed in, and
+ * adding or removing a document starts a new generation, so they all go stale in constant
+ * time.
+ * 
+ * Removing a document only marks its ordinal in a tombstone BitSet, which lookups and queries
+ * skip, and appends it to a log of deletions. The number of live documents containing a term
+ * is kept with its posting list, and brought up to date by checking the deletions logged
+ * since it last was against the list, or the list's postings against the tombstones if the
+ * list is the shorter. Postings of removed documents stay in the lists until segments holding
+ * them are merged, and the next flush then drops their ordinals from the log. An engine kept
+ * in memory only has no segments to merge: once more than MAX_REMOVED_SHARE of its documents
+ * have been removed, it compacts instead, renumbering the live documents and rewriting the
+ * posting lists without the removed ones. That costs time in proportion to the index, but
+ * only after as many removals as there are live documents left.
+ * 
+ * An engine opened on a directory keeps its index there too: flush() writes the documents
+ * added since the last flush as an immutable DiskSegment, and a new engine opened on the
+ * directory later maps the segments rather than re-indexing the documents. Posting lists
+ * are then read from the segments as terms are looked up, and kept in memory until the next
+ * flush. A background thread merges runs of small segments into larger ones, so that a
+ * lookup does not have to visit many of them.
+ * 
  * @author Marc Liberatore
  *
  */
-public class SearchEngine {
+public class SearchEngine implements Closeable {
+
+	//the number of segments at which the smallest run of that many adjacent segments is merged
+	static final int MERGE_FACTOR = 10;
+
+	static final String COMMIT = "segments";
+
+	//an engine kept in memory compacts once this share of its documents have been removed...
+	static final double MAX_REMOVED_SHARE = 0.5;
+	//...and at least this many, so that a small one is not compacted over and over
+	static final int MIN_COMPACT_REMOVALS = 64;
+
+	static final Comparator<DocumentId> BY_ID = (o1, o2) -> o1.id.compareTo(o2.id);
+
+	/**
+	 * A matching document with its score, ordered most relevant first: by descending
+	 * score, then by document id.
+	 */
+	static final class Hit implements Comparable<Hit> {
+		final DocumentId documentId;
+		final double score;
+
+		Hit(DocumentId documentId, double score) {
+			this.documentId = documentId;
+			this.score = score;
+		}
+
+		@Override
+		public int compareTo(Hit other) {
+			if (this.score != other.score) return this.score > other.score ? -1 : 1;
+			return BY_ID.compare(this.documentId, other.documentId);
+		}
+	}
+
+	Map<String, PostingList> postings;
+	Map<DocumentId, Integer> ordinals; // null until first needed, in an engine opened on a directory
+	List<DocumentId> documents; // by ordinal
+	long generation; // bumped whenever N or some M changes, which makes every cached IDF stale
+	Supplier<? extends Tokenizer> tokenizers;
+	Tokenizer tokenizer; // for addDocument()
 
-	Map<String, Set<DocumentId>> storage;
-	Map<DocumentId, Map<String, Integer>> docToTermsFrequency;
+	BitSet deleted; // the ordinals of removed documents
+	int[] deletions; // the same ordinals, in the order they were removed
+	int deletionCount;
+	int removedCount; // the number of removed documents, including those no longer logged
 
+	Path directory; // null if the index is kept in memory only
+	volatile List<DiskSegment> segments; // in ordinal order, replaced rather than modified
+	int flushed; // the number of documents in segments
+	final Object commitLock = new Object(); // guards segments, nextSegment, committedDeletes and the commit file
+	BitSet committedDeletes; // deleted as of the last commit, never modified
+	int nextSegment;
+	ExecutorService merger;
+	Future<?> lastMerge;
+	volatile IOException mergeFailure;
+	BitSet purged = new BitSet(); // removed ordinals whose postings merges have dropped, guarded by commitLock
+	long maxFileSize = DiskSegment.MAX_FILE_SIZE; // a merge may not write a file this large
+
+	/**
+	 * Creates an empty search engine that splits documents into terms with an AsciiTokenizer.
+	 */
 	public SearchEngine(){
-		this.storage = new HashMap<>();
-		this.docToTermsFrequency = new HashMap<>();
+		this(AsciiTokenizer::new);
+	}
+
+	/**
+	 * Creates an empty search engine that splits documents into terms with the tokenizers
+	 * supplied by tokenizers, one for each thread adding documents.
+	 * 
+	 * @param tokenizers
+	 */
+	public SearchEngine(Supplier<? extends Tokenizer> tokenizers){
+		this.postings = new HashMap<>();
+		this.ordinals = new HashMap<>();
+		this.documents = new DocumentList();
+		this.deleted = new BitSet();
+		this.deletions = new int[8];
+		this.committedDeletes = new BitSet();
+		this.tokenizers = tokenizers;
+		this.tokenizer = tokenizers.get();
+		this.segments = Collections.emptyList();
+	}
+
+	/**
+	 * Opens the search engine kept in directory, creating an empty one if there is none,
+	 * that splits documents into terms with an AsciiTokenizer.
+	 * 
+	 * @param directory
+	 * @throws IOException iff the directory or its segments cannot be read
+	 */
+	public SearchEngine(Path directory) throws IOException {
+		this(directory, AsciiTokenizer::new);
+	}
+
+	/**
+	 * Opens the search engine kept in directory, creating an empty one if there is none,
+	 * that splits documents into terms with the tokenizers supplied by tokenizers.
+	 * 
+	 * The segments listed in the directory's commit file are memory-mapped; only their
+	 * document ids and term dictionary indexes are read. Files of any other segments, left
+	 * over by a crash or a failed merge, are deleted.
+	 * 
+	 * @param directory
+	 * @param tokenizers
+	 * @throws IOException iff the directory or its segments cannot be read
+	 */
+	public SearchEngine(Path directory, Supplier<? extends Tokenizer> tokenizers) throws IOException {
+		this(tokenizers);
+		this.directory = Files.createDirectories(directory);
+
+		List<DiskSegment> segments = new ArrayList<>();
+		Set<String> live = new HashSet<>();
+		Path commit = directory.resolve(COMMIT);
+		if (Files.exists(commit)) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(commit)))) {
+				this.nextSegment = in.readInt();
+				for (int i = in.readInt(); i > 0; i--) {
+					String name = in.readUTF();
+					int base = in.readInt();
+					int count = in.readInt();
+					segments.add(DiskSegment.open(directory, name, base, count));
+					for (String extension : DiskSegment.EXTENSIONS) {
+						live.add(name + extension);
+					}
+				}
+				byte[] deleted = new byte[in.readInt()];
+				in.readFully(deleted);
+				this.committedDeletes = BitSet.valueOf(deleted);
+			}
+		}
+		this.deleted = (BitSet) this.committedDeletes.clone();
+		for (int i = this.deleted.nextSetBit(0); i >= 0; i = this.deleted.nextSetBit(i + 1)) {
+			logDeletion(i);
+		}
+
+		this.segments = Collections.unmodifiableList(segments);
+		this.flushed = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).base + segments.get(segments.size() - 1).count;
+		//ids are read from the segments as needed, so that opening stays fast
+		this.ordinals = null;
+
+		//only files the engine writes are deleted, whatever else is in the directory
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "{_*.doc,_*.pst,_*.tim," + COMMIT + ".tmp}")) {
+			for (Path file : files) {
+				if (!live.contains(file.getFileName().toString())) Files.delete(file);
+			}
+		}
 	}
 	
 	/**
 	 * Inserts a document into the search engine for later analysis and retrieval.
 	 * 
 	 * The document is uniquely identified by a documentId; attempts to re-insert the same 
-	 * document are ignored.
+	 * document are ignored. Use updateDocument() to replace its contents.
 	 * 
 	 * The document is supplied as a Reader; this method stores the document contents for 
 	 * later analysis and retrieval.
@@ -81,79 +268,674 @@ public class SearchEngine {
 		// 	tempTerm += temp;
 		
 
-		Scanner readString = new Scanner(reader);
-		readString.useDelimiter("\\W+");
+		if (ordinals().containsKey(documentId)) return;
 
-		while (readString.hasNext()){
-			String term = readString.next().toLowerCase();
-			//add the term and document ID to set for index lookup
-			Set<DocumentId> termSet = this.storage.getOrDefault(term, new HashSet<>());
-			termSet.add(documentId);
-			this.storage.put(term, termSet);
+		//count the terms first: each posting list gets one posting per document
+		index(documentId, Segment.countTerms(reader, this.tokenizer));
+	}
+
+	/**
+	 * Add a document that is not in the engine, given the counts of its terms.
+	 */
+	void index(DocumentId documentId, Map<String, Integer> termCounts) {
+		//N changes, and with it every IDF
+		this.generation++;
 
-			//add term frequency
-			if(!(this.docToTermsFrequency.containsKey(documentId))) 
-				this.docToTermsFrequency.put(documentId, new HashMap<>());
+		int ordinal = this.documents.size();
+		this.documents.add(documentId);
+		ordinals().put(documentId, ordinal);
 
-			int curCount = this.docToTermsFrequency.get(documentId).getOrDefault(term, 0);
-			curCount ++;
-			this.docToTermsFrequency.get(documentId).put(term, curCount);
+		for (Map.Entry<String, Integer> entry : termCounts.entrySet()) {
+			PostingList list = postingList(entry.getKey());
+			if (list == null) {
+				list = new PostingList();
+				this.postings.put(entry.getKey(), list);
+			}
+			list.add(ordinal, entry.getValue());
 		}
+	}
+	
+	/**
+	 * Removes a document from the search engine. Its DocumentId can be added again later.
+	 * 
+	 * The document's ordinal is marked deleted, which takes constant time, however large the
+	 * index: its postings are skipped from then on, and dropped when segments are merged or
+	 * the engine compacts.
+	 * 
+	 * @param documentId
+	 * @return true iff the document was in the engine
+	 */
+	public boolean removeDocument(DocumentId documentId) {
+		Integer ordinal = ordinals().remove(documentId);
+		if (ordinal == null) return false;
 
-		readString.close();
+		//N and some Ms change, and with them the IDFs
+		this.generation++;
+		this.deleted.set(ordinal);
+		logDeletion(ordinal);
+		if (this.directory == null && this.removedCount >= MIN_COMPACT_REMOVALS
+				&& this.removedCount > MAX_REMOVED_SHARE * this.documents.size()) {
+			compact();
+		}
+		return true;
+	}
 
+	/**
+	 * Renumber the live documents of an engine kept in memory, in the same order, and
+	 * rewrite every posting list without the removed ones, dropping terms left without
+	 * documents. Tombstones and the deletion log start over empty.
+	 */
+	void compact() {
+		int[] renumbered = new int[this.documents.size()];
+		//every document of an engine kept in memory is unflushed
+		List<DocumentId> all = ((DocumentList) this.documents).unflushed;
+		List<DocumentId> documents = new ArrayList<>(all.size() - this.removedCount);
+		Map<DocumentId, Integer> ordinals = new HashMap<>();
+		for (int i = 0; i < all.size(); i++) {
+			if (this.deleted.get(i)) continue;
+			renumbered[i] = documents.size();
+			ordinals.put(all.get(i), documents.size());
+			documents.add(all.get(i));
+		}
 
+		for (Iterator<Map.Entry<String, PostingList>> entries = this.postings.entrySet().iterator(); entries.hasNext();) {
+			Map.Entry<String, PostingList> entry = entries.next();
+			PostingList list = new PostingList();
+			PostingIterator it = entry.getValue().iterator();
+			while (it.nextDoc() != PostingIterator.NO_MORE_DOCS) {
+				if (!this.deleted.get(it.doc())) list.add(renumbered[it.doc()], it.tf());
+			}
+			if (list.size() == 0) {
+				entries.remove();
+			} else {
+				entry.setValue(list);
+			}
+		}
 
-		
+		all.clear();
+		all.addAll(documents);
+		this.ordinals = ordinals;
+		this.deleted = new BitSet();
+		this.deletions = new int[8];
+		this.deletionCount = 0;
+		this.removedCount = 0;
+	}
 
+	void logDeletion(int ordinal) {
+		if (this.deletionCount == this.deletions.length) {
+			this.deletions = Arrays.copyOf(this.deletions, this.deletionCount * 2);
+		}
+		this.deletions[this.deletionCount++] = ordinal;
+		this.removedCount++;
 	}
-	
+
+	/**
+	 * Drop the ordinals merges have purged from the deletion log, which would otherwise grow
+	 * with every removal. This moves entries, so no posting list in memory may have checked
+	 * the log yet.
+	 */
+	void trimDeletions() {
+		BitSet purged;
+		synchronized (this.commitLock) {
+			purged = this.purged;
+			this.purged = new BitSet();
+		}
+		if (purged.isEmpty()) return;
+		int n = 0;
+		for (int i = 0; i < this.deletionCount; i++) {
+			if (!purged.get(this.deletions[i])) this.deletions[n++] = this.deletions[i];
+		}
+		this.deletionCount = n;
+	}
+
+	/**
+	 * Replaces the contents of a document in the search engine, or inserts it if it is not
+	 * there, as if by removeDocument() and then addDocument().
+	 * 
+	 * The reader is read before the old contents are removed, so if it throws, the engine
+	 * is left unchanged.
+	 * 
+	 * @param documentId
+	 * @param reader
+	 * @throws IOException iff the reader throws an exception
+	 */
+	public void updateDocument(DocumentId documentId, Reader reader) throws IOException {
+		Map<String, Integer> termCounts = Segment.countTerms(reader, this.tokenizer);
+		removeDocument(documentId);
+		index(documentId, termCounts);
+	}
+
+	/**
+	 * Inserts a batch of documents into the search engine, as if by addDocument() for each
+	 * of them in the iteration order of documents, but tokenizing and indexing them on
+	 * Runtime.availableProcessors() threads.
+	 * 
+	 * @param documents the documents to add, by DocumentId
+	 * @throws IOException iff one of the readers throws an exception, in which case none of
+	 * the documents are added
+	 */
+	public void addDocuments(Map<DocumentId, ? extends Reader> documents) throws IOException {
+		addDocuments(documents, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Inserts a batch of documents into the search engine, as if by addDocument() for each
+	 * of them in the iteration order of documents, but tokenizing and indexing them on the
+	 * given number of threads.
+	 * 
+	 * The batch is split into runs of consecutive documents, each indexed into its own
+	 * Segment by a worker thread. The segments are then merged into the engine in order,
+	 * which only appends to the posting lists, since every segment's ordinals follow
+	 * those of the segment before it.
+	 * 
+	 * @param documents the documents to add, by DocumentId
+	 * @param threads the number of worker threads
+	 * @throws IOException iff one of the readers throws an exception, in which case none of
+	 * the documents are added
+	 * @throws IllegalArgumentException if threads is not positive
+	 */
+	public void addDocuments(Map<DocumentId, ? extends Reader> documents, int threads) throws IOException {
+		if (threads <= 0) throw new IllegalArgumentException("threads must be positive: " + threads);
+
+		List<Map.Entry<DocumentId, ? extends Reader>> batch = new ArrayList<>();
+		for (Map.Entry<DocumentId, ? extends Reader> entry : documents.entrySet()) {
+			if (!ordinals().containsKey(entry.getKey())) batch.add(entry);
+		}
+		if (batch.isEmpty()) return;
+
+		//a few runs per thread, so that a thread given long documents does not hold up the rest
+		int runs = Math.min(batch.size(), threads * 4);
+		List<Callable<Segment>> tasks = new ArrayList<>(runs);
+		int base = this.documents.size();
+		for (int i = 0; i < runs; i++) {
+			List<Map.Entry<DocumentId, ? extends Reader>> run =
+					batch.subList(batch.size() * i / runs, batch.size() * (i + 1) / runs);
+			int runBase = base + batch.size() * i / runs;
+			tasks.add(() -> {
+				Segment segment = new Segment(runBase, this.tokenizers.get());
+				for (Map.Entry<DocumentId, ? extends Reader> entry : run) {
+					segment.addDocument(entry.getKey(), entry.getValue());
+				}
+				return segment;
+			});
+		}
+
+		List<Segment> segments = new ArrayList<>(runs);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, runs));
+		try {
+			for (Future<Segment> future : executor.invokeAll(tasks)) {
+				segments.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while adding documents");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IllegalStateException(cause);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		for (Segment segment : segments) {
+			merge(segment);
+		}
+	}
+
+	/**
+	 * Append a segment to the index. Its base must be the number of documents in the engine.
+	 */
+	void merge(Segment segment) {
+		//N changes, and with it every IDF
+		this.generation++;
+
+		for (DocumentId documentId : segment.documents) {
+			ordinals().put(documentId, this.documents.size());
+			this.documents.add(documentId);
+		}
+
+		for (Map.Entry<String, PostingList> entry : segment.postings.entrySet()) {
+			PostingList list = postingList(entry.getKey());
+			if (list == null) {
+				//a term new to the engine takes the segment's list as it is
+				this.postings.put(entry.getKey(), entry.getValue());
+			} else {
+				list.addAll(entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * The documents of the engine by ordinal: those flushed are read from the segments as
+	 * they are needed, the others are held in memory.
+	 */
+	class DocumentList extends AbstractList<DocumentId> {
+		final List<DocumentId> unflushed = new ArrayList<>();
+
+		@Override
+		public DocumentId get(int index) {
+			if (index >= flushed) return this.unflushed.get(index - flushed);
+			if (index < 0) throw new IndexOutOfBoundsException(index);
+
+			List<DiskSegment> segments = SearchEngine.this.segments;
+			int lo = 0;
+			int hi = segments.size() - 1;
+			while (lo < hi) {
+				int mid = (lo + hi + 1) >>> 1;
+				if (segments.get(mid).base <= index) {
+					lo = mid;
+				} else {
+					hi = mid - 1;
+				}
+			}
+			return segments.get(lo).document(index - segments.get(lo).base);
+		}
+
+		@Override
+		public int size() {
+			return flushed + this.unflushed.size();
+		}
+
+		@Override
+		public boolean add(DocumentId documentId) {
+			return this.unflushed.add(documentId);
+		}
+	}
+
+	/**
+	 * @return the map from DocumentIds to ordinals, reading the ids of the documents in the
+	 * segments the first time it is needed
+	 */
+	Map<DocumentId, Integer> ordinals() {
+		if (this.ordinals == null) {
+			this.ordinals = new HashMap<>();
+			for (DiskSegment segment : this.segments) {
+				List<DocumentId> ids = segment.documents();
+				for (int i = 0; i < ids.size(); i++) {
+					if (!this.deleted.get(segment.base + i)) this.ordinals.put(ids.get(i), segment.base + i);
+				}
+			}
+		}
+		return this.ordinals;
+	}
+
+	/**
+	 * Returns the posting list of a (lowercased) term, or null if no document contains it.
+	 * 
+	 * A term not in memory is read from the segments, and kept until the next flush().
+	 */
+	PostingList postingList(String term) {
+		PostingList res = this.postings.get(term);
+		List<DiskSegment> segments = this.segments;
+		if (res != null || segments.isEmpty()) return res;
+
+		for (DiskSegment segment : segments) {
+			PostingList list = segment.postings(term);
+			if (list == null) continue;
+			if (res == null) {
+				res = list;
+			} else {
+				res.addAll(list);
+			}
+		}
+		if (res != null) this.postings.put(term, res);
+		return res;
+	}
+
+	/**
+	 * @return the number of documents in list that have not been removed
+	 */
+	int documentFrequency(PostingList list) {
+		if (this.deletionCount - list.deletionsChecked > list.size()) {
+			//fewer postings than deletions to check, as for a list just read from the segments
+			int deleted = 0;
+			PostingIterator it = list.iterator();
+			while (it.nextDoc() != PostingIterator.NO_MORE_DOCS) {
+				if (this.deleted.get(it.doc())) deleted++;
+			}
+			list.deletedPostings = deleted;
+			list.deletionsChecked = this.deletionCount;
+		}
+		for (; list.deletionsChecked < this.deletionCount; list.deletionsChecked++) {
+			if (list.frequency(this.deletions[list.deletionsChecked]) > 0) list.deletedPostings++;
+		}
+		return list.size() - list.deletedPostings;
+	}
+
+	/**
+	 * Writes the documents added since the last flush to the engine's directory, as a new
+	 * segment, and drops the posting lists held in memory. Documents removed since the last
+	 * flush are recorded too.
+	 * 
+	 * Once the segment is written, the directory's commit file is replaced with one that lists
+	 * it, so a crash leaves either the old index or the new one. A background merge is then
+	 * started if there are MERGE_FACTOR segments or more.
+	 * 
+	 * @throws IOException iff the segment cannot be written, or a background merge has failed
+	 * @throws IllegalStateException if the engine was not opened on a directory
+	 */
+	public void flush() throws IOException {
+		if (this.directory == null) throw new IllegalStateException("the engine was not opened on a directory");
+		checkMergeFailure();
+
+		int n = this.documents.size();
+		if (n == this.flushed) {
+			if (!this.deleted.equals(this.committedDeletes)) {
+				synchronized (this.commitLock) {
+					this.committedDeletes = (BitSet) this.deleted.clone();
+					commit(this.segments);
+				}
+			}
+			return;
+		}
+
+		List<String> terms = new ArrayList<>();
+		for (Map.Entry<String, PostingList> entry : this.postings.entrySet()) {
+			if (entry.getValue().lastDoc >= this.flushed) terms.add(entry.getKey());
+		}
+		Collections.sort(terms);
+
+		String name = newSegmentName();
+		DiskSegment segment;
+		try (DiskSegment.Writer writer = new DiskSegment.Writer(this.directory, name)) {
+			for (String term : terms) {
+				PostingList list = postingList(term);
+				//lists read from the segments also hold documents that are there already
+				writer.add(term, list.iterator().nextDoc() >= this.flushed ? list : list.tail(this.flushed));
+			}
+			segment = writer.finish(this.flushed, ((DocumentList) this.documents).unflushed);
+		} catch (IOException | RuntimeException e) {
+			DiskSegment.delete(this.directory, name);
+			throw e;
+		}
+
+		synchronized (this.commitLock) {
+			List<DiskSegment> segments = new ArrayList<>(this.segments);
+			segments.add(segment);
+			this.committedDeletes = (BitSet) this.deleted.clone();
+			commit(segments);
+		}
+		this.flushed = n;
+		((DocumentList) this.documents).unflushed.clear();
+		this.postings.clear();
+		trimDeletions();
+
+		if (this.segments.size() >= MERGE_FACTOR) {
+			if (this.merger == null) {
+				this.merger = Executors.newSingleThreadExecutor(r -> {
+					Thread thread = new Thread(r, "SearchEngine merger");
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+			this.lastMerge = this.merger.submit(this::mergeSegments);
+		}
+	}
+
+	String newSegmentName() {
+		synchronized (this.commitLock) {
+			return "_" + this.nextSegment++;
+		}
+	}
+
+	/**
+	 * Replace the commit file with one listing segments and committedDeletes, and make the
+	 * segments the engine's. The caller holds commitLock.
+	 */
+	void commit(List<DiskSegment> segments) throws IOException {
+		Path tmp = this.directory.resolve(COMMIT + ".tmp");
+		DiskSegment.writeFile(tmp, out -> {
+			out.writeInt(this.nextSegment);
+			out.writeInt(segments.size());
+			for (DiskSegment var : segments) {
+				out.writeUTF(var.name);
+				out.writeInt(var.base);
+				out.writeInt(var.count);
+			}
+			byte[] deleted = this.committedDeletes.toByteArray();
+			out.writeInt(deleted.length);
+			out.write(deleted);
+		});
+		//the new segment files' entries, then the rename, have to be on disk before anything
+		//relies on them, such as a merge deleting the segments it replaced
+		DiskSegment.syncDirectory(this.directory);
+		Files.move(tmp, this.directory.resolve(COMMIT), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		DiskSegment.syncDirectory(this.directory);
+		this.segments = Collections.unmodifiableList(segments);
+	}
+
+	/**
+	 * Merge the run of MERGE_FACTOR adjacent segments with the fewest documents, as long as
+	 * there are that many segments, dropping the postings of documents removed as of the last
+	 * commit. Runs whose merged files could reach maxFileSize are left alone. Runs on the
+	 * merger thread, while the engine is used: the segments merged are immutable, and a
+	 * merged segment holds the same postings of live documents as its run, so only the list
+	 * of segments changes, at once.
+	 * 
+	 * Whatever goes wrong is kept in mergeFailure, which stops merging and fails the next
+	 * flush().
+	 */
+	void mergeSegments() {
+		while (this.mergeFailure == null) {
+			List<DiskSegment> segments = this.segments;
+			if (segments.size() < MERGE_FACTOR) return;
+
+			int start = -1;
+			long fewest = Long.MAX_VALUE;
+			for (int i = 0; i + MERGE_FACTOR <= segments.size(); i++) {
+				if (!DiskSegment.canMerge(segments.subList(i, i + MERGE_FACTOR), this.maxFileSize)) continue;
+				long count = 0;
+				for (int j = i; j < i + MERGE_FACTOR; j++) {
+					count += segments.get(j).count;
+				}
+				if (count < fewest) {
+					fewest = count;
+					start = i;
+				}
+			}
+			if (start < 0) return;
+			List<DiskSegment> run = segments.subList(start, start + MERGE_FACTOR);
+
+			BitSet deleted;
+			synchronized (this.commitLock) {
+				deleted = this.committedDeletes;
+			}
+
+			String name = newSegmentName();
+			try {
+				try {
+					DiskSegment merged = DiskSegment.merge(this.directory, name, run, deleted);
+					synchronized (this.commitLock) {
+						//flush() may have added segments since, but only after the run
+						List<DiskSegment> current = new ArrayList<>(this.segments);
+						current.subList(start, start + MERGE_FACTOR).clear();
+						current.add(start, merged);
+						commit(current);
+						for (int i = deleted.nextSetBit(merged.base); i >= 0 && i < merged.base + merged.count; i = deleted.nextSetBit(i + 1)) {
+							this.purged.set(i);
+						}
+					}
+				} catch (Throwable e) {
+					DiskSegment.delete(this.directory, name);
+					throw e;
+				}
+				for (DiskSegment var : run) {
+					//mapped files can be deleted on POSIX systems; elsewhere the next open does it
+					try {
+						DiskSegment.delete(this.directory, var.name);
+					} catch (IOException e) {
+						// ignored
+					}
+				}
+			} catch (Throwable e) {
+				this.mergeFailure = e instanceof IOException ? (IOException) e : new IOException(e);
+			}
+		}
+	}
+
+	void checkMergeFailure() throws IOException {
+		IOException e = this.mergeFailure;
+		if (e != null) throw new IOException("background merge failed", e);
+	}
+
+	/**
+	 * Waits for the background merges started so far to finish.
+	 * 
+	 * @throws IOException iff one of them failed
+	 */
+	void waitForMerges() throws IOException {
+		if (this.lastMerge != null) {
+			try {
+				this.lastMerge.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while waiting for merges");
+			} catch (ExecutionException e) {
+				//mergeSegments() keeps its failures, so this is only for the unexpected
+				throw new IOException("background merge failed", e.getCause());
+			}
+		}
+		checkMergeFailure();
+	}
+
+	/**
+	 * Waits for background merges to finish and stops the merge thread. Documents added
+	 * since the last flush() are not written; the engine can still be searched afterwards.
+	 * 
+	 * @throws IOException iff a background merge failed
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			waitForMerges();
+		} finally {
+			if (this.merger != null) this.merger.shutdown();
+			this.merger = null;
+		}
+	}
+
 	/**
 	 * Returns the set of DocumentIds contained within the search engine that contain a given term.
 	 * 
+	 * The set is a read-only view of the term's posting list, decoded as it is iterated.
+	 * 
 	 * @param term
 	 * @return the set of DocumentIds that contain a given term
 	 */
 	public Set<DocumentId> indexLookup(String term) {
 		term = term.toLowerCase();
-		return this.storage.getOrDefault(term, new HashSet<>());
+		if (postingList(term) == null) return Collections.emptySet();
+		return new PostingSet(term);
+	}
+
+	/**
+	 * A Set view of the documents containing a term. The term's posting list is looked up
+	 * on every call rather than kept: flush() drops lists from memory, and a list kept past
+	 * it would go stale once the deletion log it has checked is trimmed. compact() replaces
+	 * lists altogether.
+	 */
+	class PostingSet extends AbstractSet<DocumentId> {
+		final String term;
+
+		PostingSet(String term) {
+			this.term = term;
+		}
+
+		@Override
+		public int size() {
+			PostingList list = postingList(this.term);
+			return list == null ? 0 : documentFrequency(list);
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			Integer ordinal = ordinals().get(o);
+			PostingList list = postingList(this.term);
+			return ordinal != null && list != null && list.frequency(ordinal) > 0;
+		}
+
+		@Override
+		public Iterator<DocumentId> iterator() {
+			PostingList list = postingList(this.term);
+			PostingList.PostingIterator it = (list == null ? new PostingList() : list).iterator();
+
+			return new Iterator<DocumentId>() {
+				int next = nextLive();
+
+				int nextLive() {
+					int doc = it.nextDoc();
+					while (doc != PostingList.PostingIterator.NO_MORE_DOCS && deleted.get(doc)) doc = it.nextDoc();
+					return doc;
+				}
+
+				@Override
+				public boolean hasNext() {
+					return this.next != PostingList.PostingIterator.NO_MORE_DOCS;
+				}
+
+				@Override
+				public DocumentId next() {
+					if (!hasNext()) throw new NoSuchElementException();
+
+					DocumentId res = documents.get(this.next);
+					this.next = nextLive();
+					return res;
+				}
+			};
+		}
 	}
 	
 	/**
 	 * Returns the term frequency of a term in a particular document.
 	 * 
-	 * The term frequency is number of times the term appears in a document.
+	 * The term frequency is number of times the term appears in a document. A document
+	 * without any terms has still been added, and all of its term frequencies are 0.
 	 * 
 	 * See 
 	 * @param documentId
 	 * @param term
 	 * @return the term frequency of a term in a particular document
-	 * @throws IllegalArgumentException if the documentId has not been added to the engine
+	 * @throws IllegalArgumentException if the documentId has not been added to the engine, or
+	 * has been removed
 	 */
 	public int termFrequency(DocumentId documentId, String term) throws IllegalArgumentException {
-		int res;
+		Integer ordinal = ordinals().get(documentId);
 
-		if (this.docToTermsFrequency.get(documentId) == null) throw new IllegalArgumentException();
+		if (ordinal == null) throw new IllegalArgumentException();
 
-		res = this.docToTermsFrequency.get(documentId).getOrDefault(term, 0);
+		PostingList list = postingList(term.toLowerCase());
 
-		return res;
+		return list == null ? 0 : list.frequency(ordinal);
 	}
 	
 	/**
 	 * Returns the inverse document frequency of a term across all documents in the index.
 	 * 
 	 * For our purposes, IDF is defined as log ((1 + N) / (1 + M)) where 
-	 * N is the number of documents in total, and M
-	 * is the number of documents where the term appears.
+	 * N is the number of documents in total, including documents without any terms, and M
+	 * is the number of documents where the term appears, not counting removed documents.
 	 * 
 	 * @param term
 	 * @return the inverse document frequency of term 
 	 */
 	public double inverseDocumentFrequency(String term) {
-		int N = this.docToTermsFrequency.size();
-		int M = this.indexLookup(term).size();
+		term = term.toLowerCase();
+
+		PostingList list = postingList(term);
+		if (list != null && list.idfGeneration == this.generation) return list.idf;
+
+		int N = this.documents.size() - this.removedCount;
+		int M = list == null ? 0 : documentFrequency(list);
 		double res = Math.log((double) (1 + N ) / (double) (1 + M));
+
+		//cached with the term's posting list, so that queries for unknown terms cost no memory
+		if (list != null) {
+			list.idf = res;
+			list.idfGeneration = this.generation;
+		}
 		return res;
 	}
 	
@@ -184,11 +966,107 @@ public class SearchEngine {
 	 * @return a list of documents sorted in descending order by tfidf
 	 */
 	public List<DocumentId> relevanceLookup(String term) {
-		List<DocumentId> res = new ArrayList<>(this.storage.getOrDefault(term, new HashSet<>()));
+		term = term.toLowerCase();
+		PostingList list = postingList(term);
+		if (list == null) return new ArrayList<>();
 
-		Collections.sort(res, new TfIdfComparator(this, term));
+		//every document shares the term's IDF, so ordering by tfidf is ordering by tf,
+		//except that all scores tie when the IDF is 0
+		boolean allTied = this.inverseDocumentFrequency(term) == 0.0;
 
+		//one pass over the postings: descending tf in the high half of each key, ordinal in the low half
+		long[] keys = new long[documentFrequency(list)];
+		PostingIterator it = list.iterator();
+		for (int i = 0; it.nextDoc() != PostingIterator.NO_MORE_DOCS; ) {
+			if (this.deleted.get(it.doc())) continue;
+			int tf = allTied ? 0 : it.tf();
+			keys[i++] = ((long) (Integer.MAX_VALUE - tf) << 32) | it.doc();
+		}
+		Arrays.sort(keys);
 
+		//break ties by document id, one run of equal scores at a time
+		DocumentId[] res = new DocumentId[keys.length];
+		int runStart = 0;
+		for (int i = 0; i < keys.length; i++) {
+			res[i] = this.documents.get((int) keys[i]);
+			if (i + 1 == keys.length || (keys[i + 1] >>> 32) != (keys[i] >>> 32)) {
+				if (i > runStart) Arrays.sort(res, runStart, i + 1, BY_ID);
+				runStart = i + 1;
+			}
+		}
+
+		return new ArrayList<>(Arrays.asList(res));
+	}
+
+	/**
+	 * Returns the documents matching a Boolean query, most relevant to least relevant.
+	 * 
+	 * A document's relevance is the sum of the tfidf of the query terms it contains; ties are
+	 * broken by the lexicographic ordering of the document ids, as in relevanceLookup().
+	 * 
+	 * The query is evaluated one document at a time over the posting lists of its terms, so
+	 * an AND of a rare and a common term only decodes a small part of the common term's list.
+	 * 
+	 * @param query
+	 * @return a list of the matching documents, sorted in descending order by relevance
+	 * @throws IllegalArgumentException if the query is a bare not()
+	 */
+	public List<DocumentId> search(Query query) {
+		DocIterator it = query.iterator(this);
+
+		List<Hit> hits = new ArrayList<>();
+		for (int doc = it.nextDoc(); doc != DocIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+			hits.add(new Hit(this.documents.get(doc), it.score()));
+		}
+		Collections.sort(hits);
+
+		List<DocumentId> res = new ArrayList<>(hits.size());
+		for (Hit hit : hits) {
+			res.add(hit.documentId);
+		}
+		return res;
+	}
+
+	/**
+	 * Returns the k documents most relevant to term, most relevant first: the same documents,
+	 * in the same order, as the first k of relevanceLookup(term).
+	 * 
+	 * @param term
+	 * @param k the number of documents wanted
+	 * @return a list of at most k documents sorted in descending order by tfidf
+	 */
+	public List<DocumentId> topK(String term, int k) {
+		return topK(Collections.singletonList(term), k);
+	}
+
+	/**
+	 * Returns the k documents most relevant to any of terms, most relevant first: the same
+	 * documents, in the same order, as the first k of search() for the or() of the terms.
+	 * 
+	 * Rather than scoring and sorting every matching document, this keeps only the best k
+	 * found so far and uses upper bounds on the scores of the terms and of blocks of their
+	 * posting lists to skip documents that cannot beat them (see BlockMaxWand), so it
+	 * usually reads only a part of long posting lists.
+	 * 
+	 * @param terms
+	 * @param k the number of documents wanted
+	 * @return a list of at most k documents sorted in descending order by relevance
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	public List<DocumentId> topK(List<String> terms, int k) {
+		if (k < 0) throw new IllegalArgumentException("k must not be negative: " + k);
+
+		List<BlockMaxWand.Cursor> cursors = new ArrayList<>();
+		for (String term : terms) {
+			term = term.toLowerCase();
+			PostingList list = postingList(term);
+			if (list != null) cursors.add(new BlockMaxWand.Cursor(list, this.inverseDocumentFrequency(term)));
+		}
+
+		List<DocumentId> res = new ArrayList<>();
+		for (Hit hit : BlockMaxWand.topK(cursors.toArray(new BlockMaxWand.Cursor[0]), k, this.documents, this.deleted)) {
+			res.add(hit.documentId);
+		}
 		return res;
 	}
 }
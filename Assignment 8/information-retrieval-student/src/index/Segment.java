@@ -0,0 +1,57 @@
+package index;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import documents.DocumentId;
+
+/**
+ * An in-memory index of a run of documents with consecutive ordinals, starting
+ * at base. Segments are built independently of each other and of the
+ * SearchEngine, so that SearchEngine.addDocuments() can tokenize and index on
+ * several threads at once, and are then merged into the engine one by one.
+ */
+final class Segment {
+	final int base;
+	final List<DocumentId> documents = new ArrayList<>(); // by ordinal - base
+	final Map<String, PostingList> postings = new HashMap<>();
+	final Tokenizer tokenizer;
+
+	Segment(int base, Tokenizer tokenizer) {
+		this.base = base;
+		this.tokenizer = tokenizer;
+	}
+
+	/**
+	 * Index a document under the next ordinal of this segment.
+	 * 
+	 * @throws IOException iff the reader throws an exception
+	 */
+	void addDocument(DocumentId documentId, Reader reader) throws IOException {
+		int ordinal = this.base + this.documents.size();
+		this.documents.add(documentId);
+		for (Map.Entry<String, Integer> entry : countTerms(reader, this.tokenizer).entrySet()) {
+			this.postings.computeIfAbsent(entry.getKey(), term -> new PostingList()).add(ordinal, entry.getValue());
+		}
+	}
+
+	/**
+	 * Split the contents of reader into terms with tokenizer, and count them. The reader is
+	 * closed afterwards.
+	 * 
+	 * @throws IOException iff the reader throws an exception
+	 */
+	static Map<String, Integer> countTerms(Reader reader, Tokenizer tokenizer) throws IOException {
+		Map<String, Integer> termCounts = new HashMap<>();
+		try {
+			tokenizer.tokenize(reader, term -> termCounts.merge(term, 1, Integer::sum));
+		} finally {
+			reader.close();
+		}
+		return termCounts;
+	}
+}
@@ -0,0 +1,26 @@
+package index;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * Splits the text of a document into the terms a SearchEngine indexes.
+ *
+ * A SearchEngine creates its tokenizers from a Supplier and never uses one on
+ * two threads at once, so implementations may keep buffers and other state
+ * between calls and need not be thread-safe.
+ *
+ * @see AsciiTokenizer
+ * @see ScannerTokenizer
+ */
+public interface Tokenizer {
+
+	/**
+	 * Read reader to its end, passing each term to terms in order. The reader is
+	 * not closed.
+	 *
+	 * @throws IOException iff the reader throws an exception
+	 */
+	void tokenize(Reader reader, Consumer<? super String> terms) throws IOException;
+}
@@ -0,0 +1,90 @@
+package index;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import documents.DocumentId;
+
+public class BlockMaxWandTest {
+
+	/**
+	 * An engine over n documents whose term counts are skewed, so that most
+	 * blocks of the common terms' posting lists are skippable.
+	 */
+	static SearchEngine randomEngine(int n, Random random) throws Exception {
+		SearchEngine engine = new SearchEngine();
+		for (int i = 0; i < n; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = 0; j < 20; j++) {
+				sb.append("t").append((int) (Math.pow(random.nextDouble(), 3) * 30)).append(' ');
+			}
+			// ids in random order, so the id tie-break does not follow the ordinals
+			engine.addDocument(new DocumentId("doc" + random.nextInt(1000000)), new StringReader(sb.toString()));
+		}
+		return engine;
+	}
+
+	static List<DocumentId> firstK(List<DocumentId> list, int k) {
+		return new ArrayList<>(list.subList(0, Math.min(k, list.size())));
+	}
+
+	@Test
+	public void testSingleTerm() throws Exception {
+		Random random = new Random(0);
+		SearchEngine engine = randomEngine(20000, random);
+		for (int t = 0; t < 30; t++) {
+			String term = "t" + t;
+			List<DocumentId> all = engine.relevanceLookup(term);
+			for (int k : new int[] { 1, 10, 100 }) {
+				assertEquals(firstK(all, k), engine.topK(term, k));
+			}
+		}
+	}
+
+	@Test
+	public void testMultipleTerms() throws Exception {
+		Random random = new Random(1);
+		SearchEngine engine = randomEngine(20000, random);
+		for (int trial = 0; trial < 50; trial++) {
+			List<String> terms = new ArrayList<>();
+			Query[] clauses = new Query[2 + random.nextInt(4)];
+			for (int i = 0; i < clauses.length; i++) {
+				terms.add("T" + random.nextInt(35));
+				clauses[i] = Query.term(terms.get(i));
+			}
+			List<DocumentId> all = engine.search(Query.or(clauses));
+			for (int k : new int[] { 1, 10, 100 }) {
+				assertEquals(firstK(all, k), engine.topK(terms, k));
+			}
+		}
+	}
+
+	@Test
+	public void testSmallAndEmpty() throws Exception {
+		SearchEngine engine = new SearchEngine();
+		assertEquals(Arrays.asList(), engine.topK("foo", 10));
+
+		engine.addDocument(new DocumentId("B"), new StringReader("tomato tomato"));
+		engine.addDocument(new DocumentId("A"), new StringReader("tomato"));
+		engine.addDocument(new DocumentId("C"), new StringReader("tomato pasta"));
+		engine.addDocument(new DocumentId("D"), new StringReader("rice"));
+		assertEquals(Arrays.asList(new DocumentId("B"), new DocumentId("A"), new DocumentId("C")),
+				engine.topK("TOMATO", 10));
+		assertEquals(Arrays.asList(new DocumentId("B")), engine.topK("tomato", 1));
+		assertEquals(Arrays.asList(), engine.topK("tomato", 0));
+		assertEquals(Arrays.asList(new DocumentId("C"), new DocumentId("B")),
+				engine.topK(Arrays.asList("pasta", "tomato", "foo"), 2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeK() throws Exception {
+		new SearchEngine().topK("foo", -1);
+	}
+}
@@ -0,0 +1,391 @@
+package index;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import documents.DocumentId;
+import index.PostingList.PostingIterator;
+
+public class DiskSegmentTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	static List<Integer> docs(PostingList list) {
+		List<Integer> res = new ArrayList<>();
+		PostingIterator it = list.iterator();
+		while (it.nextDoc() != PostingIterator.NO_MORE_DOCS) {
+			res.add(it.doc());
+			res.add(it.tf());
+		}
+		return res;
+	}
+
+	/**
+	 * Write a segment of n documents from base, whose terms are numbers below vocabulary.
+	 */
+	static DiskSegment randomSegment(Path directory, String name, int base, int n, int vocabulary, Random random,
+			TreeMap<String, PostingList> postings) throws Exception {
+		List<DocumentId> documents = new ArrayList<>();
+		TreeMap<String, PostingList> segment = new TreeMap<>();
+		for (int i = 0; i < n; i++) {
+			documents.add(new DocumentId("doc" + (base + i)));
+			for (int t = 0; t < vocabulary; t++) {
+				if (random.nextInt(4) != 0) continue;
+				String term = "t" + t;
+				int tf = 1 + random.nextInt(10);
+				segment.computeIfAbsent(term, k -> new PostingList()).add(base + i, tf);
+				postings.computeIfAbsent(term, k -> new PostingList()).add(base + i, tf);
+			}
+		}
+		try (DiskSegment.Writer writer = new DiskSegment.Writer(directory, name)) {
+			for (String term : segment.keySet()) {
+				writer.add(term, segment.get(term));
+			}
+			return writer.finish(base, documents);
+		}
+	}
+
+	@Test
+	public void testWriteAndOpen() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		TreeMap<String, PostingList> postings = new TreeMap<>();
+		randomSegment(directory, "_0", 0, 300, 500, new Random(0), postings);
+
+		DiskSegment segment = DiskSegment.open(directory, "_0", 0, 300);
+		assertEquals(postings.size(), segment.termCount);
+		assertEquals(new DocumentId("doc299"), segment.documents().get(299));
+		assertEquals(new DocumentId("doc17"), segment.document(17));
+		for (String term : postings.keySet()) {
+			assertEquals(docs(postings.get(term)), docs(segment.postings(term)));
+		}
+		// before the first term, between terms, and after the last one
+		for (String term : Arrays.asList("", "a", "t1a", "t99x", "zzz")) {
+			assertNull(segment.postings(term));
+		}
+	}
+
+	@Test
+	public void testMerge() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Random random = new Random(1);
+		TreeMap<String, PostingList> postings = new TreeMap<>();
+		List<DiskSegment> segments = new ArrayList<>();
+		int base = 0;
+		for (int i = 0; i < 4; i++) {
+			int n = 1 + random.nextInt(100);
+			segments.add(randomSegment(directory, "_" + i, base, n, 50 + random.nextInt(300), random, postings));
+			base += n;
+		}
+
+		DiskSegment merged = DiskSegment.merge(directory, "_4", segments, new BitSet());
+		assertEquals(0, merged.base);
+		assertEquals(base, merged.count);
+		assertEquals(postings.size(), merged.termCount);
+		for (String term : postings.keySet()) {
+			assertEquals(docs(postings.get(term)), docs(merged.postings(term)));
+		}
+		List<DocumentId> documents = merged.documents();
+		for (int i = 0; i < base; i++) {
+			assertEquals(new DocumentId("doc" + i), documents.get(i));
+		}
+	}
+
+	static String randomDocument(Random random) {
+		StringBuilder sb = new StringBuilder();
+		for (int j = random.nextInt(30); j >= 0; j--) {
+			sb.append("w").append((int) (Math.pow(random.nextDouble(), 2) * 200)).append(' ');
+		}
+		return sb.toString();
+	}
+
+	static void assertSameIndex(SearchEngine expected, SearchEngine actual) {
+		for (int t = 0; t < 200; t++) {
+			String term = "w" + t;
+			assertEquals(expected.indexLookup(term), actual.indexLookup(term));
+			assertEquals(expected.relevanceLookup(term), actual.relevanceLookup(term));
+			assertEquals(expected.inverseDocumentFrequency(term), actual.inverseDocumentFrequency(term), 0.0);
+		}
+		assertEquals(expected.topK(Arrays.asList("w1", "w50", "w150"), 10), actual.topK(Arrays.asList("w1", "w50", "w150"), 10));
+	}
+
+	@Test
+	public void testFlushAndReopen() throws Exception {
+		Path directory = folder.getRoot().toPath().resolve("index");
+		Random random = new Random(2);
+		SearchEngine expected = new SearchEngine();
+		SearchEngine engine = new SearchEngine(directory);
+		for (int round = 0; round < 3; round++) {
+			for (int i = 0; i < 200; i++) {
+				DocumentId id = new DocumentId("doc" + random.nextInt(100000));
+				String text = randomDocument(random);
+				expected.addDocument(id, new StringReader(text));
+				engine.addDocument(id, new StringReader(text));
+			}
+			// searched half from memory, half from the segments
+			assertSameIndex(expected, engine);
+			engine.flush();
+			assertSameIndex(expected, engine);
+		}
+
+		// unflushed documents are lost when the engine is reopened
+		engine.addDocument(new DocumentId("lost"), new StringReader("w1 w2"));
+		engine.close();
+
+		SearchEngine reopened = new SearchEngine(directory);
+		assertSameIndex(expected, reopened);
+		assertEquals(3, reopened.segments.size());
+
+		DocumentId first = expected.indexLookup("w0").iterator().next();
+		reopened.addDocument(first, new StringReader("ignored"));
+		assertEquals(new ArrayList<>(), reopened.relevanceLookup("ignored"));
+		reopened.addDocument(new DocumentId("new"), new StringReader("w0 w0 w0 w0 w0 w0 w0 w0 w0 w0 w0 w0 w0"));
+		expected.addDocument(new DocumentId("new"), new StringReader("w0 w0 w0 w0 w0 w0 w0 w0 w0 w0 w0 w0 w0"));
+		assertSameIndex(expected, reopened);
+	}
+
+	@Test
+	public void testBackgroundMerge() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Files.write(directory.resolve("README"), "not part of the index".getBytes());
+		Random random = new Random(3);
+		SearchEngine expected = new SearchEngine();
+		SearchEngine engine = new SearchEngine(directory);
+		for (int round = 0; round < 3 * SearchEngine.MERGE_FACTOR; round++) {
+			for (int i = 1 + random.nextInt(50); i > 0; i--) {
+				DocumentId id = new DocumentId("doc" + random.nextInt(100000));
+				String text = randomDocument(random);
+				expected.addDocument(id, new StringReader(text));
+				engine.addDocument(id, new StringReader(text));
+			}
+			engine.flush();
+		}
+		engine.waitForMerges();
+		assertTrue(engine.segments.size() < SearchEngine.MERGE_FACTOR);
+		assertSameIndex(expected, engine);
+		engine.close();
+
+		// the merged segments' files are gone
+		List<String> files;
+		try (Stream<Path> stream = Files.list(directory)) {
+			files = stream.map(p -> p.getFileName().toString()).collect(Collectors.toList());
+		}
+		assertEquals(engine.segments.size() * DiskSegment.EXTENSIONS.length + 2, files.size());
+		assertTrue(files.contains("README"));
+
+		assertSameIndex(expected, new SearchEngine(directory));
+	}
+
+	@Test
+	public void testRemovedDocuments() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		Random random = new Random(4);
+		SearchEngine expected = new SearchEngine();
+		SearchEngine engine = new SearchEngine(directory);
+		List<DocumentId> ids = new ArrayList<>();
+		for (int round = 0; round < SearchEngine.MERGE_FACTOR; round++) {
+			for (int i = 0; i < 50; i++) {
+				DocumentId id = new DocumentId("doc" + ids.size());
+				ids.add(id);
+				String text = randomDocument(random);
+				expected.addDocument(id, new StringReader(text));
+				engine.addDocument(id, new StringReader(text));
+			}
+			// removed from the segments and from memory
+			for (int i = 0; i < 10; i++) {
+				DocumentId id = ids.get(random.nextInt(ids.size()));
+				assertEquals(expected.removeDocument(id), engine.removeDocument(id));
+			}
+			engine.flush();
+			assertSameIndex(expected, engine);
+		}
+		engine.waitForMerges();
+		assertEquals(1, engine.segments.size());
+
+		// the merged segment has no postings of removed documents
+		DiskSegment merged = engine.segments.get(0);
+		for (int t = 0; t < 200; t++) {
+			PostingList list = merged.postings("w" + t);
+			if (list == null) continue;
+			PostingIterator it = list.iterator();
+			while (it.nextDoc() != PostingIterator.NO_MORE_DOCS) {
+				assertFalse(engine.deleted.get(it.doc()));
+			}
+		}
+
+		// so the next flush drops their ordinals from the deletion log
+		expected.addDocument(new DocumentId("last"), new StringReader("w0 w1"));
+		engine.addDocument(new DocumentId("last"), new StringReader("w0 w1"));
+		engine.flush();
+		assertEquals(0, engine.deletionCount);
+		assertSameIndex(expected, engine);
+
+		// removals alone are committed too
+		DocumentId removed = expected.indexLookup("w0").iterator().next();
+		expected.removeDocument(removed);
+		engine.removeDocument(removed);
+		engine.flush();
+		engine.close();
+
+		SearchEngine reopened = new SearchEngine(directory);
+		assertSameIndex(expected, reopened);
+		assertFalse(reopened.removeDocument(removed));
+		reopened.addDocument(removed, new StringReader("w0"));
+		expected.addDocument(removed, new StringReader("w0"));
+		assertSameIndex(expected, reopened);
+	}
+
+	@Test
+	public void testViewAcrossTrimmingFlush() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		SearchEngine engine = new SearchEngine(directory);
+		int n = 0;
+		for (int round = 0; round < SearchEngine.MERGE_FACTOR; round++) {
+			for (int i = 0; i < 5; i++) {
+				engine.addDocument(new DocumentId("doc" + n++), new StringReader("x"));
+			}
+			engine.removeDocument(new DocumentId("doc" + (n - 1)));
+			engine.flush();
+		}
+		engine.waitForMerges();
+
+		Set<DocumentId> view = engine.indexLookup("x");
+		assertEquals(40, view.size());
+		engine.addDocument(new DocumentId("doc" + n++), new StringReader("y"));
+		engine.flush();
+		for (int i = 0; i < 12; i++) {
+			engine.removeDocument(new DocumentId("doc" + i));
+		}
+		assertEquals(30, engine.indexLookup("x").size());
+		assertEquals(30, view.size());
+		assertEquals(30, new ArrayList<>(view).size());
+		assertEquals(engine.indexLookup("x"), view);
+	}
+
+	@Test
+	public void testLeftoversDeleted() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		SearchEngine engine = new SearchEngine(directory);
+		engine.addDocument(new DocumentId("D1"), new StringReader("tomato"));
+		engine.flush();
+		Files.write(directory.resolve("_7.pst"), new byte[10]);
+		Files.write(directory.resolve("notes.pst"), new byte[10]);
+
+		SearchEngine reopened = new SearchEngine(directory);
+		assertFalse(Files.exists(directory.resolve("_7.pst")));
+		assertTrue(Files.exists(directory.resolve("notes.pst")));
+		assertEquals(1, reopened.indexLookup("tomato").size());
+	}
+
+	@Test
+	public void testFileSizeLimit() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		PostingList list = new PostingList();
+		for (int i = 0; i < 100; i++) {
+			list.add(i, 1);
+		}
+		try (DiskSegment.Writer writer = new DiskSegment.Writer(directory, "_0", 3 * list.writtenSize())) {
+			writer.add("a", list);
+			writer.add("b", list);
+			try {
+				writer.add("c", list);
+				fail();
+			} catch (IOException e) {
+				// expected
+			}
+			assertEquals(2 * list.writtenSize(), writer.out.size());
+		}
+
+		try (DiskSegment.Writer writer = new DiskSegment.Writer(directory, "_1", 100)) {
+			writer.add("a", new PostingList());
+			List<DocumentId> documents = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				documents.add(new DocumentId("doc" + i));
+			}
+			writer.finish(0, documents);
+			fail();
+		} catch (IOException e) {
+			// the ids do not fit in 100 bytes
+		}
+
+		TreeMap<String, PostingList> postings = new TreeMap<>();
+		List<DiskSegment> segments = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			segments.add(randomSegment(directory, "_" + (2 + i), 100 * i, 100, 100, new Random(i), postings));
+		}
+		long size = segments.get(0).postings.capacity() + segments.get(1).postings.capacity();
+		assertTrue(DiskSegment.canMerge(segments, size + 1));
+		assertFalse(DiskSegment.canMerge(segments, size));
+		assertTrue(DiskSegment.canMerge(segments, DiskSegment.MAX_FILE_SIZE));
+	}
+
+	@Test
+	public void testMergeLeavesLargeRuns() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		SearchEngine engine = new SearchEngine(directory);
+		engine.maxFileSize = 100;
+		for (int i = 0; i < SearchEngine.MERGE_FACTOR; i++) {
+			engine.addDocument(new DocumentId("doc" + i), new StringReader("tomato soup number" + i));
+			engine.flush();
+		}
+		engine.close();
+		assertEquals(SearchEngine.MERGE_FACTOR, engine.segments.size());
+		assertEquals(SearchEngine.MERGE_FACTOR, engine.indexLookup("tomato").size());
+	}
+
+	@Test
+	public void testMergeFailureKept() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		SearchEngine engine = new SearchEngine(directory);
+		for (int i = 0; i < SearchEngine.MERGE_FACTOR; i++) {
+			if (i == SearchEngine.MERGE_FACTOR - 1) {
+				// the offset of apple's postings, which only the merge reads, is past the end
+				try (FileChannel channel = FileChannel.open(directory.resolve("_0.tim"), StandardOpenOption.WRITE)) {
+					channel.write(ByteBuffer.wrap(new byte[] { 0x7f, -1, -1, -1 }), 4 + "apple".length());
+				}
+			}
+			engine.addDocument(new DocumentId("doc" + i), new StringReader(i == 0 ? "apple tomato" : "tomato"));
+			engine.flush();
+		}
+		try {
+			engine.close();
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(SearchEngine.MERGE_FACTOR, engine.segments.size());
+		try {
+			engine.flush();
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getCause().getCause() instanceof IllegalArgumentException);
+		}
+		// nothing of the merged segment is left behind
+		assertFalse(Files.exists(directory.resolve("_" + SearchEngine.MERGE_FACTOR + ".pst")));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFlushInMemory() throws Exception {
+		new SearchEngine().flush();
+	}
+}
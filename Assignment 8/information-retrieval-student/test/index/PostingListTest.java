@@ -0,0 +1,219 @@
+package index;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import index.PostingList.PostingIterator;
+
+public class PostingListTest {
+
+	/**
+	 * Build a list of n postings with random gaps (some of them needing several bytes)
+	 * and random frequencies, recording them in docs and tfs.
+	 */
+	static PostingList randomList(int n, Random random, List<Integer> docs, List<Integer> tfs) {
+		PostingList list = new PostingList();
+		int doc = -1;
+		for (int i = 0; i < n; i++) {
+			doc += 1 + (random.nextInt(10) == 0 ? random.nextInt(100000) : random.nextInt(5));
+			int tf = 1 + random.nextInt(300);
+			list.add(doc, tf);
+			docs.add(doc);
+			tfs.add(tf);
+		}
+		return list;
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		PostingList list = new PostingList();
+		assertEquals(0, list.size());
+		assertEquals(PostingIterator.NO_MORE_DOCS, list.iterator().nextDoc());
+		assertEquals(PostingIterator.NO_MORE_DOCS, list.iterator().advance(5));
+		assertEquals(0, list.frequency(0));
+	}
+
+	@Test
+	public void testNextDoc() throws Exception {
+		List<Integer> docs = new ArrayList<>();
+		List<Integer> tfs = new ArrayList<>();
+		PostingList list = randomList(1000, new Random(0), docs, tfs);
+		assertEquals(1000, list.size());
+
+		PostingIterator it = list.iterator();
+		for (int i = 0; i < 1000; i++) {
+			assertEquals((int) docs.get(i), it.nextDoc());
+			assertEquals((int) tfs.get(i), it.tf());
+		}
+		assertEquals(PostingIterator.NO_MORE_DOCS, it.nextDoc());
+	}
+
+	@Test
+	public void testCompressed() throws Exception {
+		PostingList list = new PostingList();
+		for (int i = 0; i < 1000; i++) {
+			list.add(i * 3, 1);
+		}
+		// one byte for each gap and one for each frequency
+		assertEquals(2000, list.length);
+	}
+
+	@Test
+	public void testAdvance() throws Exception {
+		Random random = new Random(1);
+		List<Integer> docs = new ArrayList<>();
+		List<Integer> tfs = new ArrayList<>();
+		PostingList list = randomList(5000, random, docs, tfs);
+
+		for (int trial = 0; trial < 200; trial++) {
+			PostingIterator it = list.iterator();
+			int i = 0;
+			int target = 0;
+			while (true) {
+				target += random.nextInt(20000);
+				while (i < docs.size() && docs.get(i) < target) i++;
+
+				int doc = it.advance(target);
+				if (i == docs.size()) {
+					assertEquals(PostingIterator.NO_MORE_DOCS, doc);
+					break;
+				}
+				assertEquals((int) docs.get(i), doc);
+				assertEquals((int) tfs.get(i), it.tf());
+			}
+		}
+	}
+
+	@Test
+	public void testFrequency() throws Exception {
+		List<Integer> docs = new ArrayList<>();
+		List<Integer> tfs = new ArrayList<>();
+		PostingList list = randomList(2000, new Random(2), docs, tfs);
+		for (int i = 0; i < docs.size(); i++) {
+			assertEquals((int) tfs.get(i), list.frequency(docs.get(i)));
+			if (i > 0 && docs.get(i - 1) + 1 < docs.get(i)) assertEquals(0, list.frequency(docs.get(i) - 1));
+		}
+	}
+
+	@Test
+	public void testBlockMaxTf() throws Exception {
+		List<Integer> docs = new ArrayList<>();
+		List<Integer> tfs = new ArrayList<>();
+		PostingList list = randomList(1000, new Random(3), docs, tfs);
+		int maxTf = 0;
+		for (int tf : tfs) maxTf = Math.max(maxTf, tf);
+		assertEquals(maxTf, list.maxTf());
+
+		PostingIterator it = list.iterator();
+		for (int i = 0; i < docs.size(); i++) {
+			it.nextDoc();
+			int blockStart = i - i % PostingList.SKIP_INTERVAL;
+			int blockEnd = Math.min(blockStart + PostingList.SKIP_INTERVAL, docs.size());
+			int blockMax = 0;
+			for (int j = blockStart; j < blockEnd; j++) blockMax = Math.max(blockMax, tfs.get(j));
+			assertEquals(blockMax, it.blockMaxTf());
+			assertEquals((int) docs.get(blockEnd - 1), it.blockLastDoc());
+		}
+	}
+
+	@Test
+	public void testWriteRead() throws Exception {
+		List<Integer> docs = new ArrayList<>();
+		List<Integer> tfs = new ArrayList<>();
+		PostingList list = randomList(1000, new Random(4), docs, tfs);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		list.write(new DataOutputStream(bytes));
+		new PostingList().write(new DataOutputStream(bytes));
+
+		ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+		PostingList read = PostingList.read(in);
+		assertEquals(0, PostingList.read(in).size());
+		assertEquals(0, in.remaining());
+
+		// appending to the list read must work as on the original
+		read.add(list.lastDoc + 1, 7);
+		docs.add(list.lastDoc + 1);
+		tfs.add(7);
+		assertEquals(list.maxTf(), read.maxTf());
+		PostingIterator it = read.iterator();
+		for (int i = 0; i < docs.size(); i++) {
+			assertEquals((int) docs.get(i), it.advance(docs.get(i)));
+			assertEquals((int) tfs.get(i), it.tf());
+		}
+		assertEquals(PostingIterator.NO_MORE_DOCS, it.nextDoc());
+	}
+
+	@Test
+	public void testTail() throws Exception {
+		List<Integer> docs = new ArrayList<>();
+		List<Integer> tfs = new ArrayList<>();
+		PostingList list = randomList(500, new Random(5), docs, tfs);
+		int from = docs.get(200);
+		PostingList tail = list.tail(from);
+		assertEquals(300, tail.size());
+		PostingIterator it = tail.iterator();
+		for (int i = 200; i < docs.size(); i++) {
+			assertEquals((int) docs.get(i), it.nextDoc());
+			assertEquals((int) tfs.get(i), it.tf());
+		}
+		assertEquals(0, list.tail(list.lastDoc + 1).size());
+	}
+
+	@Test
+	public void testAddAll() throws Exception {
+		Random random = new Random(6);
+		// 0 and 128 end on a block boundary, so other's skip entries are reused
+		for (int n : new int[] { 0, 1, 63, 64, 100, 128 }) {
+			for (int m : new int[] { 0, 1, 64, 200 }) {
+				List<Integer> docs = new ArrayList<>();
+				List<Integer> tfs = new ArrayList<>();
+				PostingList list = randomList(n + m, random, docs, tfs);
+
+				PostingList head = new PostingList();
+				PostingList other = new PostingList();
+				PostingIterator it = list.iterator();
+				for (int i = 0; it.nextDoc() != PostingIterator.NO_MORE_DOCS; i++) {
+					(i < n ? head : other).add(it.doc(), it.tf());
+				}
+				head.addAll(other);
+
+				// exactly the list built one posting at a time
+				assertEquals(list.size(), head.size());
+				assertEquals(list.lastDoc, head.lastDoc);
+				assertEquals(list.maxTf(), head.maxTf());
+				assertEquals(list.tailMaxTf, head.tailMaxTf);
+				assertArrayEquals(Arrays.copyOf(list.bytes, list.length), Arrays.copyOf(head.bytes, head.length));
+				for (int i = 0; i < list.skipCount(); i++) {
+					assertEquals(list.skipDocs[i], head.skipDocs[i]);
+					assertEquals(list.skipOffsets[i], head.skipOffsets[i]);
+					assertEquals(list.skipMaxTfs[i], head.skipMaxTfs[i]);
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddAllOutOfOrder() throws Exception {
+		PostingList list = new PostingList();
+		list.add(5, 1);
+		PostingList other = new PostingList();
+		other.add(5, 1);
+		list.addAll(other);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddOutOfOrder() throws Exception {
+		PostingList list = new PostingList();
+		list.add(5, 1);
+		list.add(5, 1);
+	}
+}
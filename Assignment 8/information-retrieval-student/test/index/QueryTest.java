@@ -0,0 +1,167 @@
+package index;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import documents.DocumentId;
+
+public class QueryTest {
+
+	private SearchEngine searchEngine;
+
+	@Before
+	public void setup() throws Exception {
+		searchEngine = new SearchEngine();
+		searchEngine.addDocument(new DocumentId("D1"), new StringReader("tomato sauce pizza pizza"));
+		searchEngine.addDocument(new DocumentId("D2"), new StringReader("tomato pasta"));
+		searchEngine.addDocument(new DocumentId("D3"), new StringReader("pasta pasta pasta meat"));
+		searchEngine.addDocument(new DocumentId("D4"), new StringReader("tomato meat pizza"));
+		searchEngine.addDocument(new DocumentId("D5"), new StringReader("rice rice"));
+	}
+
+	static List<DocumentId> ids(String... ids) {
+		List<DocumentId> res = new ArrayList<>();
+		for (String id : ids) {
+			res.add(new DocumentId(id));
+		}
+		return res;
+	}
+
+	@Test
+	public void testTerm() throws Exception {
+		assertEquals(searchEngine.relevanceLookup("pasta"), searchEngine.search(Query.term("PASTA")));
+		assertEquals(ids(), searchEngine.search(Query.term("foo")));
+	}
+
+	@Test
+	public void testAnd() throws Exception {
+		assertEquals(ids("D1", "D4"), searchEngine.search(Query.and(Query.term("tomato"), Query.term("pizza"))));
+		assertEquals(ids(), searchEngine.search(Query.and(Query.term("tomato"), Query.term("rice"))));
+		assertEquals(ids(), searchEngine.search(Query.and(Query.term("tomato"), Query.term("foo"))));
+	}
+
+	@Test
+	public void testOr() throws Exception {
+		// idf: rice log(3), pasta log(2), tomato log(1.5); D1 and D4 tie and are ordered by id
+		assertEquals(ids("D5", "D3", "D2", "D1", "D4"),
+				searchEngine.search(Query.or(Query.term("pasta"), Query.term("tomato"), Query.term("rice"))));
+	}
+
+	@Test
+	public void testNot() throws Exception {
+		assertEquals(ids("D1", "D2"), searchEngine.search(Query.and(Query.term("tomato"), Query.not(Query.term("meat")))));
+		assertEquals(ids("D2"), searchEngine.search(
+				Query.and(Query.term("tomato"), Query.not(Query.or(Query.term("meat"), Query.term("sauce"))))));
+	}
+
+	@Test
+	public void testNested() throws Exception {
+		Query q = Query.and(Query.term("tomato"), Query.or(Query.term("pizza"), Query.term("pasta")),
+				Query.not(Query.term("meat")));
+		assertEquals(ids("D1", "D2"), searchEngine.search(q));
+		assertEquals("(tomato AND (pizza OR pasta) AND NOT meat)", q.toString());
+	}
+
+	@Test
+	public void testScoresSum() throws Exception {
+		List<DocumentId> res = searchEngine.search(Query.and(Query.term("tomato"), Query.term("pizza")));
+		// D1 has pizza twice, so it scores higher than D4
+		assertEquals(ids("D1", "D4"), res);
+		double d1 = searchEngine.tfIdf(new DocumentId("D1"), "tomato") + searchEngine.tfIdf(new DocumentId("D1"), "pizza");
+		double d4 = searchEngine.tfIdf(new DocumentId("D4"), "tomato") + searchEngine.tfIdf(new DocumentId("D4"), "pizza");
+		assertTrue(d1 > d4);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBareNot() throws Exception {
+		searchEngine.search(Query.not(Query.term("tomato")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAndOfNots() throws Exception {
+		Query.and(Query.not(Query.term("tomato")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotInOr() throws Exception {
+		Query.or(Query.term("pasta"), Query.not(Query.term("tomato")));
+	}
+
+	@Test
+	public void testRandomQueries() throws Exception {
+		// enough documents that the common terms' posting lists have many skip entries
+		Random random = new Random(0);
+		SearchEngine engine = new SearchEngine();
+		Map<DocumentId, Set<String>> contents = new HashMap<>();
+		for (int i = 0; i < 5000; i++) {
+			DocumentId id = new DocumentId("doc" + i);
+			StringBuilder sb = new StringBuilder();
+			Set<String> terms = new HashSet<>();
+			for (int j = 0; j < 10; j++) {
+				String term = "t" + (int) (Math.pow(random.nextDouble(), 3) * 50);
+				sb.append(term).append(' ');
+				terms.add(term);
+			}
+			engine.addDocument(id, new StringReader(sb.toString()));
+			contents.put(id, terms);
+		}
+
+		for (int trial = 0; trial < 200; trial++) {
+			String a = "t" + random.nextInt(50);
+			String b = "t" + random.nextInt(50);
+			String c = "t" + random.nextInt(50);
+
+			Set<DocumentId> and = new HashSet<>();
+			Set<DocumentId> or = new HashSet<>();
+			Set<DocumentId> andNot = new HashSet<>();
+			for (Map.Entry<DocumentId, Set<String>> entry : contents.entrySet()) {
+				Set<String> terms = entry.getValue();
+				if (terms.contains(a) && terms.contains(b)) and.add(entry.getKey());
+				if (terms.contains(a) || terms.contains(b) || terms.contains(c)) or.add(entry.getKey());
+				if (terms.contains(a) && terms.contains(b) && !terms.contains(c)) andNot.add(entry.getKey());
+			}
+
+			List<DocumentId> andRes = engine.search(Query.and(Query.term(a), Query.term(b)));
+			assertEquals(and, new HashSet<>(andRes));
+			assertEquals(and.size(), andRes.size());
+			assertRanked(engine, andRes, Arrays.asList(a, b));
+
+			List<DocumentId> orRes = engine.search(Query.or(Query.term(a), Query.term(b), Query.term(c)));
+			assertEquals(or, new HashSet<>(orRes));
+			assertRanked(engine, orRes, Arrays.asList(a, b, c));
+
+			assertEquals(andNot, new HashSet<>(engine.search(
+					Query.and(Query.term(a), Query.term(b), Query.not(Query.term(c))))));
+		}
+	}
+
+	/**
+	 * Assert that res is ordered by descending summed tfIdf over terms, then by id.
+	 */
+	static void assertRanked(SearchEngine engine, List<DocumentId> res, List<String> terms) {
+		double previous = Double.POSITIVE_INFINITY;
+		DocumentId previousId = null;
+		for (DocumentId id : res) {
+			double score = 0;
+			for (String term : terms) {
+				score += engine.tfIdf(id, term);
+			}
+			assertTrue(score <= previous + 1e-9);
+			if (previousId != null && Math.abs(score - previous) < 1e-12) assertTrue(previousId.id.compareTo(id.id) < 0);
+			previous = score;
+			previousId = id;
+		}
+	}
+}
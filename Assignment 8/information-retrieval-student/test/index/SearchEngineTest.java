@@ -7,9 +7,18 @@ package index;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -17,6 +26,7 @@ import org.junit.Test;
 import org.junit.rules.Timeout;
 
 
+import comparators.TfIdfComparator;
 import documents.DocumentId;
 
 public class SearchEngineTest {
@@ -272,6 +282,306 @@ public class SearchEngineTest {
 				searchEngine.relevanceLookup("beef"));
 	}
 	
+	@Test
+	public void testReAddIgnored() throws Exception {
+		searchEngine.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		searchEngine.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT2));
+		assertEquals(2, searchEngine.termFrequency(DOCUMENT1_ID, "a"));
+		assertEquals(0, searchEngine.termFrequency(DOCUMENT1_ID, "example"));
+		assertEquals(new HashSet<>(), searchEngine.indexLookup("example"));
+	}
+
+	@Test
+	public void testManyDocuments() throws Exception {
+		HashSet<DocumentId> even = new HashSet<>();
+		for (int i = 0; i < 1000; i++) {
+			DocumentId id = new DocumentId("doc" + i);
+			if (i % 2 == 0) even.add(id);
+			searchEngine.addDocument(id, new StringReader(i % 2 == 0 ? "even even number" : "odd number"));
+		}
+		assertEquals(even, searchEngine.indexLookup("even"));
+		assertEquals(1000, searchEngine.indexLookup("Number").size());
+		assertTrue(searchEngine.indexLookup("even").contains(new DocumentId("doc998")));
+		assertFalse(searchEngine.indexLookup("even").contains(new DocumentId("doc999")));
+		assertEquals(2, searchEngine.termFrequency(new DocumentId("doc500"), "even"));
+		assertEquals(Math.log(1001.0 / 501.0), searchEngine.inverseDocumentFrequency("even"), 0.0);
+	}
+
+	@Test
+	public void testInverseDocumentFrequencyAfterAdd() throws Exception {
+		searchEngine.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		assertEquals(0.0, searchEngine.inverseDocumentFrequency("sample"), 0.0);
+		searchEngine.addDocument(DOCUMENT2_ID, new StringReader(DOCUMENT2));
+		assertEquals(Math.log(3.0 / 2.0), searchEngine.inverseDocumentFrequency("SAMPLE"), 0.0);
+		assertEquals(Math.log(3.0 / 2.0), searchEngine.tfIdf(DOCUMENT1_ID, "sample"), 0.0);
+	}
+
+	@Test
+	public void testDocumentWithoutTerms() throws Exception {
+		// a document without terms has still been added: it counts in N, and its term frequencies are 0
+		searchEngine.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		searchEngine.addDocument(DOCUMENT2_ID, new StringReader(" ... "));
+		assertEquals(0, searchEngine.termFrequency(DOCUMENT2_ID, "sample"));
+		assertEquals(Math.log(3.0 / 2.0), searchEngine.inverseDocumentFrequency("sample"), 0.0);
+
+		searchEngine.removeDocument(DOCUMENT2_ID);
+		assertEquals(0.0, searchEngine.inverseDocumentFrequency("sample"), 0.0);
+		try {
+			searchEngine.termFrequency(DOCUMENT2_ID, "sample");
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testRelevanceLookupMatchesComparator() throws Exception {
+		Random random = new Random(0);
+		for (int i = 0; i < 500; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = random.nextInt(3); j >= 0; j--) {
+				sb.append("common ");
+			}
+			for (int j = 0; j < 20; j++) {
+				sb.append("w").append(random.nextInt(1 + random.nextInt(30))).append(' ');
+			}
+			searchEngine.addDocument(new DocumentId("doc" + random.nextInt(100000)), new StringReader(sb.toString()));
+		}
+		searchEngine.addDocument(new DocumentId("everywhere"), new StringReader("w0 W0 common"));
+
+		//"common" is in every document, so its IDF is 0 and every score ties
+		for (int t = -1; t < 30; t++) {
+			String term = t == -1 ? "common" : "w" + t;
+			List<DocumentId> expected = new ArrayList<>(searchEngine.indexLookup(term));
+			Collections.sort(expected, new TfIdfComparator(searchEngine, term));
+			assertEquals(expected, searchEngine.relevanceLookup(term.toUpperCase()));
+		}
+	}
+
+	@Test
+	public void testAddDocumentsMatchesAddDocument() throws Exception {
+		Random random = new Random(1);
+		Map<DocumentId, String> contents = new LinkedHashMap<>();
+		for (int i = 0; i < 1000; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = random.nextInt(40); j >= 0; j--) {
+				sb.append("W").append(random.nextInt(1 + random.nextInt(100))).append(random.nextBoolean() ? ", " : " ");
+			}
+			contents.put(new DocumentId("doc" + random.nextInt(100000)), sb.toString());
+		}
+		for (Map.Entry<DocumentId, String> entry : contents.entrySet()) {
+			searchEngine.addDocument(entry.getKey(), new StringReader(entry.getValue()));
+		}
+
+		for (int threads : new int[] { 1, 3, 8 }) {
+			SearchEngine batched = new SearchEngine();
+			batched.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+			Map<DocumentId, StringReader> readers = new LinkedHashMap<>();
+			for (Map.Entry<DocumentId, String> entry : contents.entrySet()) {
+				readers.put(entry.getKey(), new StringReader(entry.getValue()));
+			}
+			batched.addDocuments(readers, threads);
+
+			assertEquals(Arrays.asList(DOCUMENT1_ID), batched.relevanceLookup("sample"));
+			for (int t = 0; t < 100; t++) {
+				String term = "w" + t;
+				assertEquals(searchEngine.indexLookup(term), batched.indexLookup(term));
+				assertEquals(searchEngine.relevanceLookup(term), batched.relevanceLookup(term));
+				for (DocumentId id : searchEngine.indexLookup(term)) {
+					assertEquals(searchEngine.termFrequency(id, term), batched.termFrequency(id, term));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testAddDocumentsIgnoresIndexed() throws Exception {
+		searchEngine.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		Map<DocumentId, StringReader> readers = new LinkedHashMap<>();
+		readers.put(DOCUMENT1_ID, new StringReader(DOCUMENT2));
+		readers.put(DOCUMENT3_ID, new StringReader(DOCUMENT3));
+		searchEngine.addDocuments(readers);
+		assertEquals(0, searchEngine.termFrequency(DOCUMENT1_ID, "example"));
+		assertEquals(1, searchEngine.termFrequency(DOCUMENT3_ID, "example"));
+		assertEquals(Math.log(3.0 / 3.0), searchEngine.inverseDocumentFrequency("sample"), 0.0);
+	}
+
+	@Test
+	public void testAddDocumentsFailure() throws Exception {
+		Map<DocumentId, Reader> readers = new LinkedHashMap<>();
+		readers.put(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		readers.put(DOCUMENT2_ID, new Reader() {
+			@Override
+			public int read(char[] cbuf, int off, int len) throws IOException {
+				throw new IOException("broken");
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		try {
+			searchEngine.addDocuments(readers, 2);
+			fail();
+		} catch (IOException e) {
+			assertEquals("broken", e.getMessage());
+		}
+		assertEquals(new HashSet<>(), searchEngine.indexLookup("sample"));
+		assertEquals(0.0, searchEngine.inverseDocumentFrequency("sample"), 0.0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddDocumentsNoThreads() throws Exception {
+		searchEngine.addDocuments(new HashMap<>(), 0);
+	}
+
+	@Test
+	public void testRemoveDocument() throws Exception {
+		searchEngine.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		searchEngine.addDocument(DOCUMENT2_ID, new StringReader(DOCUMENT2));
+		searchEngine.addDocument(DOCUMENT3_ID, new StringReader(DOCUMENT3));
+		assertTrue(searchEngine.removeDocument(DOCUMENT2_ID));
+		assertFalse(searchEngine.removeDocument(DOCUMENT2_ID));
+
+		assertEquals(new HashSet<>(Arrays.asList(DOCUMENT3_ID)), searchEngine.indexLookup("another"));
+		assertEquals(1, searchEngine.indexLookup("another").size());
+		assertFalse(searchEngine.indexLookup("is").contains(DOCUMENT2_ID));
+		assertEquals(Arrays.asList(DOCUMENT3_ID), searchEngine.relevanceLookup("example"));
+		assertEquals(0.0, searchEngine.inverseDocumentFrequency("sample"), 0.0);
+		assertEquals(Math.log(3.0 / 2.0), searchEngine.inverseDocumentFrequency("example"), 0.0);
+		try {
+			searchEngine.termFrequency(DOCUMENT2_ID, "example");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// removed
+		}
+
+		searchEngine.addDocument(DOCUMENT2_ID, new StringReader(DOCUMENT2));
+		assertEquals(3, searchEngine.termFrequency(DOCUMENT2_ID, "example"));
+		assertEquals(Arrays.asList(DOCUMENT2_ID, DOCUMENT3_ID), searchEngine.relevanceLookup("example"));
+	}
+
+	@Test
+	public void testUpdateDocument() throws Exception {
+		searchEngine.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		searchEngine.addDocument(DOCUMENT3_ID, new StringReader(DOCUMENT3));
+		searchEngine.updateDocument(DOCUMENT1_ID, new StringReader(DOCUMENT2));
+		assertEquals(0, searchEngine.termFrequency(DOCUMENT1_ID, "a"));
+		assertEquals(3, searchEngine.termFrequency(DOCUMENT1_ID, "example"));
+		assertEquals(Arrays.asList(DOCUMENT3_ID), searchEngine.relevanceLookup("sample"));
+		assertEquals(Math.log(3.0 / 2.0), searchEngine.inverseDocumentFrequency("sample"), 0.0);
+
+		searchEngine.updateDocument(DOCUMENT2_ID, new StringReader(DOCUMENT2));
+		assertEquals(3, searchEngine.termFrequency(DOCUMENT2_ID, "example"));
+	}
+
+	@Test
+	public void testDocumentFrequencyAfterManyRemovals() throws Exception {
+		// not so many that the engine compacts
+		for (int i = 0; i < 300; i++) {
+			searchEngine.addDocument(new DocumentId("doc" + i), new StringReader(i < 2 ? "common rare" : "common"));
+		}
+		for (int i = 0; i < 200; i += 2) {
+			searchEngine.removeDocument(new DocumentId("doc" + i));
+		}
+		// the two postings are checked against the tombstones rather than the 100 deletions
+		PostingList rare = searchEngine.postingList("rare");
+		assertEquals(1, searchEngine.documentFrequency(rare));
+		assertEquals(searchEngine.deletionCount, rare.deletionsChecked);
+
+		searchEngine.removeDocument(new DocumentId("doc1"));
+		assertEquals(0, searchEngine.documentFrequency(rare));
+		assertEquals(199, searchEngine.documentFrequency(searchEngine.postingList("common")));
+		assertEquals(Math.log(200.0 / 200.0), searchEngine.inverseDocumentFrequency("common"), 0.0);
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+		for (int i = 0; i < 200; i++) {
+			searchEngine.addDocument(new DocumentId("doc" + i), new StringReader(i < 2 ? "common rare" : "common"));
+		}
+		for (int i = 0; i < 200; i += 2) {
+			searchEngine.removeDocument(new DocumentId("doc" + i));
+		}
+		Set<DocumentId> view = searchEngine.indexLookup("common");
+		// more than half removed: the engine compacts, dropping terms without documents
+		searchEngine.removeDocument(new DocumentId("doc1"));
+		assertEquals(99, view.size());
+		assertEquals(99, new ArrayList<>(view).size());
+		assertEquals(99, searchEngine.documents.size());
+		assertEquals(0, searchEngine.deletionCount);
+		assertNull(searchEngine.postingList("rare"));
+		assertEquals(Collections.emptySet(), searchEngine.indexLookup("rare"));
+		assertEquals(99, searchEngine.postingList("common").size());
+		assertEquals(Math.log(100.0 / 100.0), searchEngine.inverseDocumentFrequency("common"), 0.0);
+		assertTrue(searchEngine.indexLookup("common").contains(new DocumentId("doc3")));
+		assertFalse(searchEngine.indexLookup("common").contains(new DocumentId("doc2")));
+		assertEquals(1, searchEngine.termFrequency(new DocumentId("doc199"), "common"));
+	}
+
+	@Test
+	public void testRepeatedUpdatesStayBounded() throws Exception {
+		DocumentId id = new DocumentId("doc");
+		searchEngine.addDocument(new DocumentId("other"), new StringReader("beta"));
+		for (int i = 0; i < 10000; i++) {
+			searchEngine.updateDocument(id, new StringReader("alpha alpha v" + i));
+			assertTrue(searchEngine.documents.size() <= 2 * SearchEngine.MIN_COMPACT_REMOVALS + 2);
+			assertTrue(searchEngine.deletionCount <= 2 * SearchEngine.MIN_COMPACT_REMOVALS + 2);
+			assertTrue(searchEngine.postingList("alpha").size() <= 2 * SearchEngine.MIN_COMPACT_REMOVALS + 2);
+		}
+		assertTrue(searchEngine.postings.size() <= 2 * SearchEngine.MIN_COMPACT_REMOVALS + 4);
+		assertEquals(new HashSet<>(Arrays.asList(id)), searchEngine.indexLookup("alpha"));
+		assertEquals(Arrays.asList(id), searchEngine.relevanceLookup("v9999"));
+		assertEquals(Arrays.asList(), searchEngine.relevanceLookup("v9998"));
+		assertEquals(2, searchEngine.termFrequency(id, "alpha"));
+		assertEquals(Math.log(3.0 / 2.0), searchEngine.inverseDocumentFrequency("alpha"), 0.0);
+		assertEquals(Arrays.asList(new DocumentId("other")), searchEngine.relevanceLookup("beta"));
+	}
+
+	@Test
+	public void testRandomUpdatesMatchRebuild() throws Exception {
+		Random random = new Random(2);
+		Map<DocumentId, String> live = new HashMap<>();
+		for (int op = 0; op < 3000; op++) {
+			DocumentId id = new DocumentId("doc" + random.nextInt(500));
+			StringBuilder sb = new StringBuilder();
+			for (int j = random.nextInt(15); j >= 0; j--) {
+				sb.append("w").append((int) (Math.pow(random.nextDouble(), 2) * 40)).append(' ');
+			}
+			switch (random.nextInt(3)) {
+			case 0:
+				searchEngine.addDocument(id, new StringReader(sb.toString()));
+				live.putIfAbsent(id, sb.toString());
+				break;
+			case 1:
+				searchEngine.updateDocument(id, new StringReader(sb.toString()));
+				live.put(id, sb.toString());
+				break;
+			default:
+				assertEquals(live.remove(id) != null, searchEngine.removeDocument(id));
+			}
+
+			if (op % 500 == 499) {
+				SearchEngine rebuilt = new SearchEngine();
+				for (Map.Entry<DocumentId, String> entry : live.entrySet()) {
+					rebuilt.addDocument(entry.getKey(), new StringReader(entry.getValue()));
+				}
+				for (int t = 0; t < 40; t++) {
+					String term = "w" + t;
+					assertEquals(rebuilt.indexLookup(term), searchEngine.indexLookup(term));
+					assertEquals(rebuilt.indexLookup(term).size(), searchEngine.indexLookup(term).size());
+					assertEquals(rebuilt.inverseDocumentFrequency(term), searchEngine.inverseDocumentFrequency(term), 0.0);
+					assertEquals(rebuilt.relevanceLookup(term), searchEngine.relevanceLookup(term));
+				}
+				Query q = Query.or(Query.term("w0"), Query.term("w7"), Query.term("w30"));
+				assertEquals(rebuilt.search(q), searchEngine.search(q));
+				assertEquals(rebuilt.topK(Arrays.asList("w0", "w7", "w30"), 10),
+						searchEngine.topK(Arrays.asList("w0", "w7", "w30"), 10));
+				q = Query.and(Query.term("w1"), Query.not(Query.term("w2")));
+				assertEquals(rebuilt.search(q), searchEngine.search(q));
+			}
+		}
+	}
+
 	@Test
 	public void testIrrelevantLookup() throws Exception {
 		addFood();
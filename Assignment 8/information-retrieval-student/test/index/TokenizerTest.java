@@ -0,0 +1,91 @@
+package index;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import documents.DocumentId;
+
+public class TokenizerTest {
+
+	static List<String> tokenize(Tokenizer tokenizer, Reader reader) throws IOException {
+		List<String> res = new ArrayList<>();
+		tokenizer.tokenize(reader, res::add);
+		return res;
+	}
+
+	static List<String> tokenize(Tokenizer tokenizer, String text) throws IOException {
+		return tokenize(tokenizer, new StringReader(text));
+	}
+
+	@Test
+	public void testSplit() throws Exception {
+		Tokenizer tokenizer = new AsciiTokenizer();
+		assertEquals(Arrays.asList("this", "is", "a", "sample_2", "pasta"),
+				tokenize(tokenizer, "  This is\ta --SAMPLE_2\n(pasta)."));
+		assertEquals(Arrays.asList(), tokenize(tokenizer, ""));
+		assertEquals(Arrays.asList(), tokenize(tokenizer, " ,;\u00e9 "));
+		assertEquals(Arrays.asList("ni", "oise", "ch", "o", "f", "n"), tokenize(tokenizer, "niçoise chǎo fàn"));
+	}
+
+	@Test
+	public void testInterned() throws Exception {
+		Tokenizer tokenizer = new AsciiTokenizer();
+		List<String> terms = tokenize(tokenizer, "Pasta pasta PASTA");
+		terms.addAll(tokenize(tokenizer, "pAsTa"));
+		for (String term : terms) {
+			assertSame(terms.get(0), term);
+		}
+	}
+
+	@Test
+	public void testMatchesScanner() throws Exception {
+		// every kind of character, terms longer than the tokenizer's buffers, and enough
+		// distinct terms that the dictionary grows
+		Random random = new Random(0);
+		String alphabet = "aZ_9 .,-\t\n\u00e9\u00c9\u0130\u4e00\ud83c\udf55";
+		AsciiTokenizer ascii = new AsciiTokenizer();
+		ScannerTokenizer scanner = new ScannerTokenizer();
+		for (int trial = 0; trial < 200; trial++) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = random.nextInt(20000); i >= 0; i--) {
+				if (random.nextInt(4) == 0) {
+					sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+				} else {
+					sb.append((char) ('a' + random.nextInt(26))).append(random.nextInt(200));
+				}
+			}
+			if (trial % 10 == 0) sb.append("x".repeat(20000));
+			String text = sb.toString();
+			assertEquals(tokenize(scanner, text), tokenize(ascii, text));
+		}
+	}
+
+	@Test
+	public void testShortReads() throws Exception {
+		// a Reader may return fewer characters than asked for, splitting terms across reads
+		String text = "tomato sauce, TOMATO paste";
+		Reader reader = new StringReader(text) {
+			@Override
+			public int read(char[] cbuf, int off, int len) throws IOException {
+				return super.read(cbuf, off, Math.min(len, 3));
+			}
+		};
+		assertEquals(Arrays.asList("tomato", "sauce", "tomato", "paste"), tokenize(new AsciiTokenizer(), reader));
+	}
+
+	@Test
+	public void testSearchEngineTokenizer() throws Exception {
+		SearchEngine engine = new SearchEngine(ScannerTokenizer::new);
+		engine.addDocument(new DocumentId("D1"), new StringReader("Tomato, tomato!"));
+		assertEquals(2, engine.termFrequency(new DocumentId("D1"), "TOMATO"));
+	}
+}